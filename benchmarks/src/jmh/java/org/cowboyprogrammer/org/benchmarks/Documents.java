@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.benchmarks;
+
+/**
+ * Org documents of fixed shape for the benchmarks.
+ */
+final class Documents {
+
+    private static final long SEED = 42;
+
+    private Documents() {
+    }
+
+    /**
+     * Number of entries in documents of the given size name.
+     */
+    static int entries(final String size) {
+        if ("small".equals(size)) {
+            return 10;
+        } else if ("medium".equals(size)) {
+            return 1000;
+        } else if ("huge".equals(size)) {
+            return 100000;
+        }
+        throw new IllegalArgumentException("Unknown size: " + size);
+    }
+
+    /**
+     * A generated document with the given number of entries and the
+     * generator's default mix of levels, TODO states, tags, timestamps,
+     * comments and body text.
+     */
+    static String create(final int entries) {
+        final CorpusGenerator generator = new CorpusGenerator(SEED);
+        generator.setEntries(entries);
+        return generator.generate();
+    }
+}
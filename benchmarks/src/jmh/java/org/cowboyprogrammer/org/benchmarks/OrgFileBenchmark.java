@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.benchmarks;
+
+import org.cowboyprogrammer.org.OrgArena;
+import org.cowboyprogrammer.org.OrgFile;
+import org.cowboyprogrammer.org.OrgJsonExporter;
+import org.cowboyprogrammer.org.OrgReader;
+import org.cowboyprogrammer.org.parser.ParseOptions;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.text.ParseException;
+
+/**
+ * Parsing whole documents and writing them back.
+ */
+@State(Scope.Benchmark)
+public class OrgFileBenchmark {
+
+    @Param({"small", "medium", "huge"})
+    public String size;
+
+    private RegexParser parser;
+    private String content;
+    private OrgFile parsed;
+    private final ParseOptions outline = new ParseOptions().setOutline(true);
+    private final CountingWriter json = new CountingWriter();
+
+    /**
+     * Throws away what it is given, but keeps count so nothing is optimized out.
+     */
+    static final class CountingWriter extends Writer {
+        long count = 0;
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException, ParseException {
+        parser = new RegexParser();
+        content = Documents.create(Documents.entries(size));
+        parsed = OrgFile.createFromString(parser, "bench.org", content);
+    }
+
+    @Benchmark
+    public OrgFile createFromString() throws IOException, ParseException {
+        return OrgFile.createFromString(parser, "bench.org", content);
+    }
+
+    @Benchmark
+    public OrgFile createOutlineFromString() throws IOException, ParseException {
+        return OrgFile.createFromBufferedReader(parser, "bench.org",
+                new BufferedReader(new StringReader(content)), outline);
+    }
+
+    @Benchmark
+    public long createInArena() throws IOException, ParseException {
+        final OrgArena arena = new OrgArena();
+        try {
+            OrgFile.createFromBufferedReader(parser, "bench.org",
+                    new BufferedReader(new StringReader(content)), new ParseOptions().setArena(arena));
+            return arena.getBytesUsed();
+        } finally {
+            arena.close();
+        }
+    }
+
+    @Benchmark
+    public String treeToString() {
+        return parsed.treeToString();
+    }
+
+    @Benchmark
+    public long exportJson() throws IOException, ParseException {
+        new OrgJsonExporter(json).write(new OrgReader(parser, "bench.org", new StringReader(content)));
+        return json.count;
+    }
+}
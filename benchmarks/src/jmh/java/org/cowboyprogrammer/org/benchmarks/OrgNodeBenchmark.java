@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.benchmarks;
+
+import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.ParseException;
+
+/**
+ * Building up the body of a single entry, line by line.
+ */
+@State(Scope.Benchmark)
+public class OrgNodeBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int lines;
+
+    private RegexParser parser;
+    private String[] body;
+
+    @Setup
+    public void setup() {
+        parser = new RegexParser();
+        body = new String[lines];
+        for (int i = 0; i < lines; i++) {
+            body[i] = i % 10 == 9 ? "" : "Line " + i + " of a body which goes on for a while.";
+        }
+    }
+
+    @Benchmark
+    public OrgNode addBodyLine() throws ParseException {
+        final OrgNode node = new OrgNode(parser);
+        node.setLevel(1);
+        node.addBodyLine("# A comment first");
+        node.addBodyLine("SCHEDULED: <2017-03-01 Wed>");
+        for (final String line : body) {
+            node.addBodyLine(line);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.benchmarks;
+
+import org.cowboyprogrammer.org.OrgTimestamp;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.joda.time.LocalDateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+
+/**
+ * Parsing, rendering and repeating timestamps.
+ */
+@State(Scope.Benchmark)
+public class OrgTimestampBenchmark {
+
+    @Param({"<2014-02-26 Wed>",
+            "DEADLINE: <2014-02-26 Wed 17:00-19:30 +2d -3w>",
+            "SCHEDULED: [2014-02-26 Wed 08:00 ++1w]"})
+    public String line;
+
+    private RegexParser parser;
+    private OrgTimestamp timestamp;
+    private OrgTimestamp repeating;
+    private StringBuilder sb;
+
+    @Setup
+    public void setup() {
+        parser = new RegexParser();
+        timestamp = parser.getTimestamp(line);
+        repeating = parser.getTimestamp("<2014-02-26 Wed 17:00 +1d>");
+        sb = new StringBuilder(64);
+    }
+
+    @Benchmark
+    public OrgTimestamp parse() {
+        return parser.getTimestamp(line);
+    }
+
+    @Benchmark
+    public String render() {
+        return timestamp.toString(Locale.ENGLISH);
+    }
+
+    @Benchmark
+    public int renderInto() {
+        sb.setLength(0);
+        timestamp.appendTo(sb, Locale.ENGLISH);
+        return sb.length();
+    }
+
+    @Benchmark
+    public LocalDateTime toNextRepeat() {
+        repeating.toNextRepeat();
+        return repeating.getDate();
+    }
+
+    @Benchmark
+    public LocalDateTime getNextFutureRepetition() {
+        return repeating.getNextFutureRepetition();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.benchmarks;
+
+import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Line classification and header parsing in RegexParser.
+ */
+public class RegexParserBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Lines {
+        @Param({"header", "body", "comment", "timestamp", "range", "stars"})
+        public String kind;
+
+        RegexParser parser;
+        OrgParser session;
+        String line;
+
+        @Setup
+        public void setup() {
+            parser = new RegexParser("NEXT", "WAITING");
+            session = parser.newSession();
+
+            if ("header".equals(kind)) {
+                line = "** TODO A fairly ordinary title :work:";
+            } else if ("body".equals(kind)) {
+                line = "Just some text in the body of an entry, nothing special about it.";
+            } else if ("comment".equals(kind)) {
+                line = "# NONSENSEID: 02DS2G";
+            } else if ("timestamp".equals(kind)) {
+                line = "DEADLINE: <2014-02-26 Wed 17:00-19:30 +2d -3w>";
+            } else if ("range".equals(kind)) {
+                line = "<2013-08-23 Fri 00:34>--<2013-08-23 Fri 08:24>";
+            } else {
+                // Looks like a header at first glance
+                line = "*bold* text starting with a star";
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Headers {
+        @Param({"0", "1", "5", "20"})
+        public int tags;
+
+        // Including TODO and DONE
+        @Param({"4", "60"})
+        public int keywords;
+
+        RegexParser parser;
+        String header;
+
+        @Setup
+        public void setup() {
+            final String[] keys = new String[keywords - 2];
+            keys[0] = "NEXT";
+            keys[1] = "WAITING";
+            for (int i = 2; i < keys.length; i++) {
+                keys[i] = "STATE" + i;
+            }
+            parser = new RegexParser(keys);
+
+            final StringBuilder sb = new StringBuilder("** NEXT A title of some length");
+            if (tags > 0) {
+                sb.append(" :");
+                for (int i = 0; i < tags; i++) {
+                    sb.append("tag").append(i).append(':');
+                }
+            }
+            header = sb.toString();
+        }
+    }
+
+    /**
+     * The checks OrgFile and OrgNode make for a line, in the same order.
+     */
+    @Benchmark
+    public int classify(final Lines state) {
+        return classify(state.parser, state.line);
+    }
+
+    /**
+     * Same as classify, reusing the session's matchers.
+     */
+    @Benchmark
+    public int classifySession(final Lines state) {
+        return classify(state.session, state.line);
+    }
+
+    private static int classify(final OrgParser parser, final String line) {
+        if (parser.isHeaderLine(line)) {
+            return 1;
+        } else if (parser.isCommentLine(line)) {
+            return 2;
+        } else if (parser.isTimestampLine(line)) {
+            return 3;
+        } else if (parser.isTimestampRangeLine(line)) {
+            return 4;
+        }
+        return 0;
+    }
+
+    @Benchmark
+    public OrgNode createFromHeader(final Headers state) {
+        return state.parser.createFromHeader(state.header);
+    }
+}
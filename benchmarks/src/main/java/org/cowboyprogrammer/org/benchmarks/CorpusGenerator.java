@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.benchmarks;
+
+import org.cowboyprogrammer.org.util.DateAppender;
+import org.joda.time.LocalDateTime;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates synthetic org documents for benchmarks and load tests. The
+ * output only depends on the seed and the settings, so the same document
+ * can be recreated anywhere without shipping it around.
+ * <p/>
+ * Documents are produced one entry at a time, so they can be streamed
+ * through openReader() or written to disk at any size without being held
+ * in memory.
+ */
+public class CorpusGenerator {
+
+    private static final String[] WORDS = {"the", "org", "file", "parser", "meeting", "notes",
+            "call", "review", "draft", "release", "bug", "fix", "plan", "week", "project",
+            "budget", "email", "report", "idea", "list", "read", "write", "ship", "test"};
+
+    private static final LocalDateTime BASE_DATE = new LocalDateTime(2017, 1, 1, 0, 0);
+
+    private final long seed;
+
+    private long entries = 1000;
+    private long targetChars = -1;
+    // Relative weight of each level, index 0 is level 1
+    private double[] levelWeights = {4, 3, 2, 1};
+    private String[] todoKeywords = {"TODO", "DONE", "NEXT", "WAITING"};
+    private double[] todoWeights = {4, 4, 1, 1};
+    private double todoShare = 0.6;
+    private int tagVocabulary = 50;
+    private int maxTags = 3;
+    private double tagShare = 0.5;
+    private int minBodyLines = 0;
+    private int maxBodyLines = 8;
+    private double timestampShare = 0.3;
+    private double rangeShare = 0.05;
+    private double commentShare = 0.1;
+
+    public CorpusGenerator(final long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Entries nested as deep as the given depth, one level deeper each time.
+     */
+    public static CorpusGenerator deepNesting(final long seed, final int depth) {
+        final CorpusGenerator generator = new CorpusGenerator(seed);
+        final double[] weights = new double[depth];
+        weights[depth - 1] = 1;
+        generator.setLevelWeights(weights);
+        generator.setBodyLines(0, 1);
+        return generator;
+    }
+
+    /**
+     * Few entries with bodies of the given number of lines.
+     */
+    public static CorpusGenerator giantBodies(final long seed, final int bodyLines) {
+        final CorpusGenerator generator = new CorpusGenerator(seed);
+        generator.setBodyLines(bodyLines, bodyLines);
+        return generator;
+    }
+
+    /**
+     * Every entry tagged with the given number of distinct tags.
+     */
+    public static CorpusGenerator longTagLists(final long seed, final int tags) {
+        final CorpusGenerator generator = new CorpusGenerator(seed);
+        generator.setTags(tags * 4, tags, 1.0);
+        return generator;
+    }
+
+    /**
+     * Number of entries to generate. Ignored if a target size is set.
+     */
+    public void setEntries(final long entries) {
+        this.entries = entries;
+        this.targetChars = -1;
+    }
+
+    /**
+     * Generate entries until the document is at least this many characters.
+     * All output is ASCII, so this is also the size in bytes.
+     */
+    public void setTargetSize(final long chars) {
+        this.targetChars = chars;
+    }
+
+    /**
+     * Relative weights of heading levels, the first weight is for level 1.
+     * A heading is never more than one level deeper than the one before it,
+     * so deep levels only show up below shallower ones.
+     */
+    public void setLevelWeights(final double... weights) {
+        if (weights.length == 0) {
+            throw new IllegalArgumentException("Need at least one level");
+        }
+        this.levelWeights = weights.clone();
+    }
+
+    /**
+     * @param share    of entries with a TODO keyword
+     * @param keywords to pick from
+     * @param weights  relative weight of each keyword
+     */
+    public void setTodoKeywords(final double share, final String[] keywords, final double[] weights) {
+        if (keywords.length != weights.length) {
+            throw new IllegalArgumentException("Need one weight per keyword");
+        }
+        this.todoShare = share;
+        this.todoKeywords = keywords.clone();
+        this.todoWeights = weights.clone();
+    }
+
+    /**
+     * @param vocabulary number of distinct tags in the corpus
+     * @param maxPerEntry most tags on a single entry
+     * @param share      of entries which have tags
+     */
+    public void setTags(final int vocabulary, final int maxPerEntry, final double share) {
+        this.tagVocabulary = vocabulary;
+        this.maxTags = maxPerEntry;
+        this.tagShare = share;
+    }
+
+    public void setBodyLines(final int min, final int max) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Invalid body line range");
+        }
+        this.minBodyLines = min;
+        this.maxBodyLines = max;
+    }
+
+    /**
+     * Share of entries with a timestamp, a timestamp range and comments.
+     */
+    public void setShares(final double timestamps, final double ranges, final double comments) {
+        this.timestampShare = timestamps;
+        this.rangeShare = ranges;
+        this.commentShare = comments;
+    }
+
+    /**
+     * @return the whole document as a string, only sensible for small ones
+     */
+    public String generate() {
+        final StringBuilder sb = new StringBuilder();
+        final State state = new State();
+        while (state.next(sb)) {
+            // Keep going
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the document as UTF-8 to the file.
+     */
+    public void writeTo(final File file) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), Charset.forName("UTF-8")), 1 << 16);
+        try {
+            writeTo(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    public void writeTo(final Writer writer) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        final State state = new State();
+        boolean more = true;
+        while (more) {
+            more = state.next(sb);
+            writer.append(sb);
+            sb.setLength(0);
+        }
+        writer.flush();
+    }
+
+    /**
+     * A reader which generates the document as it is read.
+     */
+    public Reader openReader() {
+        return new Reader() {
+            private final State state = new State();
+            private final StringBuilder sb = new StringBuilder();
+            private int position = 0;
+            private boolean more = true;
+
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                while (position >= sb.length()) {
+                    if (!more) {
+                        return -1;
+                    }
+                    sb.setLength(0);
+                    position = 0;
+                    more = state.next(sb);
+                }
+                final int count = Math.min(len, sb.length() - position);
+                sb.getChars(position, position + count, cbuf, off);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+                more = false;
+                sb.setLength(0);
+            }
+        };
+    }
+
+    /**
+     * Generation state, one per document.
+     */
+    private final class State {
+        private final Random random = new Random(seed);
+        private boolean started = false;
+        private long generated = 0;
+        private long chars = 0;
+        private int level = 0;
+
+        /**
+         * Appends the next part of the document.
+         *
+         * @return false if this was the last part
+         */
+        boolean next(final StringBuilder sb) {
+            final int before = sb.length();
+            if (!started) {
+                sb.append("#+TITLE: Generated corpus ").append(seed).append('\n');
+                sb.append("#+STARTUP: overview\n\n");
+                started = true;
+            } else {
+                appendEntry(sb);
+                generated++;
+            }
+            chars += sb.length() - before;
+            if (targetChars >= 0) {
+                return chars < targetChars;
+            }
+            return generated < entries;
+        }
+
+        private void appendEntry(final StringBuilder sb) {
+            level = Math.min(pick(levelWeights) + 1, level + 1);
+            for (int i = 0; i < level; i++) {
+                sb.append('*');
+            }
+            sb.append(' ');
+            if (random.nextDouble() < todoShare) {
+                sb.append(todoKeywords[pick(todoWeights)]).append(' ');
+            }
+            appendWords(sb, 2 + random.nextInt(6));
+            if (maxTags > 0 && tagVocabulary > 0 && random.nextDouble() < tagShare) {
+                final int count = 1 + random.nextInt(maxTags);
+                final int first = random.nextInt(tagVocabulary);
+                sb.append(" :");
+                for (int i = 0; i < count; i++) {
+                    // Consecutive ids so tags on an entry are distinct
+                    sb.append("tag").append((first + i) % tagVocabulary).append(':');
+                }
+            }
+            sb.append('\n');
+
+            if (random.nextDouble() < commentShare) {
+                sb.append("# ");
+                appendWords(sb, 3);
+                sb.append('\n');
+            }
+            if (random.nextDouble() < timestampShare) {
+                appendTimestamp(sb);
+            }
+            if (random.nextDouble() < rangeShare) {
+                final LocalDateTime start = randomDate();
+                sb.append('<');
+                appendDate(sb, start);
+                sb.append(">--<");
+                appendDate(sb, start.plusDays(1 + random.nextInt(10)));
+                sb.append(">\n");
+            }
+
+            final int lines = minBodyLines + random.nextInt(maxBodyLines - minBodyLines + 1);
+            for (int i = 0; i < lines; i++) {
+                if (random.nextInt(6) == 0) {
+                    sb.append("- ");
+                }
+                appendWords(sb, 4 + random.nextInt(10));
+                sb.append('\n');
+            }
+            if (lines > 0) {
+                sb.append('\n');
+            }
+        }
+
+        private void appendTimestamp(final StringBuilder sb) {
+            final int type = random.nextInt(3);
+            if (type == 1) {
+                sb.append("DEADLINE: ");
+            } else if (type == 2) {
+                sb.append("SCHEDULED: ");
+            }
+            final boolean inactive = random.nextInt(5) == 0;
+            sb.append(inactive ? '[' : '<');
+            LocalDateTime date = randomDate();
+            appendDate(sb, date);
+            if (random.nextBoolean()) {
+                date = date.withTime(random.nextInt(24), random.nextInt(60), 0, 0);
+                sb.append(' ');
+                appendTime(sb, date);
+            }
+            if (random.nextInt(4) == 0) {
+                final String[] repeaters = {"+", "++", ".+"};
+                sb.append(' ').append(repeaters[random.nextInt(3)])
+                        .append(1 + random.nextInt(3)).append("dwmy".charAt(random.nextInt(4)));
+            }
+            if (type == 1 && random.nextBoolean()) {
+                sb.append(" -").append(1 + random.nextInt(5)).append('d');
+            }
+            sb.append(inactive ? ']' : '>').append('\n');
+        }
+
+        private LocalDateTime randomDate() {
+            return BASE_DATE.plusDays(random.nextInt(3 * 365));
+        }
+
+        private void appendDate(final StringBuilder sb, final LocalDateTime date) {
+            try {
+                DateAppender.appendDate(sb, date, Locale.ENGLISH);
+            } catch (IOException e) {
+                // StringBuilder does not throw
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void appendTime(final StringBuilder sb, final LocalDateTime date) {
+            try {
+                DateAppender.appendTime(sb, date.getHourOfDay(), date.getMinuteOfHour());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void appendWords(final StringBuilder sb, final int count) {
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                sb.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+        }
+
+        private int pick(final double[] weights) {
+            double total = 0;
+            for (final double w : weights) {
+                total += w;
+            }
+            double r = random.nextDouble() * total;
+            for (int i = 0; i < weights.length; i++) {
+                r -= weights[i];
+                if (r < 0) {
+                    return i;
+                }
+            }
+            return weights.length - 1;
+        }
+    }
+
+    /**
+     * Writes a corpus to a file.
+     * <p/>
+     * Usage: CorpusGenerator file sizeInBytes [seed]
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CorpusGenerator file sizeInBytes [seed]");
+            System.exit(1);
+        }
+        final CorpusGenerator generator = new CorpusGenerator(
+                args.length > 2 ? Long.parseLong(args[2]) : 0);
+        generator.setTargetSize(Long.parseLong(args[1]));
+        generator.writeTo(new File(args[0]));
+    }
+}
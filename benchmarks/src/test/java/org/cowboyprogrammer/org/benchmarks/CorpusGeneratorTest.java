@@ -0,0 +1,82 @@
+package org.cowboyprogrammer.org.benchmarks;
+
+import org.cowboyprogrammer.org.OrgFile;
+import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CorpusGeneratorTest {
+
+    @Test
+    public void testSameSeedSameDocument() throws Exception {
+        final CorpusGenerator a = new CorpusGenerator(7);
+        final CorpusGenerator b = new CorpusGenerator(7);
+        assertEquals(a.generate(), b.generate());
+        assertTrue(!a.generate().equals(new CorpusGenerator(8).generate()));
+    }
+
+    @Test
+    public void testReaderAndWriterMatchGenerate() throws Exception {
+        final CorpusGenerator generator = new CorpusGenerator(3);
+        generator.setEntries(500);
+        final String expected = generator.generate();
+
+        final StringWriter writer = new StringWriter();
+        generator.writeTo(writer);
+        assertEquals(expected, writer.toString());
+
+        final StringBuilder read = new StringBuilder();
+        final BufferedReader reader = new BufferedReader(generator.openReader(), 13);
+        final char[] buf = new char[37];
+        int n;
+        while ((n = reader.read(buf)) >= 0) {
+            read.append(buf, 0, n);
+        }
+        assertEquals(expected, read.toString());
+    }
+
+    @Test
+    public void testParsesToRequestedEntries() throws Exception {
+        final CorpusGenerator generator = new CorpusGenerator(1);
+        generator.setEntries(300);
+        final OrgFile file = OrgFile.createFromBufferedReader(new RegexParser("NEXT", "WAITING"),
+                "corpus.org", new BufferedReader(generator.openReader()));
+        assertEquals(300, count(file) - 1);
+    }
+
+    @Test
+    public void testTargetSize() throws Exception {
+        final CorpusGenerator generator = new CorpusGenerator(1);
+        generator.setTargetSize(100000);
+        final int length = generator.generate().length();
+        assertTrue(length >= 100000);
+        assertTrue(length < 110000);
+    }
+
+    @Test
+    public void testDeepNesting() throws Exception {
+        final CorpusGenerator generator = CorpusGenerator.deepNesting(1, 200);
+        generator.setEntries(200);
+        OrgNode node = OrgFile.createFromString(new RegexParser(), "deep.org", generator.generate());
+        int depth = 0;
+        while (!node.getSubNodes().isEmpty()) {
+            node = node.getSubNodes().get(0);
+            depth++;
+        }
+        assertEquals(200, depth);
+    }
+
+    private static int count(final OrgNode node) {
+        int count = 1;
+        for (final OrgNode child : node.getSubNodes()) {
+            count += count(child);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,63 @@
+package org.cowboyprogrammer.org.benchmarks;
+
+import org.cowboyprogrammer.org.CompactOrgFile;
+import org.cowboyprogrammer.org.OrgFile;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertTrue;
+
+public class FootprintTest {
+
+    private static final int COPIES = 5;
+    // Roughly an order of magnitude, with some room for what the GC does
+    private static final double MIN_RATIO = 8;
+
+    @Test
+    public void testCompactAboutTenthOfTree() throws Exception {
+        final CorpusGenerator generator = new CorpusGenerator(42);
+        generator.setEntries(20000);
+        final String content = generator.generate();
+        final RegexParser parser = new RegexParser();
+        final File file = File.createTempFile("footprint", ".org");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(Charset.forName("UTF-8")));
+
+        final Object[] kept = new Object[COPIES];
+        long before = usedHeap();
+        for (int i = 0; i < COPIES; i++) {
+            kept[i] = OrgFile.createFromString(parser, "footprint.org", content);
+        }
+        final long tree = (usedHeap() - before) / COPIES;
+
+        before = clearAndMeasure(kept);
+        for (int i = 0; i < COPIES; i++) {
+            kept[i] = CompactOrgFile.read(parser, file);
+        }
+        final long compact = (usedHeap() - before) / COPIES;
+
+        final String message = String.format("tree %d bytes, compact %d bytes, ratio %.2f",
+                tree, compact, (double) tree / compact);
+        System.out.println(message);
+        assertTrue(message, (double) tree / compact >= MIN_RATIO);
+    }
+
+    private static long clearAndMeasure(final Object[] kept) {
+        for (int i = 0; i < kept.length; i++) {
+            kept[i] = null;
+        }
+        return usedHeap();
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
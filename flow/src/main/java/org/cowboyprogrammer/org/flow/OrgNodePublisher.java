@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.flow;
+
+import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.OrgReader;
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.ParseOptions;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the nodes of an org file as they are parsed, no faster than
+ * subscribers request them. Reading stops whenever there is no demand, and
+ * the file is closed as soon as the subscription is cancelled.
+ * <p/>
+ * Nodes come in file order, starting with the OrgFile, and are the same as
+ * from OrgReader: they know their parent but are not added to its sub
+ * nodes. Every subscriber gets its own reader, opened on its first request.
+ */
+public class OrgNodePublisher implements Flow.Publisher<OrgNode> {
+
+    private final Callable<OrgReader> opener;
+    private final Executor executor;
+
+    /**
+     * @param opener   Opens a new reader for every subscriber
+     * @param executor Reads and delivers nodes, one task at a time per subscriber
+     */
+    public OrgNodePublisher(final Callable<OrgReader> opener, final Executor executor) {
+        if (opener == null || executor == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        this.opener = opener;
+        this.executor = executor;
+    }
+
+    /**
+     * Publishes the nodes of a file.
+     *
+     * @param parser   The OrgParser to use
+     * @param file     The file to read
+     * @param options  How to parse
+     * @param executor Reads and delivers nodes
+     */
+    public static OrgNodePublisher ofFile(final OrgParser parser, final File file,
+                                          final ParseOptions options, final Executor executor) {
+        return new OrgNodePublisher(
+                () -> new OrgReader(parser, file.getName(), new FileInputStream(file), options),
+                executor);
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super OrgNode> subscriber) {
+        Objects.requireNonNull(subscriber, "Not allowed to be null!");
+        subscriber.onSubscribe(new NodeSubscription(subscriber));
+    }
+
+    private final class NodeSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super OrgNode> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // Number of times drain was asked for, only one runs at a time
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private volatile Throwable badRequest = null;
+
+        // Only touched from run
+        private OrgReader reader = null;
+        private boolean done = false;
+
+        NodeSubscription(final Flow.Subscriber<? super OrgNode> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Must request a positive number, got " + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                if (done) {
+                    return;
+                }
+                if (cancelled) {
+                    done = true;
+                    closeReader();
+                    return;
+                }
+                if (badRequest != null) {
+                    error(badRequest);
+                    return;
+                }
+                final long requested = demand.get();
+                long emitted = 0;
+                try {
+                    while (emitted != requested && !cancelled) {
+                        if (reader == null) {
+                            reader = opener.call();
+                        }
+                        final OrgNode node = reader.next();
+                        if (node == null) {
+                            done = true;
+                            closeReader();
+                            subscriber.onComplete();
+                            return;
+                        }
+                        subscriber.onNext(node);
+                        emitted++;
+                    }
+                } catch (Exception e) {
+                    error(e);
+                    return;
+                }
+                if (emitted != 0 && requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+                missed = pending.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void error(final Throwable e) {
+            done = true;
+            closeReader();
+            subscriber.onError(e);
+        }
+
+        private void closeReader() {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Nothing more will be read
+                }
+                reader = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.cowboyprogrammer.org.flow;
+
+import org.cowboyprogrammer.org.OrgFile;
+import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.OrgReader;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OrgNodePublisherTest {
+
+    private static final String ORG = "preamble\n* one\nbody\n** two\n* three\n* four\n";
+    private static final Executor DIRECT = Runnable::run;
+
+    private static class Recorder implements Flow.Subscriber<OrgNode> {
+        final List<String> titles = new ArrayList<>();
+        Flow.Subscription subscription;
+        Throwable error;
+        boolean complete;
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(final OrgNode item) {
+            titles.add(item instanceof OrgFile ? "file" : item.getTitle());
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+    }
+
+    private static class ClosingReader extends StringReader {
+        boolean closed = false;
+
+        ClosingReader(final String s) {
+            super(s);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            super.close();
+        }
+    }
+
+    @Test
+    public void testAllNodesInOrder() {
+        final OrgNodePublisher publisher = new OrgNodePublisher(
+                () -> new OrgReader(new RegexParser(), "test.org", new StringReader(ORG)), DIRECT);
+        final Recorder recorder = new Recorder() {
+            @Override
+            public void onNext(final OrgNode item) {
+                super.onNext(item);
+                subscription.request(1);
+            }
+        };
+        publisher.subscribe(recorder);
+        recorder.subscription.request(1);
+
+        assertEquals(List.of("file", "one", "two", "three", "four"), recorder.titles);
+        assertTrue(recorder.complete);
+        assertNull(recorder.error);
+    }
+
+    @Test
+    public void testOnlyAsManyAsRequested() {
+        final ClosingReader input = new ClosingReader(ORG);
+        final int[] opened = {0};
+        final OrgNodePublisher publisher = new OrgNodePublisher(() -> {
+            opened[0]++;
+            return new OrgReader(new RegexParser(), "test.org", input);
+        }, DIRECT);
+        final Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        // Nothing is opened before there is demand
+        assertEquals(0, opened[0]);
+
+        recorder.subscription.request(2);
+        assertEquals(List.of("file", "one"), recorder.titles);
+        recorder.subscription.request(1);
+        assertEquals(List.of("file", "one", "two"), recorder.titles);
+        assertFalse(recorder.complete);
+        assertFalse(input.closed);
+
+        recorder.subscription.cancel();
+        assertTrue(input.closed);
+        recorder.subscription.request(5);
+        assertEquals(3, recorder.titles.size());
+        assertFalse(recorder.complete);
+        assertEquals(1, opened[0]);
+    }
+
+    @Test
+    public void testUnboundedRequest() {
+        final OrgNodePublisher publisher = new OrgNodePublisher(
+                () -> new OrgReader(new RegexParser(), "test.org", new StringReader(ORG)), DIRECT);
+        final Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        recorder.subscription.request(Long.MAX_VALUE);
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(5, recorder.titles.size());
+        assertTrue(recorder.complete);
+    }
+
+    @Test
+    public void testNonPositiveRequestFails() {
+        final ClosingReader input = new ClosingReader(ORG);
+        final OrgNodePublisher publisher = new OrgNodePublisher(
+                () -> new OrgReader(new RegexParser(), "test.org", input), DIRECT);
+        final Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        recorder.subscription.request(1);
+        recorder.subscription.request(0);
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+        assertTrue(input.closed);
+        assertEquals(1, recorder.titles.size());
+    }
+
+    @Test
+    public void testOpenFailureIsAnError() {
+        final OrgNodePublisher publisher = new OrgNodePublisher(() -> {
+            throw new java.io.FileNotFoundException("missing.org");
+        }, DIRECT);
+        final Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        recorder.subscription.request(1);
+        assertTrue(recorder.error instanceof java.io.FileNotFoundException);
+        assertTrue(recorder.titles.isEmpty());
+    }
+}
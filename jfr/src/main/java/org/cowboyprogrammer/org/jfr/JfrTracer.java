@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.jfr;
+
+import jdk.jfr.EventType;
+import org.cowboyprogrammer.org.OrgFile;
+import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.OrgTracer;
+import org.cowboyprogrammer.org.parser.LineKind;
+import org.cowboyprogrammer.org.parser.ParseListener;
+
+/**
+ * Emits Java Flight Recorder events for everything the library reports to
+ * its tracer. Install it once with:
+ * <pre>
+ * OrgFile.setTracer(new JfrTracer());
+ * </pre>
+ * When no recording has the events enabled, a parse costs one check and
+ * nothing is timed per line.
+ */
+public class JfrTracer implements OrgTracer {
+
+    /**
+     * Lines parsing slower than this are reported by default, in nanoseconds.
+     */
+    public static final long DEFAULT_SLOW_LINE_NANOS = 1000000;
+
+    private static final EventType PARSE_TYPE = EventType.getEventType(OrgParseEvent.class);
+    private static final EventType SLOW_LINE_TYPE = EventType.getEventType(OrgSlowLineEvent.class);
+
+    private final long slowLineNanos;
+
+    public JfrTracer() {
+        this(DEFAULT_SLOW_LINE_NANOS);
+    }
+
+    /**
+     * @param slowLineNanos lines taking at least this long to parse are
+     *                      reported as OrgSlowLineEvent
+     */
+    public JfrTracer(final long slowLineNanos) {
+        if (slowLineNanos < 0) {
+            throw new IllegalArgumentException("Threshold can't be negative");
+        }
+        this.slowLineNanos = slowLineNanos;
+    }
+
+    @Override
+    public ParseListener parseStarted(final String path) {
+        if (!PARSE_TYPE.isEnabled() && !SLOW_LINE_TYPE.isEnabled()) {
+            return null;
+        }
+        return new ParseTrace(path, slowLineNanos);
+    }
+
+    @Override
+    public Object serializeStarted(final String operation, final OrgNode node) {
+        final OrgSerializeEvent event = new OrgSerializeEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.operation = operation;
+        event.title = node instanceof OrgFile ? ((OrgFile) node).getFilename() : node.getTitle();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void serializeFinished(final Object token, final long size) {
+        final OrgSerializeEvent event = (OrgSerializeEvent) token;
+        event.size = size;
+        event.commit();
+    }
+
+    @Override
+    public Object fileOperationStarted(final String operation, final String path,
+                                       final String target) {
+        final OrgFileOperationEvent event = new OrgFileOperationEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.operation = operation;
+        event.path = path;
+        event.target = target;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void fileOperationFinished(final Object token, final boolean success) {
+        final OrgFileOperationEvent event = (OrgFileOperationEvent) token;
+        event.success = success;
+        event.commit();
+    }
+
+    /**
+     * Follows a single parse.
+     */
+    private static final class ParseTrace implements ParseListener {
+        private final OrgParseEvent event = new OrgParseEvent();
+        private final String path;
+        private final long slowLineNanos;
+        private final boolean slowLines;
+        private long lines = 0;
+        private long nodes = 0;
+        private int lastLength = 0;
+
+        ParseTrace(final String path, final long slowLineNanos) {
+            this.path = path;
+            this.slowLineNanos = slowLineNanos;
+            this.slowLines = SLOW_LINE_TYPE.isEnabled();
+            event.path = path;
+            event.begin();
+        }
+
+        @Override
+        public void lineRead(final int length, final long nanos) {
+            lastLength = length;
+        }
+
+        @Override
+        public void lineParsed(final LineKind kind, final long nanos) {
+            lines++;
+            if (slowLines && nanos >= slowLineNanos) {
+                final OrgSlowLineEvent slow = new OrgSlowLineEvent();
+                slow.path = path;
+                slow.lineNumber = lines;
+                slow.kind = kind.name();
+                slow.length = lastLength;
+                slow.parseTime = nanos;
+                slow.commit();
+            }
+        }
+
+        @Override
+        public void nodeFinished(final OrgNode node, final int depth) {
+            if (depth > 0) {
+                nodes++;
+            }
+        }
+
+        @Override
+        public void parseFinished(final OrgFile file, final long bytes) {
+            event.bytes = bytes;
+            event.nodes = nodes;
+            event.lines = lines;
+            event.commit();
+        }
+    }
+}
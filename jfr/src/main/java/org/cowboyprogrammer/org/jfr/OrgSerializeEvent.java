@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Turning a tree into text with treeToString, writeToBuffer or writeToFile.
+ */
+@Name("org.cowboyprogrammer.org.Serialize")
+@Label("Org Serialize")
+@Category("Org Parser")
+@Description("Writing an org tree as text")
+public class OrgSerializeEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Title")
+    @Description("Title of the root node, or the filename for files")
+    public String title;
+
+    @Label("Size")
+    @Description("Characters produced, or bytes for writeToFile")
+    public long size;
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A single line which took longer than the tracer's threshold to parse.
+ */
+@Name("org.cowboyprogrammer.org.SlowLine")
+@Label("Org Slow Line")
+@Category("Org Parser")
+@Description("A line which took longer than the threshold to parse")
+@StackTrace(false)
+public class OrgSlowLineEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Line Number")
+    public long lineNumber;
+
+    @Label("Kind")
+    @Description("What the line was parsed as")
+    public String kind;
+
+    @Label("Length")
+    @Description("Characters in the line")
+    public int length;
+
+    @Label("Parse Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long parseTime;
+}
@@ -0,0 +1,75 @@
+package org.cowboyprogrammer.org.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.cowboyprogrammer.org.OrgFile;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JfrTracerTest {
+
+    @After
+    public void tearDown() {
+        OrgFile.setTracer(null);
+    }
+
+    @Test
+    public void testEventsAreRecorded() throws Exception {
+        OrgFile.setTracer(new JfrTracer(0));
+        final File org = File.createTempFile("jfr", ".org");
+        org.deleteOnExit();
+        Files.write(org.toPath(), "* one\nbody\n* two\n<2014-02-26 Wed>\n".getBytes("UTF-8"));
+
+        final Recording recording = new Recording();
+        recording.enable(OrgParseEvent.class);
+        recording.enable(OrgSlowLineEvent.class);
+        recording.enable(OrgSerializeEvent.class);
+        recording.enable(OrgFileOperationEvent.class);
+        recording.start();
+
+        final OrgFile file = OrgFile.createFromFile(new RegexParser(), org);
+        file.treeToString();
+        file.delete(org.getPath());
+
+        recording.stop();
+        final File dump = File.createTempFile("jfr", ".jfr");
+        dump.deleteOnExit();
+        recording.dump(dump.toPath());
+        recording.close();
+
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(dump.toPath());
+        int parses = 0, lines = 0, serializes = 0, fileOps = 0;
+        for (final RecordedEvent event : events) {
+            final String name = event.getEventType().getName();
+            if (name.equals("org.cowboyprogrammer.org.Parse")) {
+                parses++;
+                assertEquals(org.getPath(), event.getString("path"));
+                assertEquals(34, event.getLong("bytes"));
+                assertEquals(2, event.getLong("nodes"));
+                assertEquals(4, event.getLong("lines"));
+            } else if (name.equals("org.cowboyprogrammer.org.SlowLine")) {
+                lines++;
+            } else if (name.equals("org.cowboyprogrammer.org.Serialize")) {
+                serializes++;
+                assertEquals("treeToString", event.getString("operation"));
+            } else if (name.equals("org.cowboyprogrammer.org.FileOperation")) {
+                fileOps++;
+                assertEquals("delete", event.getString("operation"));
+                assertTrue(event.getBoolean("success"));
+            }
+        }
+        assertEquals(1, parses);
+        assertEquals(4, lines);
+        assertEquals(1, serializes);
+        assertEquals(1, fileOps);
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.ParseOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loads org files without blocking the calling thread. Files are read in
+ * chunks with an AsynchronousFileChannel and each chunk is parsed as it
+ * arrives, so no thread sits waiting on a read, however many files are
+ * loading at once.
+ * <p/>
+ * The result is the same as from OrgFile.createFromFile, including what
+ * writeToFile needs to copy unmodified entries.
+ */
+public final class AsyncOrgLoader {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private AsyncOrgLoader() {
+    }
+
+    /**
+     * Start loading a file.
+     *
+     * @param parser     The OrgParser to use
+     * @param file       The file to read
+     * @param options    How to parse
+     * @param attachment Given to the handler
+     * @param handler    Told when the file is loaded or loading failed, may be
+     *                   null. Called on a thread of the channel's thread pool,
+     *                   and with a CancellationException if cancelled.
+     * @return a future which can also be used to cancel loading
+     */
+    public static <A> Future<OrgFile> load(final OrgParser parser, final File file,
+                                           final ParseOptions options, final A attachment,
+                                           final CompletionHandler<OrgFile, ? super A> handler) {
+        final Load<A> load = new Load<A>(attachment, handler);
+        try {
+            final OrgSource source = new OrgSource(file, options.getCharset(), file.length(),
+                    file.lastModified());
+            load.start(new IncrementalOrgParser(parser, file.getName(), options, source),
+                    AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ));
+        } catch (IOException e) {
+            load.fail(e);
+        } catch (RuntimeException e) {
+            load.fail(e);
+        }
+        return load;
+    }
+
+    /**
+     * Start loading a file.
+     *
+     * @param parser  The OrgParser to use
+     * @param file    The file to read
+     * @param options How to parse
+     * @return a future which can also be used to cancel loading
+     */
+    public static Future<OrgFile> load(final OrgParser parser, final File file,
+                                       final ParseOptions options) {
+        return load(parser, file, options, null, null);
+    }
+
+    private static final class Load<A> implements Future<OrgFile>, CompletionHandler<Integer, Void> {
+        private static final int RUNNING = 0;
+        private static final int DONE = 1;
+        private static final int FAILED = 2;
+        private static final int CANCELLED = 3;
+
+        private final A attachment;
+        private final CompletionHandler<OrgFile, ? super A> handler;
+        private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+
+        // Only touched by one read completion at a time
+        private IncrementalOrgParser parser;
+        private AsynchronousFileChannel channel;
+        private long position = 0;
+
+        // Guarded by this
+        private int state = RUNNING;
+        private OrgFile result = null;
+        private Throwable failure = null;
+
+        Load(final A attachment, final CompletionHandler<OrgFile, ? super A> handler) {
+            this.attachment = attachment;
+            this.handler = handler;
+        }
+
+        void start(final IncrementalOrgParser parser, final AsynchronousFileChannel channel) {
+            this.parser = parser;
+            synchronized (this) {
+                this.channel = channel;
+                if (state != RUNNING) {
+                    // Cancelled before it started
+                    closeChannel();
+                    return;
+                }
+            }
+            channel.read(buffer, position, null, this);
+        }
+
+        @Override
+        public void completed(final Integer read, final Void ignored) {
+            if (isDone()) {
+                return;
+            }
+            try {
+                if (read < 0) {
+                    finish(parser.finish());
+                    return;
+                }
+                buffer.flip();
+                parser.feed(buffer);
+                buffer.clear();
+                position += read;
+                channel.read(buffer, position, null, this);
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        @Override
+        public void failed(final Throwable exc, final Void ignored) {
+            if (exc instanceof AsynchronousCloseException && isCancelled()) {
+                return;
+            }
+            fail(exc);
+        }
+
+        private void finish(final OrgFile file) {
+            synchronized (this) {
+                if (state != RUNNING) {
+                    return;
+                }
+                state = DONE;
+                result = file;
+                closeChannel();
+                notifyAll();
+            }
+            if (handler != null) {
+                handler.completed(file, attachment);
+            }
+        }
+
+        void fail(final Throwable exc) {
+            synchronized (this) {
+                if (state != RUNNING) {
+                    return;
+                }
+                state = FAILED;
+                failure = exc;
+                closeChannel();
+                notifyAll();
+            }
+            if (handler != null) {
+                handler.failed(exc, attachment);
+            }
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            synchronized (this) {
+                if (state != RUNNING) {
+                    return false;
+                }
+                state = CANCELLED;
+                // Stops any read in progress
+                closeChannel();
+                notifyAll();
+            }
+            if (handler != null) {
+                handler.failed(new CancellationException(), attachment);
+            }
+            return true;
+        }
+
+        private void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Nothing more to read anyway
+                }
+            }
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return state != RUNNING;
+        }
+
+        @Override
+        public synchronized OrgFile get() throws InterruptedException, ExecutionException {
+            while (state == RUNNING) {
+                wait();
+            }
+            return result();
+        }
+
+        @Override
+        public synchronized OrgFile get(final long timeout, final TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (state == RUNNING) {
+                final long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+            return result();
+        }
+
+        private OrgFile result() throws ExecutionException {
+            if (state == CANCELLED) {
+                throw new CancellationException();
+            } else if (state == FAILED) {
+                throw new ExecutionException(failure);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,563 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.ParseListener;
+import org.cowboyprogrammer.org.parser.ParseOptions;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Stack;
+
+/**
+ * A read only org file kept in parallel arrays instead of one OrgNode per
+ * entry. Entries are identified by their index in file order, where 0 is
+ * the file itself. Structure, todo keywords, tags and titles are kept in
+ * memory, todo keywords and tags once each. Everything below the header
+ * line is only parsed when asked for. When read from a file it is not even
+ * kept, only where it is in the file, so an entry costs a few dozen bytes
+ * plus its title. Otherwise it is kept as UTF-8.
+ * <p/>
+ * OrgNodes can still be had for single entries with view, or for the whole
+ * file with toOrgFile.
+ */
+public class CompactOrgFile {
+
+    /**
+     * Returned by getParent, getFirstChild and getNextSibling if there is none.
+     */
+    public static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final OrgParser parser;
+    private final String filename;
+    // The file bodies are read from, or null if they are in text
+    private final OrgSource source;
+    private int size = 0;
+
+    // Tree structure
+    private int[] level;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] nextSibling;
+
+    // Index into todoNames, or NONE
+    private int[] todo;
+    private final List<String> todoNames = new ArrayList<String>();
+
+    // Tags of entry i are tagPool[tagStart[i]] to tagPool[tagStart[i] + tagCount[i]],
+    // which are indices into tagNames
+    private int[] tagStart;
+    private int[] tagCount;
+    private int[] tagPool = new int[INITIAL_CAPACITY];
+    private int tagPoolSize = 0;
+    private final List<String> tagNames = new ArrayList<String>();
+
+    // Titles are UTF-8 in text. Bodies are the lines below the header as they
+    // are in org format, bytes in source or UTF-8 in text.
+    private int[] titleStart;
+    private int[] titleLength;
+    private long[] bodyStart;
+    private int[] bodyLength;
+    private byte[] text = new byte[INITIAL_CAPACITY * 32];
+    private int textSize = 0;
+
+    private final HashMap<String, Integer> tagIds = new HashMap<String, Integer>();
+
+    // Only needed while building
+    private int[] lastAtDepth = new int[8];
+    private final StringBuilder sb = new StringBuilder();
+
+    private CompactOrgFile(final OrgParser parser, final String filename, final OrgSource source) {
+        this.parser = parser;
+        this.filename = filename;
+        this.source = source;
+        level = new int[INITIAL_CAPACITY];
+        parent = new int[INITIAL_CAPACITY];
+        firstChild = new int[INITIAL_CAPACITY];
+        nextSibling = new int[INITIAL_CAPACITY];
+        todo = new int[INITIAL_CAPACITY];
+        tagStart = new int[INITIAL_CAPACITY];
+        tagCount = new int[INITIAL_CAPACITY];
+        titleStart = new int[INITIAL_CAPACITY];
+        titleLength = new int[INITIAL_CAPACITY];
+        bodyStart = new long[INITIAL_CAPACITY];
+        bodyLength = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Read an org file. Only one entry at a time is kept as an OrgNode
+     * while reading.
+     *
+     * @param parser   The OrgParser to use
+     * @param filename The filename without the path part
+     * @param reader   The file contents, closed when done
+     * @param listener Told about every line and node, may be null
+     */
+    public static CompactOrgFile read(final OrgParser parser, final String filename,
+                                      final Reader reader, final ParseListener listener)
+            throws IOException, ParseException {
+        final CompactOrgFile file = new CompactOrgFile(parser, filename, null);
+        file.readAll(new OrgReader(parser, filename, reader, new ParseOptions().setListener(listener)));
+        return file;
+    }
+
+    /**
+     * Read an org file.
+     *
+     * @param parser   The OrgParser to use
+     * @param filename The filename without the path part
+     * @param reader   The file contents, closed when done
+     */
+    public static CompactOrgFile read(final OrgParser parser, final String filename,
+                                      final Reader reader) throws IOException, ParseException {
+        return read(parser, filename, reader, null);
+    }
+
+    /**
+     * Read the headers of an org file. The rest is read from the file when
+     * asked for, which fails if the file has changed by then.
+     *
+     * @param parser  The OrgParser to use
+     * @param file    The file to open and parse
+     * @param options How to parse, outline and arena are ignored
+     */
+    public static CompactOrgFile read(final OrgParser parser, final File file,
+                                      final ParseOptions options) throws IOException, ParseException {
+        final OrgSource source = new OrgSource(file, options.getCharset(), file.length(),
+                file.lastModified());
+        final ParseOptions outline = new ParseOptions()
+                .setCharset(options.getCharset())
+                .setFileTodoKeywords(options.isFileTodoKeywords())
+                .setFilter(options.getFilter())
+                .setMaxLevel(options.getMaxLevel())
+                .setLenient(options.isLenient())
+                .setOutline(true);
+        final CompactOrgFile compact = new CompactOrgFile(parser, file.getName(), source);
+        compact.readAll(new OrgReader(parser, file.getName(),
+                OrgFile.openLines(new FileInputStream(file), options.getCharset()), source,
+                OrgFile.traced(file.getName(), options.getListener()), outline, false));
+        return compact;
+    }
+
+    /**
+     * Read the headers of an org file in UTF-8.
+     *
+     * @param parser The OrgParser to use
+     * @param file   The file to open and parse
+     */
+    public static CompactOrgFile read(final OrgParser parser, final File file)
+            throws IOException, ParseException {
+        return read(parser, file, new ParseOptions());
+    }
+
+    /**
+     * Copy an existing tree.
+     */
+    public static CompactOrgFile fromOrgFile(final OrgFile orgFile) {
+        final CompactOrgFile file = new CompactOrgFile(orgFile.getParser(), orgFile.getFilename(), null);
+        final Stack<OrgNode> nodes = new Stack<OrgNode>();
+        final Stack<Integer> depths = new Stack<Integer>();
+        nodes.push(orgFile);
+        depths.push(0);
+        while (!nodes.isEmpty()) {
+            final OrgNode node = nodes.pop();
+            final int depth = depths.pop();
+            file.add(node, depth);
+            final List<OrgNode> children = node.getSubNodes();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                nodes.push(children.get(i));
+                depths.push(depth + 1);
+            }
+        }
+        file.finish();
+        return file;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public OrgParser getParser() {
+        return parser;
+    }
+
+    /**
+     * Number of entries, including the file itself at index 0.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getLevel(final int index) {
+        checkIndex(index);
+        return level[index];
+    }
+
+    public int getParent(final int index) {
+        checkIndex(index);
+        return parent[index];
+    }
+
+    public int getFirstChild(final int index) {
+        checkIndex(index);
+        return firstChild[index];
+    }
+
+    public int getNextSibling(final int index) {
+        checkIndex(index);
+        return nextSibling[index];
+    }
+
+    /**
+     * @return the todo keyword, or null if there is none
+     */
+    public String getTodo(final int index) {
+        checkIndex(index);
+        return todo[index] == NONE ? null : todoNames.get(todo[index]);
+    }
+
+    public String getTitle(final int index) {
+        checkIndex(index);
+        return new String(text, titleStart[index], titleLength[index], UTF8);
+    }
+
+    /**
+     * @throws IOException if the file has changed since it was read
+     */
+    public String getComments(final int index) throws IOException {
+        return view(index).getComments();
+    }
+
+    /**
+     * @throws IOException if the file has changed since it was read
+     */
+    public String getBody(final int index) throws IOException {
+        return view(index).getBody();
+    }
+
+    /**
+     * A property from the property drawer. Keys are case insensitive.
+     *
+     * @return the value, or null if there is no such property
+     * @throws IOException if the file has changed since it was read
+     */
+    public String getProperty(final int index, final String key) throws IOException {
+        final PropertyDrawer drawer = view(index).getPropertyDrawer();
+        if (drawer != null) {
+            final String[] properties = drawer.properties;
+            for (int i = 0; i < properties.length; i += 2) {
+                if (properties[i].equalsIgnoreCase(key)) {
+                    return properties[i + 1];
+                }
+            }
+        }
+        return null;
+    }
+
+    public int getTagCount(final int index) {
+        checkIndex(index);
+        return tagCount[index];
+    }
+
+    public String getTag(final int index, final int tag) {
+        checkIndex(index);
+        if (tag < 0 || tag >= tagCount[index]) {
+            throw new IndexOutOfBoundsException("Tag " + tag + " of " + tagCount[index]);
+        }
+        return tagNames.get(tagPool[tagStart[index] + tag]);
+    }
+
+    public List<String> getTags(final int index) {
+        checkIndex(index);
+        if (tagCount[index] == 0) {
+            return Collections.emptyList();
+        }
+        final List<String> tags = new ArrayList<String>(tagCount[index]);
+        for (int i = 0; i < tagCount[index]; i++) {
+            tags.add(tagNames.get(tagPool[tagStart[index] + i]));
+        }
+        return tags;
+    }
+
+    /**
+     * True if the entry has the tag, not counting inherited ones.
+     */
+    public boolean hasTag(final int index, final String tag) {
+        checkIndex(index);
+        final Integer id = tagIds.get(tag);
+        if (id == null) {
+            return false;
+        }
+        for (int i = 0; i < tagCount[index]; i++) {
+            if (tagPool[tagStart[index] + i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Create an OrgNode with the contents of a single entry. It has no
+     * parent or children, and changing it does not change this file.
+     *
+     * @throws IOException if the file has changed since it was read
+     */
+    public OrgNode view(final int index) throws IOException {
+        checkIndex(index);
+        if (source == null) {
+            return view(index, null);
+        }
+        final RandomAccessFile in = openSource();
+        try {
+            return view(index, in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Create the whole tree as OrgNodes.
+     *
+     * @throws IOException if the file has changed since it was read
+     */
+    public OrgFile toOrgFile() throws IOException {
+        final RandomAccessFile in = source == null ? null : openSource();
+        try {
+            final OrgNode[] nodes = new OrgNode[size];
+            for (int i = 0; i < size; i++) {
+                nodes[i] = view(i, in);
+                if (i > 0) {
+                    nodes[i].setParent(nodes[parent[i]]);
+                    nodes[parent[i]].getSubNodes().add(nodes[i]);
+                }
+            }
+            return (OrgFile) nodes[0];
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Approximate number of bytes used, not counting the parser.
+     */
+    public long estimateBytes() {
+        // 10 int arrays and a long array of the same length, plus array headers
+        long bytes = 10L * (16 + 4L * level.length) + 16 + 8L * bodyStart.length;
+        bytes += 16 + 4L * tagPool.length;
+        bytes += 16 + text.length;
+        for (final String name : tagNames) {
+            bytes += 40 + 2L * name.length();
+        }
+        for (final String name : todoNames) {
+            bytes += 40 + 2L * name.length();
+        }
+        return bytes;
+    }
+
+    private void readAll(final OrgReader orgReader) throws IOException, ParseException {
+        try {
+            OrgNode node;
+            while ((node = orgReader.next()) != null) {
+                add(node, orgReader.getDepth());
+            }
+        } finally {
+            orgReader.close();
+        }
+        finish();
+    }
+
+    private void add(final OrgNode node, final int depth) {
+        ensureCapacity(size + 1);
+        final int index = size++;
+
+        level[index] = node.getLevel();
+        firstChild[index] = NONE;
+        nextSibling[index] = NONE;
+        if (depth == 0) {
+            parent[index] = NONE;
+        } else {
+            final int p = lastAtDepth[depth - 1];
+            parent[index] = p;
+            if (firstChild[p] == NONE) {
+                firstChild[p] = index;
+            } else {
+                nextSibling[lastAtDepth[depth]] = index;
+            }
+        }
+        if (depth >= lastAtDepth.length) {
+            lastAtDepth = Arrays.copyOf(lastAtDepth, lastAtDepth.length * 2);
+        }
+        lastAtDepth[depth] = index;
+
+        todo[index] = node.getTodo() == null ? NONE : todoId(node.getTodo());
+
+        final List<String> tags = node.getTags();
+        tagStart[index] = tagPoolSize;
+        tagCount[index] = tags.size();
+        if (tagPoolSize + tags.size() > tagPool.length) {
+            tagPool = Arrays.copyOf(tagPool, Math.max(tagPool.length * 2, tagPoolSize + tags.size()));
+        }
+        for (int i = 0; i < tags.size(); i++) {
+            tagPool[tagPoolSize++] = tagId(tags.get(i));
+        }
+
+        titleStart[index] = textSize;
+        titleLength[index] = appendText(node.getTitle());
+        if (source != null) {
+            bodyStart[index] = node.getUnloadedBody();
+            bodyLength[index] = (int) (node.getSourceEnd() - node.getUnloadedBody());
+        } else {
+            // Day names are only for show, and not used when parsing them back
+            sb.setLength(0);
+            node.appendOrgBody(sb, Locale.ENGLISH);
+            bodyStart[index] = textSize;
+            bodyLength[index] = appendText(sb);
+        }
+    }
+
+    /**
+     * Cut the arrays down to size and drop what was only needed while building.
+     */
+    private void finish() {
+        level = Arrays.copyOf(level, size);
+        parent = Arrays.copyOf(parent, size);
+        firstChild = Arrays.copyOf(firstChild, size);
+        nextSibling = Arrays.copyOf(nextSibling, size);
+        todo = Arrays.copyOf(todo, size);
+        tagStart = Arrays.copyOf(tagStart, size);
+        tagCount = Arrays.copyOf(tagCount, size);
+        titleStart = Arrays.copyOf(titleStart, size);
+        titleLength = Arrays.copyOf(titleLength, size);
+        bodyStart = Arrays.copyOf(bodyStart, size);
+        bodyLength = Arrays.copyOf(bodyLength, size);
+        tagPool = Arrays.copyOf(tagPool, tagPoolSize);
+        text = Arrays.copyOf(text, textSize);
+        lastAtDepth = null;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity <= level.length) {
+            return;
+        }
+        final int length = Math.max(capacity, level.length * 2);
+        level = Arrays.copyOf(level, length);
+        parent = Arrays.copyOf(parent, length);
+        firstChild = Arrays.copyOf(firstChild, length);
+        nextSibling = Arrays.copyOf(nextSibling, length);
+        todo = Arrays.copyOf(todo, length);
+        tagStart = Arrays.copyOf(tagStart, length);
+        tagCount = Arrays.copyOf(tagCount, length);
+        titleStart = Arrays.copyOf(titleStart, length);
+        titleLength = Arrays.copyOf(titleLength, length);
+        bodyStart = Arrays.copyOf(bodyStart, length);
+        bodyLength = Arrays.copyOf(bodyLength, length);
+    }
+
+    private int appendText(final CharSequence chars) {
+        final byte[] bytes = chars.toString().getBytes(UTF8);
+        if (textSize + bytes.length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textSize + bytes.length));
+        }
+        System.arraycopy(bytes, 0, text, textSize, bytes.length);
+        textSize += bytes.length;
+        return bytes.length;
+    }
+
+    private int todoId(final String name) {
+        int id = todoNames.indexOf(name);
+        if (id < 0) {
+            id = todoNames.size();
+            todoNames.add(name);
+        }
+        return id;
+    }
+
+    private int tagId(final String name) {
+        Integer id = tagIds.get(name);
+        if (id == null) {
+            id = tagNames.size();
+            tagIds.put(name, id);
+            tagNames.add(name);
+        }
+        return id;
+    }
+
+    private RandomAccessFile openSource() throws IOException {
+        if (!source.isUnchanged()) {
+            throw new IOException("File has changed since it was read");
+        }
+        return new RandomAccessFile(source.file, "r");
+    }
+
+    /**
+     * @param in the opened source, or null if bodies are in text
+     */
+    private OrgNode view(final int index, final RandomAccessFile in) throws IOException {
+        final OrgNode node;
+        if (index == 0) {
+            node = new OrgFile(parser, filename);
+        } else {
+            node = new OrgNode(parser);
+            node.setLevel(level[index]);
+            node.setTodo(getTodo(index));
+            node.setTitle(getTitle(index));
+            for (int i = 0; i < tagCount[index]; i++) {
+                node.addTags(tagNames.get(tagPool[tagStart[index] + i]));
+            }
+        }
+
+        final byte[] bytes;
+        if (in == null) {
+            bytes = Arrays.copyOfRange(text, (int) bodyStart[index],
+                    (int) bodyStart[index] + bodyLength[index]);
+        } else {
+            bytes = new byte[bodyLength[index]];
+            in.seek(bodyStart[index]);
+            in.readFully(bytes);
+        }
+        try {
+            node.readBody(bytes, in == null ? UTF8 : source.charset);
+        } catch (ParseException e) {
+            throw new IOException("Could not parse body of entry " + index, e);
+        }
+        return node;
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Entry " + index + " of " + size);
+        }
+    }
+}
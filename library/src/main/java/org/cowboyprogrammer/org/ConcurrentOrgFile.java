@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Stack;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Guards an OrgFile so it can be shared between threads. Any number of
+ * readers can look at the tree at the same time, while writers get it to
+ * themselves.
+ * <p/>
+ * The text and an ImmutableOrgNode copy of the tree are cached after they
+ * are first asked for, and until the next write, other threads get them
+ * without taking any lock at all. This makes repeated reads scale with the
+ * number of cores.
+ * <p/>
+ * Nodes handed to a Query or Update must not be kept or used after it
+ * returns. Queries may ask for content and tree hashes, which are cached in
+ * the nodes in a way that is safe for concurrent readers. Anything else
+ * which fills in a node, like loadBody, must be done in an Update or with
+ * loadBodies.
+ */
+public class ConcurrentOrgFile {
+
+    /**
+     * Looks at the tree without changing it.
+     */
+    public interface Query<T> {
+        T query(OrgFile file);
+    }
+
+    /**
+     * Changes the tree.
+     */
+    public interface Update<T> {
+        T update(OrgFile file) throws ParseException;
+    }
+
+    private final OrgFile file;
+    private final Lock readLock;
+    private final Lock writeLock;
+
+    // Only written while holding a lock, cleared by every write
+    private volatile String text = null;
+    private volatile ImmutableOrgNode snapshot = null;
+    private volatile long version = 0;
+
+    public ConcurrentOrgFile(final OrgFile file) {
+        if (file == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        this.file = file;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        readLock = lock.readLock();
+        writeLock = lock.writeLock();
+    }
+
+    /**
+     * Run a query while no one is writing.
+     */
+    public <T> T read(final Query<T> query) {
+        readLock.lock();
+        try {
+            return query.query(file);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Run an update with no one else reading or writing.
+     */
+    public <T> T write(final Update<T> update) throws ParseException {
+        writeLock.lock();
+        try {
+            return update.update(file);
+        } finally {
+            changed();
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Number of writes made so far. Equal versions mean equal trees.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * The whole tree as text, as of the last finished write.
+     */
+    public String treeToString() {
+        final String cached = text;
+        if (cached != null) {
+            return cached;
+        }
+        readLock.lock();
+        try {
+            // Writers are locked out, so this can't be stale when set
+            final String result = file.treeToString();
+            text = result;
+            return result;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * An unchangeable copy of the tree as of the last finished write.
+     */
+    public ImmutableOrgNode snapshot() {
+        final ImmutableOrgNode cached = snapshot;
+        if (cached != null) {
+            return cached;
+        }
+        readLock.lock();
+        try {
+            final ImmutableOrgNode result = ImmutableOrgNode.of(file);
+            snapshot = result;
+            return result;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Load all bodies of a file read as an outline, see OrgNode.loadBody.
+     * Counts as a write if there was anything to load.
+     */
+    public void loadBodies() throws IOException, ParseException {
+        writeLock.lock();
+        try {
+            boolean loaded = false;
+            final Stack<OrgNode> stack = new Stack<OrgNode>();
+            stack.push(file);
+            while (!stack.isEmpty()) {
+                final OrgNode node = stack.pop();
+                if (!node.isBodyLoaded()) {
+                    node.loadBody();
+                    loaded = true;
+                }
+                for (final OrgNode child : node.getSubNodes()) {
+                    stack.push(child);
+                }
+            }
+            if (loaded) {
+                changed();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Write the tree to a file, see OrgFile.writeToFile. Updates the
+     * source spans of the nodes, so it counts as a write.
+     */
+    public void writeToFile(final File target) throws IOException {
+        writeLock.lock();
+        try {
+            file.writeToFile(target);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void changed() {
+        text = null;
+        snapshot = null;
+        version++;
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An org entry and its sub tree that can not be changed. Every edit returns
+ * a new node instead, and edits made through a root with a path only copy
+ * the entries on that path. Everything else is shared with the old tree, so
+ * keeping old roots around as snapshots or undo history is cheap, and any
+ * number of threads can read a tree without locking.
+ * <p/>
+ * Paths are the indices of children to follow from the node they are given
+ * to, so an empty path is the node itself.
+ * <p/>
+ * Timestamps are kept as text since OrgTimestamp can be changed. They are
+ * parsed again by getTimestamps.
+ */
+public final class ImmutableOrgNode {
+
+    private static final List<String> NO_STRINGS = Collections.emptyList();
+    private static final List<ImmutableOrgNode> NO_CHILDREN = Collections.emptyList();
+
+    private final OrgParser parser;
+    private final int level;
+    private final String todo;
+    private final String title;
+    private final List<String> tags;
+    private final String comments;
+    private final List<String> timestamps;
+    private final List<String> timestampRanges;
+    private final String body;
+    // As in OrgNode, which never changes the array once set
+    private final PropertyDrawer drawer;
+    private final List<ImmutableOrgNode> children;
+
+    private ImmutableOrgNode(final OrgParser parser, final int level, final String todo,
+                             final String title, final List<String> tags, final String comments,
+                             final List<String> timestamps, final List<String> timestampRanges,
+                             final String body, final PropertyDrawer drawer,
+                             final List<ImmutableOrgNode> children) {
+        this.parser = parser;
+        this.level = level;
+        this.todo = todo;
+        this.title = title;
+        this.tags = tags;
+        this.comments = comments;
+        this.timestamps = timestamps;
+        this.timestampRanges = timestampRanges;
+        this.body = body;
+        this.drawer = drawer;
+        this.children = children;
+    }
+
+    /**
+     * Copy a node and its whole sub tree.
+     */
+    public static ImmutableOrgNode of(final OrgNode node) {
+        final List<OrgNode> subNodes = node.getSubNodes();
+        if (subNodes.isEmpty()) {
+            return entryOf(node, NO_CHILDREN);
+        }
+        final ImmutableOrgNode[] copies = new ImmutableOrgNode[subNodes.size()];
+        for (int i = 0; i < copies.length; i++) {
+            copies[i] = of(subNodes.get(i));
+        }
+        return entryOf(node, wrap(copies));
+    }
+
+    /**
+     * Copy a single entry, without its sub nodes.
+     */
+    static ImmutableOrgNode entryOf(final OrgNode node) {
+        return entryOf(node, NO_CHILDREN);
+    }
+
+    private static ImmutableOrgNode entryOf(final OrgNode node, final List<ImmutableOrgNode> children) {
+        final List<String> timestamps = new ArrayList<String>();
+        for (final OrgTimestamp timestamp : node.getTimestamps()) {
+            timestamps.add(timestamp.toString(Locale.ENGLISH));
+        }
+        final List<String> ranges = new ArrayList<String>();
+        for (final OrgTimestampRange range : node.getTimestampRanges()) {
+            ranges.add(range.toString(Locale.ENGLISH));
+        }
+
+        return new ImmutableOrgNode(node.getParser(), node.getLevel(), node.getTodo(),
+                node.getTitle(), copy(node.getTags()), node.getComments(), copy(timestamps),
+                copy(ranges), node.getBody(), node.getPropertyDrawer(), children);
+    }
+
+    /**
+     * Create a new entry without body or children.
+     */
+    public static ImmutableOrgNode create(final OrgParser parser, final int level,
+                                          final String todo, final String title,
+                                          final String... tags) {
+        if (level < 1) {
+            throw new IllegalArgumentException("Entries must have a level of at least 1");
+        }
+        checkTitle(title);
+        return new ImmutableOrgNode(parser, level, todo, title, copy(Arrays.asList(tags)), "",
+                NO_STRINGS, NO_STRINGS, "", null, NO_CHILDREN);
+    }
+
+    /**
+     * Create mutable nodes with the same contents as this sub tree.
+     */
+    public OrgNode toOrgNode() {
+        final OrgNode node = level == 0 ? new OrgFile(parser, "") : new OrgNode(parser);
+        fill(node);
+        return node;
+    }
+
+    /**
+     * Create an OrgFile with the same contents as this tree, which must be
+     * the root of a file.
+     */
+    public OrgFile toOrgFile(final String filename) {
+        if (level != 0) {
+            throw new IllegalStateException("Only a level 0 node can be a file");
+        }
+        final OrgFile file = new OrgFile(parser, filename);
+        fill(file);
+        return file;
+    }
+
+    private void fill(final OrgNode node) {
+        fillEntry(node);
+        for (final ImmutableOrgNode child : children) {
+            final OrgNode subNode = child.toOrgNode();
+            subNode.setParent(node);
+            node.getSubNodes().add(subNode);
+        }
+    }
+
+    /**
+     * Give a node the contents of this entry, adding to any tags and
+     * timestamps it already has. Sub nodes are left alone.
+     */
+    void fillEntry(final OrgNode node) {
+        if (level > 0) {
+            node.setLevel(level);
+            node.setTodo(todo);
+            node.setTitle(title);
+            node.addTags(tags.toArray(new String[tags.size()]));
+        }
+        node.setComments(comments);
+        for (final String timestamp : timestamps) {
+            node.addTimestamp(parser.getTimestamp(timestamp));
+        }
+        for (final String range : timestampRanges) {
+            node.addTimestampRange(parser.getTimestampRange(range));
+        }
+        node.setPropertyDrawer(drawer);
+        node.setBody(body);
+    }
+
+    public OrgParser getParser() {
+        return parser;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public String getTodo() {
+        return todo;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public String getComments() {
+        return comments;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * A property from the property drawer. Keys are case insensitive.
+     *
+     * @return the value, or null if there is no such property
+     */
+    public String getProperty(final String key) {
+        if (drawer != null) {
+            final String[] properties = drawer.properties;
+            for (int i = 0; i < properties.length; i += 2) {
+                if (properties[i].equalsIgnoreCase(key)) {
+                    return properties[i + 1];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Newly parsed timestamps, changing them does not change this node.
+     */
+    public List<OrgTimestamp> getTimestamps() {
+        final List<OrgTimestamp> result = new ArrayList<OrgTimestamp>(timestamps.size());
+        for (final String timestamp : timestamps) {
+            result.add(parser.getTimestamp(timestamp));
+        }
+        return result;
+    }
+
+    /**
+     * Newly parsed timestamp ranges, changing them does not change this node.
+     */
+    public List<OrgTimestampRange> getTimestampRanges() {
+        final List<OrgTimestampRange> result = new ArrayList<OrgTimestampRange>(timestampRanges.size());
+        for (final String range : timestampRanges) {
+            result.add(parser.getTimestampRange(range));
+        }
+        return result;
+    }
+
+    public List<ImmutableOrgNode> getChildren() {
+        return children;
+    }
+
+    public ImmutableOrgNode getChild(final int index) {
+        return children.get(index);
+    }
+
+    /**
+     * @return the node at the end of the path
+     */
+    public ImmutableOrgNode get(final int... path) {
+        ImmutableOrgNode node = this;
+        for (final int index : path) {
+            node = node.children.get(index);
+        }
+        return node;
+    }
+
+    public ImmutableOrgNode withTodo(final String todo) {
+        return new ImmutableOrgNode(parser, level, todo, title, tags, comments, timestamps,
+                timestampRanges, body, drawer, children);
+    }
+
+    public ImmutableOrgNode withTitle(final String title) {
+        checkTitle(title);
+        return new ImmutableOrgNode(parser, level, todo, title, tags, comments, timestamps,
+                timestampRanges, body, drawer, children);
+    }
+
+    public ImmutableOrgNode withTags(final String... tags) {
+        return new ImmutableOrgNode(parser, level, todo, title, copy(Arrays.asList(tags)),
+                comments, timestamps, timestampRanges, body, drawer, children);
+    }
+
+    public ImmutableOrgNode withBody(final String body) {
+        if (body == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        return new ImmutableOrgNode(parser, level, todo, title, tags, comments, timestamps,
+                timestampRanges, body, drawer, children);
+    }
+
+    /**
+     * Moves the whole sub tree so this node gets the given level.
+     */
+    public ImmutableOrgNode withLevel(final int level) {
+        if (level < 1) {
+            throw new IllegalArgumentException("Entries must have a level of at least 1");
+        }
+        return shift(level - this.level);
+    }
+
+    /**
+     * Add a child last. The child's sub tree is moved to one level below
+     * this node, so it reads back the same from text.
+     */
+    public ImmutableOrgNode withChild(final ImmutableOrgNode child) {
+        return withChild(children.size(), child);
+    }
+
+    /**
+     * Insert a child at the index. The child's sub tree is moved to one level
+     * below this node, so it reads back the same from text.
+     */
+    public ImmutableOrgNode withChild(final int index, final ImmutableOrgNode child) {
+        if (index < 0 || index > children.size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + children.size());
+        }
+        final ImmutableOrgNode fitted = child.shift(level + 1 - child.level);
+        final ImmutableOrgNode[] nodes = new ImmutableOrgNode[children.size() + 1];
+        for (int i = 0; i < index; i++) {
+            nodes[i] = children.get(i);
+        }
+        nodes[index] = fitted;
+        for (int i = index; i < children.size(); i++) {
+            nodes[i + 1] = children.get(i);
+        }
+        return withChildren(wrap(nodes));
+    }
+
+    public ImmutableOrgNode withoutChild(final int index) {
+        if (index < 0 || index >= children.size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + children.size());
+        }
+        final ImmutableOrgNode[] nodes = new ImmutableOrgNode[children.size() - 1];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = children.get(i < index ? i : i + 1);
+        }
+        return withChildren(nodes.length == 0 ? NO_CHILDREN : wrap(nodes));
+    }
+
+    /**
+     * Replace the node at the end of the path.
+     *
+     * @return the new version of this node
+     */
+    public ImmutableOrgNode replace(final int[] path, final ImmutableOrgNode node) {
+        return replace(path, 0, node);
+    }
+
+    private ImmutableOrgNode replace(final int[] path, final int from, final ImmutableOrgNode node) {
+        if (from == path.length) {
+            return node;
+        }
+        final int index = path[from];
+        final ImmutableOrgNode child = children.get(index);
+        final ImmutableOrgNode replaced = child.replace(path, from + 1, node);
+        if (replaced == child) {
+            return this;
+        }
+        final ImmutableOrgNode[] nodes = children.toArray(new ImmutableOrgNode[children.size()]);
+        nodes[index] = replaced;
+        return withChildren(wrap(nodes));
+    }
+
+    /**
+     * Add a child last to the node at the end of the path.
+     *
+     * @return the new version of this node
+     */
+    public ImmutableOrgNode addChild(final int[] path, final ImmutableOrgNode child) {
+        return replace(path, get(path).withChild(child));
+    }
+
+    /**
+     * Remove the node at the end of the path, with its sub tree.
+     *
+     * @return the new version of this node
+     */
+    public ImmutableOrgNode remove(final int[] path) {
+        if (path.length == 0) {
+            throw new IllegalArgumentException("Can't remove the root");
+        }
+        final int[] parentPath = Arrays.copyOf(path, path.length - 1);
+        return replace(parentPath, get(parentPath).withoutChild(path[path.length - 1]));
+    }
+
+    /**
+     * Move the node at the end of a path, with its sub tree, to be the last
+     * child of the node at the end of another path. Both paths refer to the
+     * tree before the move.
+     *
+     * @return the new version of this node
+     */
+    public ImmutableOrgNode move(final int[] from, final int[] toParent) {
+        if (from.length == 0) {
+            throw new IllegalArgumentException("Can't move the root");
+        }
+        if (startsWith(toParent, from)) {
+            throw new IllegalArgumentException("Can't move a node into itself");
+        }
+        final ImmutableOrgNode node = get(from);
+        // Removing shifts later siblings, and everything below them, back one step
+        final int[] target = toParent.clone();
+        final int last = from.length - 1;
+        if (target.length > last && startsWith(target, Arrays.copyOf(from, last))
+                && target[last] > from[last]) {
+            target[last]--;
+        }
+        return remove(from).addChild(target, node);
+    }
+
+    private ImmutableOrgNode withChildren(final List<ImmutableOrgNode> children) {
+        return new ImmutableOrgNode(parser, level, todo, title, tags, comments, timestamps,
+                timestampRanges, body, drawer, children);
+    }
+
+    private ImmutableOrgNode shift(final int delta) {
+        if (delta == 0) {
+            return this;
+        }
+        final ImmutableOrgNode[] nodes = new ImmutableOrgNode[children.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = children.get(i).shift(delta);
+        }
+        return new ImmutableOrgNode(parser, level + delta, todo, title, tags, comments,
+                timestamps, timestampRanges, body, drawer, nodes.length == 0 ? NO_CHILDREN : wrap(nodes));
+    }
+
+    private static boolean startsWith(final int[] path, final int[] prefix) {
+        if (prefix.length > path.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (path[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkTitle(final String title) {
+        if (title == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        } else if (title.endsWith("\n")) {
+            throw new IllegalArgumentException("Title may not end with newline");
+        }
+    }
+
+    private static List<String> copy(final List<String> strings) {
+        if (strings.isEmpty()) {
+            return NO_STRINGS;
+        }
+        return Collections.unmodifiableList(Arrays.asList(strings.toArray(new String[strings.size()])));
+    }
+
+    private static List<ImmutableOrgNode> wrap(final ImmutableOrgNode[] nodes) {
+        return Collections.unmodifiableList(Arrays.asList(nodes));
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.ParseOptions;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * Parses an org file from chunks of bytes as they arrive, for when the
+ * input can't be read with blocking calls. Chunks may end anywhere, even
+ * in the middle of a character; lines are parsed as soon as they are
+ * complete.
+ * <p/>
+ * Charsets must encode \n and \r as single bytes that no other character
+ * uses, which UTF-8 and single byte charsets do, but UTF-16 does not.
+ */
+public class IncrementalOrgParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ASCII = Charset.forName("ISO-8859-1");
+
+    private final OrgReader orgReader;
+    private final Charset charset;
+    private final boolean utf8;
+
+    // The line so far
+    private byte[] line = new byte[256];
+    private int lineLength = 0;
+    // Any byte in the line with the high bit set
+    private int high = 0;
+    private long lineStart = 0;
+    // Bytes consumed so far
+    private long offset = 0;
+
+    // A line ended with \r at the end of a chunk, it's not known yet if \n follows
+    private String pendingLine = null;
+    private long pendingStart = 0;
+
+    private boolean finished = false;
+
+    /**
+     * @param parser   The OrgParser to use
+     * @param filename The filename without the path part
+     * @param options  How to parse
+     */
+    public IncrementalOrgParser(final OrgParser parser, final String filename, final ParseOptions options) {
+        this(parser, filename, options, null);
+    }
+
+    /**
+     * @param source the file the bytes come from, or null
+     */
+    IncrementalOrgParser(final OrgParser parser, final String filename, final ParseOptions options,
+                         final OrgSource source) {
+        charset = options.getCharset();
+        final byte[] terminators = "\n\r".getBytes(charset);
+        if (terminators.length != 2 || terminators[0] != '\n' || terminators[1] != '\r') {
+            throw new IllegalArgumentException("Lines can't be split as bytes in " + charset.name());
+        }
+        utf8 = "UTF-8".equals(charset.name());
+        orgReader = new OrgReader(parser, filename, null, source,
+                OrgFile.traced(source == null ? filename : source.file.getPath(), options.getListener()),
+                options, true);
+    }
+
+    /**
+     * Parse the remaining bytes of the buffer.
+     */
+    public void feed(final ByteBuffer chunk) throws ParseException {
+        if (chunk.hasArray()) {
+            final int start = chunk.arrayOffset() + chunk.position();
+            feed(chunk.array(), start, chunk.remaining());
+            chunk.position(chunk.limit());
+        } else {
+            final byte[] bytes = new byte[Math.min(chunk.remaining(), 8192)];
+            while (chunk.hasRemaining()) {
+                final int count = Math.min(chunk.remaining(), bytes.length);
+                chunk.get(bytes, 0, count);
+                feed(bytes, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Parse the bytes.
+     */
+    public void feed(final byte[] bytes, final int off, final int len) throws ParseException {
+        if (finished) {
+            throw new IllegalStateException("Already finished");
+        }
+        final int end = off + len;
+        int i = off;
+        if (pendingLine != null && i < end) {
+            if (bytes[i] == '\n') {
+                // Rest of a \r\n
+                offset++;
+                i++;
+                lineStart = offset;
+            }
+            final String pending = pendingLine;
+            pendingLine = null;
+            orgReader.pushLine(pending, pendingStart, offset);
+        }
+
+        int start = i;
+        while (i < end) {
+            final byte b = bytes[i];
+            if (b != '\n' && b != '\r') {
+                high |= b;
+                i++;
+                continue;
+            }
+
+            final String text;
+            if (lineLength == 0) {
+                text = decode(bytes, start, i - start);
+            } else {
+                append(bytes, start, i);
+                text = decode(line, 0, lineLength);
+            }
+            offset += i - start + 1;
+            i++;
+            if (b == '\r') {
+                if (i == end) {
+                    // Have to see the next chunk first
+                    pendingLine = text;
+                    pendingStart = lineStart;
+                } else {
+                    if (bytes[i] == '\n') {
+                        offset++;
+                        i++;
+                    }
+                    orgReader.pushLine(text, lineStart, offset);
+                }
+            } else {
+                orgReader.pushLine(text, lineStart, offset);
+            }
+            lineStart = offset;
+            lineLength = 0;
+            high = 0;
+            start = i;
+        }
+        append(bytes, start, end);
+        offset += end - start;
+    }
+
+    /**
+     * No more bytes will come.
+     *
+     * @return the parsed file
+     */
+    public OrgFile finish() throws ParseException {
+        if (finished) {
+            return orgReader.getFile();
+        }
+        finished = true;
+        if (pendingLine != null) {
+            orgReader.pushLine(pendingLine, pendingStart, offset);
+            pendingLine = null;
+        }
+        if (lineLength > 0) {
+            // Last line had no terminator
+            orgReader.pushLine(decode(line, 0, lineLength), lineStart, offset);
+            lineLength = 0;
+        }
+        orgReader.pushEnd(offset, offset);
+        return orgReader.getFile();
+    }
+
+    /**
+     * Number of bytes given so far.
+     */
+    public long getBytesFed() {
+        return offset;
+    }
+
+    private String decode(final byte[] bytes, final int start, final int length) {
+        if (length == 0) {
+            return "";
+        } else if (utf8) {
+            // Every ASCII byte is the same character in ISO-8859-1, which has no decoding to do
+            return new String(bytes, start, length, high < 0 ? UTF_8 : ASCII);
+        }
+        return new String(bytes, start, length, charset);
+    }
+
+    private void append(final byte[] bytes, final int start, final int end) {
+        final int length = end - start;
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(bytes, start, line, lineLength, length);
+        lineLength += length;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Keeps text as UTF-8 in large direct ByteBuffers, outside the Java heap,
+ * so the garbage collector doesn't have to look at it. Nodes parsed with an
+ * arena in their ParseOptions move their title, body and comments into it
+ * once they are finished and only keep a handle. The text is decoded when
+ * asked for, and written straight from the arena when rendering.
+ * <p/>
+ * One arena can hold one file or a whole generation of a corpus. Closing it
+ * drops the buffers at once, and any node or Text still using it fails with
+ * IllegalStateException after that, so close it only when all its nodes are
+ * done with. The memory itself is not freed by close, the JVM frees direct
+ * buffers when they have been garbage collected.
+ * <p/>
+ * Adding text is synchronized, reading can be done from any thread which
+ * got the handle safely.
+ */
+public class OrgArena implements Closeable {
+
+    /**
+     * Default size of each buffer.
+     */
+    public static final int CHUNK_SIZE = 1 << 20;
+
+    // Each text starts with its length in bytes and in chars
+    private static final int HEADER = 8;
+
+    private final int chunkSize;
+    // Null once closed
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private ByteBuffer current = null;
+    private int currentIndex = -1;
+    private long bytes = 0;
+
+    public OrgArena() {
+        this(CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize bytes to allocate at a time, larger texts get a buffer of their own
+     */
+    public OrgArena(final int chunkSize) {
+        if (chunkSize < HEADER) {
+            throw new IllegalArgumentException("Chunk size must be at least " + HEADER);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * A view of text in an arena, which decodes it only if it isn't ASCII.
+     * It can't be read once the arena is closed.
+     */
+    public static final class Text implements CharSequence {
+        private final OrgArena arena;
+        private final ByteBuffer chunk;
+        private final int start;
+        private final int length;
+        private final boolean ascii;
+        private char[] decoded = null;
+
+        Text(final OrgArena arena, final ByteBuffer chunk, final int offset) {
+            this.arena = arena;
+            this.chunk = chunk;
+            this.start = offset + HEADER;
+            this.length = chunk.getInt(offset + 4);
+            this.ascii = chunk.getInt(offset) == length;
+        }
+
+        @Override
+        public int length() {
+            arena.open();
+            return length;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            arena.open();
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + length);
+            }
+            if (ascii) {
+                return (char) chunk.get(start + index);
+            }
+            if (decoded == null) {
+                decoded = new char[length];
+                decode(chunk, start, decoded);
+            }
+            return decoded[index];
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            arena.open();
+            if (decoded != null) {
+                return new String(decoded);
+            }
+            final char[] chars = new char[length];
+            decode(chunk, start, chars);
+            return new String(chars);
+        }
+    }
+
+    /**
+     * Copy text into the arena.
+     *
+     * @return the handle to get it back with
+     */
+    public synchronized long add(final CharSequence text) {
+        final ByteBuffer[] all = open();
+        final int charLength = text.length();
+        final int byteLength = encodedLength(text);
+        final int size = HEADER + byteLength;
+
+        final int index;
+        final ByteBuffer chunk;
+        if (current != null && current.remaining() >= size) {
+            index = currentIndex;
+            chunk = current;
+        } else {
+            index = all.length;
+            chunk = ByteBuffer.allocateDirect(Math.max(size, chunkSize));
+            final ByteBuffer[] grown = Arrays.copyOf(all, all.length + 1);
+            grown[index] = chunk;
+            chunks = grown;
+            if (size < chunkSize || current == null) {
+                current = chunk;
+                currentIndex = index;
+            }
+            // else a buffer of its own, keep filling the one in use
+        }
+        final int offset = chunk.position();
+        chunk.putInt(byteLength).putInt(charLength);
+        encode(text, chunk);
+        bytes += size;
+        return handle(index, offset);
+    }
+
+    /**
+     * @return a view of the text, which is only valid while the arena is open
+     */
+    public Text get(final long handle) {
+        return new Text(this, chunk(handle), offset(handle));
+    }
+
+    /**
+     * @return the text as a String
+     */
+    public String getString(final long handle) {
+        return get(handle).toString();
+    }
+
+    /**
+     * Decode the text straight into the builder.
+     */
+    public void appendTo(final StringBuilder sb, final long handle) {
+        final ByteBuffer chunk = chunk(handle);
+        final int offset = offset(handle);
+        final int byteLength = chunk.getInt(offset);
+        final int start = offset + HEADER;
+        final int end = start + byteLength;
+        int i = start;
+        while (i < end) {
+            final int b = chunk.get(i);
+            if (b >= 0) {
+                sb.append((char) b);
+                i++;
+            } else {
+                // Rare, decode the rest in one go
+                final char[] chars = new char[chunk.getInt(offset + 4) - (i - start)];
+                decode(chunk, i, chars);
+                sb.append(chars);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Bytes used by texts so far, headers included.
+     */
+    public synchronized long getBytesUsed() {
+        return bytes;
+    }
+
+    public boolean isClosed() {
+        return chunks == null;
+    }
+
+    /**
+     * Drop all buffers. Texts in the arena can't be read after this, but
+     * the memory is only freed once the buffers are garbage collected.
+     */
+    @Override
+    public synchronized void close() {
+        chunks = null;
+        current = null;
+    }
+
+    private ByteBuffer[] open() {
+        final ByteBuffer[] all = chunks;
+        if (all == null) {
+            throw new IllegalStateException("Arena is closed");
+        }
+        return all;
+    }
+
+    private ByteBuffer chunk(final long handle) {
+        return open()[(int) (handle >>> 32)];
+    }
+
+    private static int offset(final long handle) {
+        return (int) handle;
+    }
+
+    private static long handle(final int chunk, final int offset) {
+        return ((long) chunk << 32) | offset;
+    }
+
+    /**
+     * Bytes the text takes in UTF-8, where a lone surrogate becomes '?'.
+     */
+    private static int encodedLength(final CharSequence text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void encode(final CharSequence text, final ByteBuffer out) {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | c >> 6));
+                out.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, text.charAt(++i));
+                out.put((byte) (0xF0 | cp >> 18));
+                out.put((byte) (0x80 | cp >> 12 & 0x3F));
+                out.put((byte) (0x80 | cp >> 6 & 0x3F));
+                out.put((byte) (0x80 | cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | c >> 12));
+                out.put((byte) (0x80 | c >> 6 & 0x3F));
+                out.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Decode UTF-8 written by encode, filling the array.
+     */
+    private static void decode(final ByteBuffer in, final int start, final char[] out) {
+        int i = start;
+        int o = 0;
+        while (o < out.length) {
+            final int b = in.get(i) & 0xFF;
+            if (b < 0x80) {
+                out[o++] = (char) b;
+                i += 1;
+            } else if (b < 0xE0) {
+                out[o++] = (char) ((b & 0x1F) << 6 | in.get(i + 1) & 0x3F);
+                i += 2;
+            } else if (b < 0xF0) {
+                out[o++] = (char) ((b & 0x0F) << 12 | (in.get(i + 1) & 0x3F) << 6 | in.get(i + 2) & 0x3F);
+                i += 3;
+            } else {
+                final int cp = (b & 0x07) << 18 | (in.get(i + 1) & 0x3F) << 12
+                        | (in.get(i + 2) & 0x3F) << 6 | in.get(i + 3) & 0x3F;
+                out[o++] = Character.highSurrogate(cp);
+                out[o++] = Character.lowSurrogate(cp);
+                i += 4;
+            }
+        }
+    }
+}
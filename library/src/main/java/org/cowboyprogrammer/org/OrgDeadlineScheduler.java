@@ -0,0 +1,484 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
+import org.joda.time.ReadablePeriod;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Stack;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells listeners when the warning time and the due time of active DEADLINE
+ * and SCHEDULED timestamps arrive. Times are kept in a hierarchical timer
+ * wheel, so adding and removing a timer costs the same no matter how many
+ * are pending, and time only moves when advance is called.
+ * <p/>
+ * Only times in the future are scheduled, except that a warning whose time
+ * has passed fires on the next advance if the timestamp itself is still to
+ * come. A repeating timestamp is scheduled at its next occurrence, and when
+ * that is due the one after it is scheduled. Files are added and removed as a
+ * whole. As a listener of an OrgDirectoryWatcher, files that change are
+ * scheduled again.
+ */
+public class OrgDeadlineScheduler implements OrgDirectoryWatcher.Listener {
+
+    /**
+     * Where the scheduler gets the time from.
+     */
+    public interface Clock {
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long millis() {
+                return System.currentTimeMillis();
+            }
+        };
+
+        /**
+         * Milliseconds since the epoch.
+         */
+        long millis();
+    }
+
+    /**
+     * Told about times that arrive, on the thread calling advance.
+     */
+    public interface Listener {
+        /**
+         * @param due when the timestamp, or the occurrence of it if it repeats, is due
+         */
+        void warningReached(OrgNode node, OrgTimestamp timestamp, LocalDateTime due);
+
+        /**
+         * @param due when the timestamp, or the occurrence of it if it repeats, is due
+         */
+        void dueReached(OrgNode node, OrgTimestamp timestamp, LocalDateTime due);
+    }
+
+    // Slots per level are 1 << BITS, a level covers BITS more bits of ticks
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    // Timers further away wait in the last level until they are closer
+    private static final long RANGE = 1L << (BITS * LEVELS);
+
+    private static final class Timer {
+        final OrgFile file;
+        final OrgNode node;
+        final OrgTimestamp timestamp;
+        final LocalDateTime due;
+        final boolean warning;
+        // Tick to fire at
+        final long expiry;
+
+        // Bucket in the wheel, -1 when not in it
+        int bucket = -1;
+        Timer prev;
+        Timer next;
+        // Other timers of the same file
+        Timer filePrev;
+        Timer fileNext;
+
+        Timer(final OrgFile file, final OrgNode node, final OrgTimestamp timestamp,
+              final LocalDateTime due, final boolean warning, final long expiry) {
+            this.file = file;
+            this.node = node;
+            this.timestamp = timestamp;
+            this.due = due;
+            this.warning = warning;
+            this.expiry = expiry;
+        }
+    }
+
+    private final Clock clock;
+    private final DateTimeZone zone;
+    private final long tickMillis;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    private final Timer[] heads = new Timer[LEVELS * SLOTS];
+    private final Timer[] tails = new Timer[LEVELS * SLOTS];
+    // Bit per slot which has timers, by level
+    private final long[] occupied = new long[LEVELS];
+    // First timer of each file, files without timers are left out
+    private final IdentityHashMap<OrgFile, Timer> files = new IdentityHashMap<OrgFile, Timer>();
+    private long currentTick;
+    private int size = 0;
+
+    /**
+     * Uses the system clock and time zone, and a tick of one second.
+     */
+    public OrgDeadlineScheduler() {
+        this(Clock.SYSTEM, DateTimeZone.getDefault(), 1000);
+    }
+
+    /**
+     * @param clock      to get the time from
+     * @param zone       the local times of timestamps are in
+     * @param tickMillis resolution of the timers, they fire at most this late
+     */
+    public OrgDeadlineScheduler(final Clock clock, final DateTimeZone zone, final long tickMillis) {
+        if (clock == null || zone == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive");
+        }
+        this.clock = clock;
+        this.zone = zone;
+        this.tickMillis = tickMillis;
+        currentTick = clock.millis() / tickMillis;
+    }
+
+    public void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(final Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Schedule the deadlines and scheduled times of a file.
+     */
+    public synchronized void add(final OrgFile file) {
+        if (files.containsKey(file)) {
+            remove(file);
+        }
+        final LocalDateTime now = new LocalDateTime(clock.millis(), zone);
+        final Stack<OrgNode> stack = new Stack<OrgNode>();
+        stack.push(file);
+        while (!stack.isEmpty()) {
+            final OrgNode node = stack.pop();
+            for (final OrgTimestamp timestamp : node.getTimestamps()) {
+                if (timestamp.getType() == OrgTimestamp.Type.PLAIN || timestamp.isInactive()) {
+                    continue;
+                }
+                final LocalDateTime due = nextOccurrence(timestamp, timestamp.getDate(), now);
+                if (due != null) {
+                    schedule(file, node, timestamp, due);
+                }
+            }
+            final List<OrgNode> children = node.getSubNodes();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+    }
+
+    /**
+     * Cancel the pending times of a file.
+     */
+    public synchronized void remove(final OrgFile file) {
+        Timer timer = files.remove(file);
+        while (timer != null) {
+            unlink(timer);
+            timer = timer.fileNext;
+        }
+    }
+
+    /**
+     * Replace the times of one version of a file with those of another.
+     *
+     * @param oldFile the previous version, or null if there was none
+     * @param newFile the current version, or null if it is gone
+     */
+    public synchronized void update(final OrgFile oldFile, final OrgFile newFile) {
+        if (oldFile != null) {
+            remove(oldFile);
+        }
+        if (newFile != null) {
+            add(newFile);
+        }
+    }
+
+    /**
+     * Number of warnings and due times waiting to fire.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Move time forward to what the clock says, and tell listeners about
+     * every time that passed on the way, earliest first. A listener which
+     * throws does not keep the others from being told.
+     *
+     * @return the number of times that fired
+     * @throws RuntimeException the first one a listener threw, once all
+     *         listeners have been told about all times, with any later ones
+     *         suppressed
+     */
+    public int advance() {
+        final List<Timer> fired = new ArrayList<Timer>();
+        synchronized (this) {
+            final long target = clock.millis() / tickMillis;
+            while (currentTick < target) {
+                if (size == 0) {
+                    currentTick = target;
+                    break;
+                }
+                // Go straight to the next slot with timers, but stop at the
+                // end of the round where later levels must cascade
+                final int index = (int) (currentTick & MASK);
+                long step = SLOTS - index;
+                if (index < MASK) {
+                    final long later = occupied[0] & (-1L << (index + 1));
+                    if (later != 0) {
+                        step = Long.numberOfTrailingZeros(later) - index;
+                    }
+                }
+                if (currentTick + step > target) {
+                    currentTick = target;
+                    break;
+                }
+                currentTick += step;
+                if ((currentTick & MASK) == 0) {
+                    cascade(1);
+                }
+                expire(fired);
+            }
+        }
+        RuntimeException failure = null;
+        for (final Timer timer : fired) {
+            for (final Listener listener : listeners) {
+                try {
+                    if (timer.warning) {
+                        listener.warningReached(timer.node, timer.timestamp, timer.due);
+                    } else {
+                        listener.dueReached(timer.node, timer.timestamp, timer.due);
+                    }
+                } catch (RuntimeException e) {
+                    // The timers are already gone, so tell everyone else anyway
+                    if (failure == null) {
+                        failure = e;
+                    } else if (failure != e) {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return fired.size();
+    }
+
+    /**
+     * Call advance once every tick on the executor. Anything it throws goes
+     * to the uncaught exception handler of the thread, and the ticks go on.
+     *
+     * @return cancel this to stop
+     */
+    public ScheduledFuture<?> start(final ScheduledExecutorService executor) {
+        return executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    advance();
+                } catch (Throwable e) {
+                    // Thrown from here it would silently cancel all later ticks
+                    final Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void fileChanged(final File file, final OrgFile oldFile, final OrgFile newFile) {
+        update(oldFile, newFile);
+    }
+
+    @Override
+    public void fileFailed(final File file, final Exception e) {
+        // The last good version stays scheduled
+    }
+
+    /**
+     * @return the first occurrence from start on which is after now, or null
+     * if there is none
+     */
+    private static LocalDateTime nextOccurrence(final OrgTimestamp timestamp, final LocalDateTime start,
+                                                final LocalDateTime now) {
+        LocalDateTime due = start;
+        final ReadablePeriod period = timestamp.getRepeatPeriod();
+        // A repeater like +0d never gets anywhere
+        if (period != null && due.plus(period).isAfter(due)) {
+            while (!due.isAfter(now)) {
+                due = due.plus(period);
+            }
+        }
+        return due.isAfter(now) ? due : null;
+    }
+
+    private void schedule(final OrgFile file, final OrgNode node, final OrgTimestamp timestamp,
+                          final LocalDateTime due) {
+        final ReadablePeriod warningPeriod = timestamp.getWarningPeriod();
+        if (warningPeriod != null) {
+            link(new Timer(file, node, timestamp, due, true, toTick(due.minus(warningPeriod))));
+        }
+        link(new Timer(file, node, timestamp, due, false, toTick(due)));
+    }
+
+    /**
+     * First tick at or after the local time.
+     */
+    private long toTick(final LocalDateTime time) {
+        final long local = time.toDateTime(DateTimeZone.UTC).getMillis();
+        final long millis = zone.convertLocalToUTC(local, false);
+        final long tick = millis / tickMillis;
+        return tick * tickMillis < millis ? tick + 1 : tick;
+    }
+
+    private void link(final Timer timer) {
+        final Timer first = files.put(timer.file, timer);
+        timer.fileNext = first;
+        if (first != null) {
+            first.filePrev = timer;
+        }
+        place(timer, false);
+        size++;
+    }
+
+    private void unlink(final Timer timer) {
+        final int bucket = timer.bucket;
+        if (timer.prev == null) {
+            heads[bucket] = timer.next;
+        } else {
+            timer.prev.next = timer.next;
+        }
+        if (timer.next == null) {
+            tails[bucket] = timer.prev;
+        } else {
+            timer.next.prev = timer.prev;
+        }
+        if (heads[bucket] == null) {
+            occupied[bucket >>> BITS] &= ~(1L << (bucket & MASK));
+        }
+        timer.bucket = -1;
+        timer.prev = null;
+        timer.next = null;
+        size--;
+    }
+
+    /**
+     * Put the timer in the level that matches how far away it is.
+     *
+     * @param cascading true if the current tick has not been expired yet
+     */
+    private void place(final Timer timer, final boolean cascading) {
+        // Anything already due fires on the next tick, or on this one while
+        // it is still to be expired
+        long expiry = Math.max(timer.expiry, cascading ? currentTick : currentTick + 1);
+        final long delta = expiry - currentTick;
+        if (delta >= RANGE) {
+            expiry = currentTick + RANGE - 1;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        final int slot = (int) ((expiry >>> (BITS * level)) & MASK);
+        final int bucket = (level << BITS) | slot;
+
+        timer.bucket = bucket;
+        timer.prev = tails[bucket];
+        timer.next = null;
+        if (tails[bucket] == null) {
+            heads[bucket] = timer;
+        } else {
+            tails[bucket].next = timer;
+        }
+        tails[bucket] = timer;
+        occupied[level] |= 1L << slot;
+    }
+
+    /**
+     * Spread the current slot of a level over the levels below it. A level
+     * whose own round just ended cascades the one above it as well.
+     */
+    private void cascade(final int level) {
+        if (level >= LEVELS) {
+            return;
+        }
+        final int slot = (int) ((currentTick >>> (BITS * level)) & MASK);
+        final int bucket = (level << BITS) | slot;
+        Timer timer = heads[bucket];
+        heads[bucket] = null;
+        tails[bucket] = null;
+        occupied[level] &= ~(1L << slot);
+        while (timer != null) {
+            final Timer next = timer.next;
+            place(timer, true);
+            timer = next;
+        }
+        if (slot == 0) {
+            cascade(level + 1);
+        }
+    }
+
+    /**
+     * Take out the timers of the current tick, and schedule the next
+     * occurrence of repeating timestamps that are now due.
+     */
+    private void expire(final List<Timer> fired) {
+        final int bucket = (int) (currentTick & MASK);
+        LocalDateTime now = null;
+        while (heads[bucket] != null) {
+            final Timer timer = heads[bucket];
+            unlink(timer);
+            unlinkFromFile(timer);
+            fired.add(timer);
+            if (!timer.warning && timer.timestamp.getRepeatPeriod() != null) {
+                if (now == null) {
+                    now = new LocalDateTime(currentTick * tickMillis, zone);
+                }
+                final LocalDateTime due = nextOccurrence(timer.timestamp, timer.due, now);
+                if (due != null) {
+                    schedule(timer.file, timer.node, timer.timestamp, due);
+                }
+            }
+        }
+    }
+
+    private void unlinkFromFile(final Timer timer) {
+        if (timer.filePrev == null) {
+            if (timer.fileNext == null) {
+                files.remove(timer.file);
+            } else {
+                files.put(timer.file, timer.fileNext);
+            }
+        } else {
+            timer.filePrev.fileNext = timer.fileNext;
+        }
+        if (timer.fileNext != null) {
+            timer.fileNext.filePrev = timer.filePrev;
+        }
+        timer.filePrev = null;
+        timer.fileNext = null;
+    }
+}
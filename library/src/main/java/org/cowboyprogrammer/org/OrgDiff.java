@@ -0,0 +1,586 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * Finds the edits which turn one version of an org tree into another.
+ * Sub trees with the same tree hash are matched as a whole without looking
+ * inside them, so the work depends on how much changed rather than on the
+ * size of the files.
+ * <p/>
+ * Entries are paired up by identical sub tree, then by :ID:, then by equal
+ * contents under the same parent, then by title under the same parent and
+ * last by equal contents anywhere. Paired entries are modified or moved as
+ * needed, the rest are inserted or deleted. Entries which keep their order
+ * among their siblings are not moved.
+ */
+public final class OrgDiff {
+
+    /**
+     * What an edit does.
+     */
+    public enum Type {
+        /**
+         * Add a new entry, without sub nodes, under the parent at the index.
+         */
+        INSERT,
+        /**
+         * Remove the entry and everything below it.
+         */
+        DELETE,
+        /**
+         * Take the entry with everything below it out of its parent, then
+         * put it under the parent at the index.
+         */
+        MOVE,
+        /**
+         * Give the entry new contents. Its sub nodes stay.
+         */
+        MODIFY
+    }
+
+    /**
+     * One step of an edit script. Paths are the indices of sub nodes to
+     * follow from the root, as in ImmutableOrgNode, and refer to the tree as
+     * it is after all earlier edits in the script. For a move, the parent path
+     * and index refer to the tree after the entry was taken out.
+     */
+    public static final class Edit {
+        private final Type type;
+        private final int[] path;
+        private final int[] parentPath;
+        private final int index;
+        private final ImmutableOrgNode entry;
+
+        Edit(final Type type, final int[] path, final int[] parentPath, final int index,
+             final ImmutableOrgNode entry) {
+            this.type = type;
+            this.path = path;
+            this.parentPath = parentPath;
+            this.index = index;
+            this.entry = entry;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * The entry to delete, move or modify, null for inserts.
+         */
+        public int[] getPath() {
+            return path == null ? null : path.clone();
+        }
+
+        /**
+         * Where to insert or move to, null for deletes and modifications.
+         */
+        public int[] getParentPath() {
+            return parentPath == null ? null : parentPath.clone();
+        }
+
+        /**
+         * Index under the parent to insert or move to, -1 for deletes and
+         * modifications.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * New contents for inserts and modifications, without sub nodes.
+         */
+        public ImmutableOrgNode getEntry() {
+            return entry;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder(type.name());
+            if (path != null) {
+                sb.append(' ').append(Arrays.toString(path));
+            }
+            if (parentPath != null) {
+                sb.append(" to ").append(Arrays.toString(parentPath)).append(" at ").append(index);
+            }
+            if (entry != null) {
+                sb.append(": ").append(entry.getTitle());
+            }
+            return sb.toString();
+        }
+    }
+
+    private OrgDiff() {
+    }
+
+    /**
+     * @return the edits which turn from into to, empty if they are the same
+     */
+    public static List<Edit> diff(final OrgFile from, final OrgFile to) {
+        if (from.getTreeHash() == to.getTreeHash()) {
+            return Collections.emptyList();
+        }
+        return new Differ(from, to).run();
+    }
+
+    /**
+     * Make the edits of a script to a tree, which must look like the tree the
+     * script was made from.
+     */
+    public static void apply(final OrgFile file, final List<Edit> edits) {
+        for (final Edit edit : edits) {
+            switch (edit.type) {
+                case MODIFY: {
+                    final OrgNode node = get(file, edit.path, edit.path.length);
+                    node.getTags().clear();
+                    node.getTimestamps().clear();
+                    node.getTimestampRanges().clear();
+                    edit.entry.fillEntry(node);
+                    break;
+                }
+                case DELETE:
+                    takeOut(file, edit.path);
+                    break;
+                case MOVE:
+                    putIn(file, edit.parentPath, edit.index, takeOut(file, edit.path));
+                    break;
+                case INSERT:
+                    putIn(file, edit.parentPath, edit.index, edit.entry.toOrgNode());
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown edit " + edit.type);
+            }
+        }
+    }
+
+    private static OrgNode get(final OrgNode root, final int[] path, final int length) {
+        OrgNode node = root;
+        for (int i = 0; i < length; i++) {
+            final List<OrgNode> children = node.getSubNodes();
+            if (path[i] < 0 || path[i] >= children.size()) {
+                throw new IllegalArgumentException("No entry at " + Arrays.toString(path));
+            }
+            node = children.get(path[i]);
+        }
+        return node;
+    }
+
+    private static OrgNode takeOut(final OrgFile file, final int[] path) {
+        if (path.length == 0) {
+            throw new IllegalArgumentException("Can't take out the root");
+        }
+        final OrgNode parent = get(file, path, path.length - 1);
+        final OrgNode node = get(parent, new int[]{path[path.length - 1]}, 1);
+        parent.getSubNodes().remove(path[path.length - 1]);
+        return node;
+    }
+
+    private static void putIn(final OrgFile file, final int[] parentPath, final int index,
+                              final OrgNode node) {
+        final OrgNode parent = get(file, parentPath, parentPath.length);
+        if (index < 0 || index > parent.getSubNodes().size()) {
+            throw new IllegalArgumentException("No index " + index + " at " + Arrays.toString(parentPath));
+        }
+        node.setParent(parent);
+        parent.getSubNodes().add(index, node);
+    }
+
+    /**
+     * An entry in the tree as the script changes it.
+     */
+    private static final class Work {
+        // Entry in the old tree, null if inserted
+        final OrgNode from;
+        Work parent = null;
+        final List<Work> children = new ArrayList<Work>();
+
+        Work(final OrgNode from) {
+            this.from = from;
+        }
+    }
+
+    private static final class Differ {
+        private final OrgFile fromRoot;
+        private final OrgFile toRoot;
+        private final IdentityHashMap<OrgNode, OrgNode> fromToTo = new IdentityHashMap<OrgNode, OrgNode>();
+        private final IdentityHashMap<OrgNode, OrgNode> toToFrom = new IdentityHashMap<OrgNode, OrgNode>();
+        // Of every entry in the old tree, and of every placed entry in the new one
+        private final IdentityHashMap<OrgNode, Work> workOfFrom = new IdentityHashMap<OrgNode, Work>();
+        private final IdentityHashMap<OrgNode, Work> workOfTo = new IdentityHashMap<OrgNode, Work>();
+        private final IdentityHashMap<OrgNode, OrgNode> toParent = new IdentityHashMap<OrgNode, OrgNode>();
+        private final List<Edit> edits = new ArrayList<Edit>();
+        private final Work root;
+
+        Differ(final OrgFile from, final OrgFile to) {
+            fromRoot = from;
+            toRoot = to;
+            root = new Work(from);
+            workOfFrom.put(from, root);
+            final Stack<Work> stack = new Stack<Work>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                final Work work = stack.pop();
+                for (final OrgNode child : work.from.getSubNodes()) {
+                    final Work childWork = new Work(child);
+                    childWork.parent = work;
+                    work.children.add(childWork);
+                    workOfFrom.put(child, childWork);
+                    stack.push(childWork);
+                }
+            }
+            final Stack<OrgNode> nodes = new Stack<OrgNode>();
+            nodes.push(to);
+            while (!nodes.isEmpty()) {
+                final OrgNode node = nodes.pop();
+                for (final OrgNode child : node.getSubNodes()) {
+                    toParent.put(child, node);
+                    nodes.push(child);
+                }
+            }
+        }
+
+        List<Edit> run() {
+            pair(fromRoot, toRoot);
+            matchSubTrees();
+            matchEntries();
+
+            deleteUnmatched(true);
+            if (fromRoot.getContentHash() != toRoot.getContentHash()) {
+                edits.add(new Edit(Type.MODIFY, new int[0], null, -1,
+                        ImmutableOrgNode.entryOf(toRoot)));
+            }
+            workOfTo.put(toRoot, root);
+            place(toRoot);
+            deleteUnmatched(false);
+            return edits;
+        }
+
+        private void pair(final OrgNode from, final OrgNode to) {
+            fromToTo.put(from, to);
+            toToFrom.put(to, from);
+        }
+
+        private boolean isMatched(final OrgNode from) {
+            return fromToTo.containsKey(from);
+        }
+
+        private List<OrgNode> fromInPreOrder() {
+            final List<OrgNode> result = new ArrayList<OrgNode>();
+            final Stack<OrgNode> stack = new Stack<OrgNode>();
+            stack.push(fromRoot);
+            while (!stack.isEmpty()) {
+                final OrgNode node = stack.pop();
+                if (node != fromRoot) {
+                    result.add(node);
+                }
+                final List<OrgNode> children = node.getSubNodes();
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Pair up identical sub trees, largest first.
+         */
+        private void matchSubTrees() {
+            final Map<Long, List<OrgNode>> byHash = new HashMap<Long, List<OrgNode>>();
+            for (final OrgNode node : fromInPreOrder()) {
+                List<OrgNode> list = byHash.get(node.getTreeHash());
+                if (list == null) {
+                    list = new ArrayList<OrgNode>(1);
+                    byHash.put(node.getTreeHash(), list);
+                }
+                list.add(node);
+            }
+
+            final Stack<OrgNode> stack = new Stack<OrgNode>();
+            pushChildren(stack, toRoot);
+            while (!stack.isEmpty()) {
+                final OrgNode to = stack.pop();
+                final OrgNode from = pickSame(byHash.get(to.getTreeHash()), to);
+                if (from != null) {
+                    pairSubTree(from, to);
+                } else {
+                    pushChildren(stack, to);
+                }
+            }
+        }
+
+        /**
+         * An unmatched entry with nothing matched below it, preferably under
+         * the entry matched to the parent.
+         */
+        private OrgNode pickSame(final List<OrgNode> candidates, final OrgNode to) {
+            if (candidates == null) {
+                return null;
+            }
+            final OrgNode parent = toToFrom.get(toParent.get(to));
+            OrgNode found = null;
+            for (final OrgNode candidate : candidates) {
+                if (!isMatched(candidate) && !hasMatchBelow(candidate)) {
+                    if (workOfFrom.get(candidate).parent.from == parent) {
+                        return candidate;
+                    } else if (found == null) {
+                        found = candidate;
+                    }
+                }
+            }
+            return found;
+        }
+
+        private boolean hasMatchBelow(final OrgNode node) {
+            for (final OrgNode child : node.getSubNodes()) {
+                if (isMatched(child) || hasMatchBelow(child)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void pairSubTree(final OrgNode from, final OrgNode to) {
+            pair(from, to);
+            final List<OrgNode> fromChildren = from.getSubNodes();
+            final List<OrgNode> toChildren = to.getSubNodes();
+            // Same hash, so the same shape unless the hashes collided
+            for (int i = 0; i < fromChildren.size() && i < toChildren.size(); i++) {
+                pairSubTree(fromChildren.get(i), toChildren.get(i));
+            }
+        }
+
+        /**
+         * Pair up the remaining entries one at a time.
+         */
+        private void matchEntries() {
+            final Map<String, OrgNode> byId = new HashMap<String, OrgNode>();
+            final Map<Long, List<OrgNode>> byContent = new HashMap<Long, List<OrgNode>>();
+            for (final OrgNode node : fromInPreOrder()) {
+                if (isMatched(node)) {
+                    continue;
+                }
+                final String id = node.getProperty("ID");
+                if (id != null && !byId.containsKey(id)) {
+                    byId.put(id, node);
+                }
+                List<OrgNode> list = byContent.get(node.getContentHash());
+                if (list == null) {
+                    list = new ArrayList<OrgNode>(1);
+                    byContent.put(node.getContentHash(), list);
+                }
+                list.add(node);
+            }
+
+            final Stack<OrgNode> stack = new Stack<OrgNode>();
+            pushChildren(stack, toRoot);
+            while (!stack.isEmpty()) {
+                final OrgNode to = stack.pop();
+                pushChildren(stack, to);
+                if (toToFrom.containsKey(to)) {
+                    continue;
+                }
+                final OrgNode from = findEntry(to, byId, byContent);
+                if (from != null) {
+                    pair(from, to);
+                }
+            }
+        }
+
+        private OrgNode findEntry(final OrgNode to, final Map<String, OrgNode> byId,
+                                  final Map<Long, List<OrgNode>> byContent) {
+            final String id = to.getProperty("ID");
+            if (id != null) {
+                final OrgNode from = byId.get(id);
+                if (from != null && !isMatched(from)) {
+                    return from;
+                }
+            }
+            final OrgNode parent = toToFrom.get(toParent.get(to));
+            if (parent != null) {
+                for (final OrgNode sibling : parent.getSubNodes()) {
+                    if (!isMatched(sibling) && sibling.getContentHash() == to.getContentHash()) {
+                        return sibling;
+                    }
+                }
+                for (final OrgNode sibling : parent.getSubNodes()) {
+                    if (!isMatched(sibling) && sibling.getTitle().equals(to.getTitle())) {
+                        return sibling;
+                    }
+                }
+            }
+            final List<OrgNode> same = byContent.get(to.getContentHash());
+            if (same != null) {
+                for (final OrgNode from : same) {
+                    if (!isMatched(from)) {
+                        return from;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Put the sub nodes of an entry of the new tree in place, and then
+         * their sub nodes and so on.
+         */
+        private void place(final OrgNode start) {
+            final Stack<OrgNode> stack = new Stack<OrgNode>();
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                final OrgNode toParentNode = stack.pop();
+                final Work parent = workOfTo.get(toParentNode);
+                final List<OrgNode> children = toParentNode.getSubNodes();
+                final boolean[] stable = stableChildren(parent, children);
+                Work previous = null;
+                for (int i = 0; i < children.size(); i++) {
+                    final OrgNode to = children.get(i);
+                    final OrgNode from = toToFrom.get(to);
+                    final Work work;
+                    if (from == null) {
+                        work = new Work(null);
+                        final int index = indexAfter(parent, previous);
+                        insert(parent, index, work);
+                        edits.add(new Edit(Type.INSERT, null, pathOf(parent), index,
+                                ImmutableOrgNode.entryOf(to)));
+                    } else {
+                        work = workOfFrom.get(from);
+                        if (from.getContentHash() != to.getContentHash()) {
+                            edits.add(new Edit(Type.MODIFY, pathOf(work), null, -1,
+                                    ImmutableOrgNode.entryOf(to)));
+                        }
+                        if (!stable[i]) {
+                            final int[] path = pathOf(work);
+                            work.parent.children.remove(work);
+                            final int index = indexAfter(parent, previous);
+                            insert(parent, index, work);
+                            edits.add(new Edit(Type.MOVE, path, pathOf(parent), index, null));
+                        }
+                    }
+                    workOfTo.put(to, work);
+                    previous = work;
+                }
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
+            }
+        }
+
+        /**
+         * Which of the new sub nodes can stay where they are: those already
+         * under the parent, in the longest run that keeps its order.
+         */
+        private boolean[] stableChildren(final Work parent, final List<OrgNode> children) {
+            final int[] positions = new int[children.size()];
+            for (int i = 0; i < positions.length; i++) {
+                final OrgNode from = toToFrom.get(children.get(i));
+                final Work work = from == null ? null : workOfFrom.get(from);
+                positions[i] = work != null && work.parent == parent ? parent.children.indexOf(work) : -1;
+            }
+            final boolean[] stable = new boolean[positions.length];
+            // Longest increasing subsequence, with links back through it
+            final int[] previous = new int[positions.length];
+            final int[] tails = new int[positions.length];
+            int length = 0;
+            for (int i = 0; i < positions.length; i++) {
+                if (positions[i] < 0) {
+                    continue;
+                }
+                int low = 0;
+                int high = length;
+                while (low < high) {
+                    final int mid = (low + high) >>> 1;
+                    if (positions[tails[mid]] < positions[i]) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                previous[i] = low > 0 ? tails[low - 1] : -1;
+                tails[low] = i;
+                if (low == length) {
+                    length++;
+                }
+            }
+            for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+                stable[i] = true;
+            }
+            return stable;
+        }
+
+        private static int indexAfter(final Work parent, final Work previous) {
+            return previous == null ? 0 : parent.children.indexOf(previous) + 1;
+        }
+
+        private static void insert(final Work parent, final int index, final Work work) {
+            parent.children.add(index, work);
+            work.parent = parent;
+        }
+
+        /**
+         * Delete unmatched entries from the top down.
+         *
+         * @param early if true, only those with nothing matched below them
+         */
+        private void deleteUnmatched(final boolean early) {
+            final Stack<Work> stack = new Stack<Work>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                final Work work = stack.pop();
+                // Backwards, so deleting doesn't change the paths still to come
+                for (int i = work.children.size() - 1; i >= 0; i--) {
+                    final Work child = work.children.get(i);
+                    if (child.from != null && !isMatched(child.from)
+                            && (!early || !hasMatchBelow(child.from))) {
+                        edits.add(new Edit(Type.DELETE, pathOf(child), null, -1, null));
+                        work.children.remove(i);
+                    } else {
+                        stack.push(child);
+                    }
+                }
+            }
+        }
+
+        private static int[] pathOf(final Work work) {
+            int depth = 0;
+            for (Work w = work; w.parent != null; w = w.parent) {
+                depth++;
+            }
+            final int[] path = new int[depth];
+            for (Work w = work; w.parent != null; w = w.parent) {
+                path[--depth] = w.parent.children.indexOf(w);
+            }
+            return path;
+        }
+
+        private static void pushChildren(final Stack<OrgNode> stack, final OrgNode node) {
+            final List<OrgNode> children = node.getSubNodes();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the org files in a directory parsed, reparsing them when they change
+ * on disk. Bursts of events for a file, like those an editor makes when
+ * saving, are collected until the file has been quiet for a while, and only
+ * then is it parsed again, on a background thread. The new OrgFile replaces
+ * the old one in a single step and listeners are told which file changed.
+ * <p/>
+ * OrgFiles handed out are not changed by the watcher, a change on disk gives
+ * a new object instead. Files handed out and then written with writeToFile
+ * are not parsed again, since they already match what is on disk. Any
+ * other change is, even if size and modification time stay the same.
+ */
+public class OrgDirectoryWatcher implements Closeable {
+
+    /**
+     * Told about changes, on the watcher's background thread.
+     */
+    public interface Listener {
+        /**
+         * @param file    that changed
+         * @param oldFile what it was before, or null if it is new
+         * @param newFile what it is now, or null if it was deleted
+         */
+        void fileChanged(File file, OrgFile oldFile, OrgFile newFile);
+
+        /**
+         * The file could not be read. The last good version is kept.
+         */
+        void fileFailed(File file, Exception e);
+    }
+
+    private static final String SUFFIX = ".org";
+
+    private final OrgParser parser;
+    private final File directory;
+    private final long debounceMillis;
+    private final ScheduledExecutorService executor;
+    private final WatchService watchService;
+    private final Thread watchThread;
+
+    // By file name
+    private final ConcurrentHashMap<String, OrgFile> files = new ConcurrentHashMap<String, OrgFile>();
+    // Version of the file on disk each OrgFile was parsed from or last checked
+    // against, a different one means it was written with writeToFile since
+    private final ConcurrentHashMap<String, OrgSource> seen = new ConcurrentHashMap<String, OrgSource>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    // Reparses waiting for events to settle, only touched on the executor
+    private final Map<String, ScheduledFuture<?>> pending = new HashMap<String, ScheduledFuture<?>>();
+
+    /**
+     * Parse all org files in the directory and start watching it. Files that
+     * can't be parsed are left out until they change.
+     *
+     * @param parser         The OrgParser to use
+     * @param directory      to watch, sub directories are not included
+     * @param debounceMillis how long a file must be left alone before it is parsed again
+     */
+    public OrgDirectoryWatcher(final OrgParser parser, final File directory,
+                               final long debounceMillis) throws IOException {
+        if (parser == null || directory == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        if (debounceMillis < 0) {
+            throw new IllegalArgumentException("Debounce time can't be negative");
+        }
+        this.parser = parser;
+        this.directory = directory;
+        this.debounceMillis = debounceMillis;
+
+        // Register before the first scan, so nothing is missed in between
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "OrgDirectoryWatcher-parse");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final String[] names = directory.list();
+        if (names != null) {
+            for (final String name : names) {
+                if (name.endsWith(SUFFIX)) {
+                    reload(name);
+                }
+            }
+        }
+
+        watchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "OrgDirectoryWatcher-watch");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * The currently parsed files by file name. The map changes as files do.
+     */
+    public Map<String, OrgFile> getFiles() {
+        return Collections.unmodifiableMap(files);
+    }
+
+    /**
+     * @return the currently parsed version of the file, or null if there is none
+     */
+    public OrgFile get(final String filename) {
+        return files.get(filename);
+    }
+
+    public void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(final Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stop watching. Reparses that have not started yet are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        watchService.close();
+        watchThread.interrupt();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                final WatchKey key = watchService.take();
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Events were lost, check everything
+                        scanAll();
+                    } else {
+                        final Path name = (Path) event.context();
+                        changed(name.toString());
+                    }
+                }
+                if (!key.reset()) {
+                    // Directory is gone
+                    scanAll();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } catch (ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private void scanAll() {
+        final String[] names = directory.list();
+        if (names != null) {
+            for (final String name : names) {
+                changed(name);
+            }
+        }
+        for (final String name : files.keySet()) {
+            changed(name);
+        }
+    }
+
+    /**
+     * Schedule a reparse, pushing back any that is already waiting.
+     */
+    private void changed(final String name) {
+        if (!name.endsWith(SUFFIX)) {
+            return;
+        }
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                final ScheduledFuture<?> previous = pending.remove(name);
+                if (previous != null) {
+                    previous.cancel(false);
+                }
+                pending.put(name, executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        pending.remove(name);
+                        reload(name);
+                    }
+                }, debounceMillis, TimeUnit.MILLISECONDS));
+            }
+        });
+    }
+
+    private void submit(final Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Closed
+        }
+    }
+
+    private void reload(final String name) {
+        final File file = new File(directory, name);
+        final OrgFile old = files.get(name);
+
+        if (!file.isFile()) {
+            if (old != null) {
+                files.remove(name);
+                seen.remove(name);
+                notifyChanged(file, old, null);
+            }
+            return;
+        }
+        if (old != null && old.getFileSource() != seen.get(name) && old.isSourceUnchanged()) {
+            // The event is for writeToFile, size and time alone can't tell
+            // if someone else changed the file as well
+            seen.put(name, old.getFileSource());
+            return;
+        }
+
+        final OrgFile parsed;
+        try {
+            parsed = OrgFile.createFromFile(parser, file);
+        } catch (Exception e) {
+            for (final Listener listener : listeners) {
+                listener.fileFailed(file, e);
+            }
+            return;
+        }
+        seen.put(name, parsed.getFileSource());
+        files.put(name, parsed);
+        notifyChanged(file, old, parsed);
+    }
+
+    private void notifyChanged(final File file, final OrgFile oldFile, final OrgFile newFile) {
+        for (final Listener listener : listeners) {
+            listener.fileChanged(file, oldFile, newFile);
+        }
+    }
+}
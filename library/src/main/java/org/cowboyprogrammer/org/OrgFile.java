@@ -17,22 +17,76 @@
 
 package org.cowboyprogrammer.org;
 
+import org.cowboyprogrammer.org.parser.Diagnostic;
+import org.cowboyprogrammer.org.parser.LineKind;
 import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.ParseListener;
+import org.cowboyprogrammer.org.parser.ParseOptions;
+import org.cowboyprogrammer.org.util.LineReader;
+import org.cowboyprogrammer.org.util.OffsetLineReader;
+import org.cowboyprogrammer.org.util.Utf8LineReader;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Stack;
 
 public class OrgFile extends OrgNode {
 
+    // Global tracer, if any
+    private static volatile OrgTracer tracer = null;
+
     // File where this lives
     private String filename;
+    // File this was read from, if it was read with createFromFile
+    private OrgSource source = null;
+    // Problems found when parsed leniently, null if none were
+    private List<Diagnostic> diagnostics = null;
 
     public OrgFile(final OrgParser orgParser, final String fname) {
         super(orgParser);
         filename = fname;
     }
 
+    /**
+     * Lines which could not be parsed, if the file was parsed in lenient
+     * mode. Empty otherwise.
+     */
+    public List<Diagnostic> getDiagnostics() {
+        if (diagnostics == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(diagnostics);
+    }
+
+    void addDiagnostic(final Diagnostic diagnostic) {
+        if (diagnostics == null) {
+            diagnostics = new ArrayList<Diagnostic>();
+        }
+        diagnostics.add(diagnostic);
+    }
+
+    /**
+     * Install a tracer which is told about all parsing, serialization and
+     * file operations from now on. Null removes it.
+     */
+    public static void setTracer(final OrgTracer tracer) {
+        OrgFile.tracer = tracer;
+    }
+
+    /**
+     * The installed tracer, or null.
+     */
+    static OrgTracer getTracer() {
+        return tracer;
+    }
+
     /**
      * Read an org file.
      *
@@ -48,66 +102,99 @@ public class OrgFile extends OrgNode {
      */
     public static OrgFile createFromBufferedReader(final OrgParser parser, final String filename,
                                                    final BufferedReader br) throws IOException, ParseException {
+        return createFromBufferedReader(parser, filename, br, new ParseOptions());
+    }
+
+    /**
+     * Read an org file.
+     *
+     * @param filename
+     *         The filename without the path part
+     * @param br
+     *         A buffered reader of the file contents
+     * @param options
+     *         How to parse
+     *
+     * @return an OrgFile object containing the file's contents
+     *
+     * @throws ParseException
+     * @throws IOException
+     */
+    public static OrgFile createFromBufferedReader(final OrgParser parser, final String filename,
+                                                   final BufferedReader br, final ParseOptions options)
+            throws IOException, ParseException {
         if (null == filename || br == null) {
             throw new NullPointerException("Can't read a null buffer");
         }
-        // Need these to handle org parsing
-        final OrgFile orgfile = new OrgFile(parser, filename);
-        final Stack<OrgNode> stack = new Stack<OrgNode>();
-        // Root is file
-        stack.push(orgfile);
+        return parse(parser, filename, new OffsetLineReader(br, null), null,
+                traced(filename, options.getListener()), options);
+    }
+
+    /**
+     * Combine the given listener with one from the tracer, if any.
+     */
+    static ParseListener traced(final String path, final ParseListener listener) {
+        final OrgTracer t = tracer;
+        final ParseListener traceListener = t == null ? null : t.parseStarted(path);
+        if (traceListener == null) {
+            return listener;
+        } else if (listener == null) {
+            return traceListener;
+        }
+        return new BothListeners(listener, traceListener);
+    }
+
+    private static final class BothListeners implements ParseListener {
+        private final ParseListener first;
+        private final ParseListener second;
+
+        BothListeners(final ParseListener first, final ParseListener second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void lineRead(final int length, final long nanos) {
+            first.lineRead(length, nanos);
+            second.lineRead(length, nanos);
+        }
+
+        @Override
+        public void lineParsed(final LineKind kind, final long nanos) {
+            first.lineParsed(kind, nanos);
+            second.lineParsed(kind, nanos);
+        }
+
+        @Override
+        public void nodeFinished(final OrgNode node, final int depth) {
+            first.nodeFinished(node, depth);
+            second.nodeFinished(node, depth);
+        }
 
-        String line, sepline = null;
+        @Override
+        public void parseFinished(final OrgFile file, final long bytes) {
+            first.parseFinished(file, bytes);
+            second.parseFinished(file, bytes);
+        }
+    }
 
+    /**
+     * Parse lines from the reader. If source is not null, the reader must be
+     * tracking byte offsets and each node will remember its span in it.
+     */
+    private static OrgFile parse(final OrgParser parser, final String filename,
+                                 final LineReader reader, final OrgSource source,
+                                 final ParseListener listener, final ParseOptions options)
+            throws IOException, ParseException {
+        final OrgReader orgReader = new OrgReader(parser, filename, reader, source, listener, options, true);
         try {
-            while ((line = br.readLine()) != null) {
-                // See what we are reading
-                if (parser.isHeaderLine(line)) {
-                    // Destroy separator line
-                    sepline = null;
-                    // Header of node
-                    // Create new node
-                    final OrgNode node = parser.createFromHeader(line);
-
-                    // Find parent
-                    while (node.getLevel() <= stack.peek().getLevel()) {
-                        stack.pop();
-                    }
-
-                    // Assign parent
-                    node.setParent(stack.peek());
-                    // Assign child
-                    stack.peek().getSubNodes().add(node);
-                    // Add to stack
-                    stack.push(node);
-                    /*
-                    Sep line handles a possible separator line between the
-                    body of the previous item and the header of the next item
-                    . One separator line is allowed,
-                    and will thus get "eaten" during parsing.
-                     */
-                } else if (sepline != null && line.isEmpty()) {
-                    // Another empty line, put last one in node
-                    stack.peek().addBodyLine(sepline);
-                    sepline = line;
-                } else if (sepline == null && line.isEmpty()) {
-                    // Possibly a separator line. Keep track of it.
-                    sepline = line;
-                } else {
-                    // Body of node - OK to place in file
-                    // Put sepline there first if not empty
-                    if (sepline != null) {
-                        stack.peek().addBodyLine(sepline);
-                        sepline = null;
-                    }
-                    stack.peek().addBodyLine(line);
-                }
+            while (orgReader.next() != null) {
+                // Nodes are attached to the tree as they are read
             }
         } finally {
-            br.close();
+            orgReader.close();
         }
-
-        return orgfile;
+        return orgReader.getFile();
     }
 
     /**
@@ -144,7 +231,69 @@ public class OrgFile extends OrgNode {
      * @throws IOException
      */
     public static OrgFile createFromFile(final OrgParser parser, final File file) throws IOException, ParseException {
-        return createFromBufferedReader(parser, file.getName(), new BufferedReader(new FileReader(file)));
+        return createFromFile(parser, file, new ParseOptions());
+    }
+
+    /**
+     * Read an org file.
+     *
+     * @param parser
+     *         The OrgParser to use
+     * @param file
+     *         The file open and parse
+     * @param options
+     *         How to parse
+     *
+     * @return an OrgFile object containing the file's contents
+     *
+     * @throws ParseException
+     * @throws IOException
+     */
+    public static OrgFile createFromFile(final OrgParser parser, final File file,
+                                         final ParseOptions options) throws IOException, ParseException {
+        final Charset charset = options.getCharset();
+        final OrgSource source = new OrgSource(file, charset, file.length(), file.lastModified());
+        final LineReader reader = openLines(new FileInputStream(file), charset);
+        return parse(parser, file.getName(), reader, source, traced(file.getPath(), options.getListener()),
+                options);
+    }
+
+    /**
+     * Read an org file in the charset of the options. The stream is closed
+     * when done.
+     *
+     * @param parser
+     *         The OrgParser to use
+     * @param filename
+     *         The filename without the path part
+     * @param in
+     *         The file contents
+     * @param options
+     *         How to parse
+     *
+     * @return an OrgFile object containing the file's contents
+     *
+     * @throws ParseException
+     * @throws IOException
+     */
+    public static OrgFile createFromInputStream(final OrgParser parser, final String filename,
+                                                final InputStream in, final ParseOptions options)
+            throws IOException, ParseException {
+        if (null == filename || in == null) {
+            throw new NullPointerException("Can't read a null stream");
+        }
+        return parse(parser, filename, openLines(in, options.getCharset()), null,
+                traced(filename, options.getListener()), options);
+    }
+
+    /**
+     * UTF-8 is split into lines as bytes, anything else is decoded first.
+     */
+    static LineReader openLines(final InputStream in, final Charset charset) {
+        if ("UTF-8".equals(charset.name())) {
+            return new Utf8LineReader(in);
+        }
+        return new OffsetLineReader(new InputStreamReader(in, charset), charset);
     }
 
     /**
@@ -201,9 +350,105 @@ public class OrgFile extends OrgNode {
      * @throws IOException
      */
     public void writeToBuffer(final BufferedWriter bw) throws IOException {
-        // Write the org tree
-        bw.write(this.treeToString());
+        final OrgTracer t = tracer;
+        final Object token = t == null ? null : t.serializeStarted("writeToBuffer", this);
+        long size = -1;
+        try {
+            // Write the org tree
+            final StringBuilder sb = new StringBuilder();
+            treeToString(sb);
+            bw.append(sb);
+            size = sb.length();
+        } finally {
+            if (token != null) {
+                t.serializeFinished(token, size);
+            }
+        }
+    }
+
+    /**
+     * Writes the org tree to the given file. Entries which have not been
+     * modified since they were read with createFromFile are copied as bytes
+     * from that file, only modified entries are rendered again. If the source
+     * file has changed since it was read, everything is rendered.
+     * <p/>
+     * The result is written next to the target and then moved into place, so
+     * the target may be the source file. Afterwards all entries are considered
+     * unmodified relative to the target.
+     *
+     * @param target
+     *         The file to write
+     *
+     * @throws IOException
+     */
+    public void writeToFile(final File target) throws IOException {
+        final OrgTracer t = tracer;
+        final Object token = t == null ? null : t.serializeStarted("writeToFile", this);
+        long size = -1;
+        try {
+            final OrgSource from = source != null && source.isUnchanged() ? source : null;
+            final Charset charset = source != null ? source.charset : Charset.forName("UTF-8");
+            final File dir = target.getAbsoluteFile().getParentFile();
+            final File tmp = File.createTempFile(target.getName(), ".tmp", dir);
+
+            final SpanWriter writer = new SpanWriter(this, from, charset);
+            try {
+                writer.write(tmp);
+                try {
+                    Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                if (tmp.exists() && !tmp.delete()) {
+                    tmp.deleteOnExit();
+                }
+            }
+
+            source = new OrgSource(target, charset, target.length(), target.lastModified());
+            writer.rebase(source);
+            size = source.length;
+        } finally {
+            if (token != null) {
+                t.serializeFinished(token, size);
+            }
+        }
+    }
+
+    void setSource(final OrgSource source) {
+        this.source = source;
+    }
 
+    /**
+     * The version of the file this was read from or last written to, if any.
+     */
+    OrgSource getFileSource() {
+        return source;
+    }
+
+    /**
+     * True if the file was read or written by this object and has not been
+     * touched since.
+     */
+    boolean isSourceUnchanged() {
+        return source != null && source.isUnchanged();
+    }
+
+    /**
+     * Drop all source spans, so the next save renders everything.
+     */
+    void forgetSourceSpans() {
+        source = null;
+        final Stack<OrgNode> stack = new Stack<OrgNode>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            final OrgNode node = stack.pop();
+            node.markDirty();
+            for (final OrgNode child : node.getSubNodes()) {
+                stack.push(child);
+            }
+        }
     }
 
     public boolean delete() throws IOException {
@@ -211,8 +456,14 @@ public class OrgFile extends OrgNode {
     }
 
     public boolean delete(final String filename) throws IOException {
+        final OrgTracer t = tracer;
+        final Object token = t == null ? null : t.fileOperationStarted("delete", filename, null);
         final File file = new File(filename);
-        return file.delete();
+        final boolean res = file.delete();
+        if (token != null) {
+            t.fileOperationFinished(token, res);
+        }
+        return res;
     }
 
     /**
@@ -226,8 +477,13 @@ public class OrgFile extends OrgNode {
             return false;
         }
 
+        final OrgTracer t = tracer;
+        final Object token = t == null ? null : t.fileOperationStarted("rename", filename, newFilename);
         final File file = new File(filename);
         final boolean res = file.renameTo(new File(newFilename));
+        if (token != null) {
+            t.fileOperationFinished(token, res);
+        }
 
         if (res) {
             this.filename = newFilename;
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import java.io.File;
+import java.util.List;
+import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds entries by their :ID: or :CUSTOM_ID: property across any number of
+ * files. Files are added and removed as a whole, so keeping the index up to
+ * date after a file is parsed again only touches the entries of that file.
+ * Add it as a listener to an OrgDirectoryWatcher to have that done
+ * automatically.
+ * <p/>
+ * Lookups can be done from any thread. Properties changed on nodes after
+ * their file was added are not noticed until the file is updated.
+ */
+public class OrgIdIndex implements OrgDirectoryWatcher.Listener {
+
+    private final ConcurrentHashMap<String, OrgNode> ids = new ConcurrentHashMap<String, OrgNode>();
+    private final ConcurrentHashMap<String, OrgNode> customIds =
+            new ConcurrentHashMap<String, OrgNode>();
+
+    /**
+     * Index the entries of a file. If an id is already known, the entry in
+     * this file replaces the old one.
+     */
+    public void add(final OrgFile file) {
+        final Stack<OrgNode> stack = new Stack<OrgNode>();
+        stack.push(file);
+        while (!stack.isEmpty()) {
+            final OrgNode node = stack.pop();
+            final String id = node.getProperty("ID");
+            if (id != null && !id.isEmpty()) {
+                ids.put(id, node);
+            }
+            final String customId = node.getProperty("CUSTOM_ID");
+            if (customId != null && !customId.isEmpty()) {
+                customIds.put(customId, node);
+            }
+            pushChildren(stack, node);
+        }
+    }
+
+    /**
+     * Forget the entries of a file. Ids which now belong to entries in
+     * other files are kept.
+     */
+    public void remove(final OrgFile file) {
+        final Stack<OrgNode> stack = new Stack<OrgNode>();
+        stack.push(file);
+        while (!stack.isEmpty()) {
+            final OrgNode node = stack.pop();
+            final String id = node.getProperty("ID");
+            if (id != null) {
+                ids.remove(id, node);
+            }
+            final String customId = node.getProperty("CUSTOM_ID");
+            if (customId != null) {
+                customIds.remove(customId, node);
+            }
+            pushChildren(stack, node);
+        }
+    }
+
+    /**
+     * Replace the entries of one version of a file with those of another.
+     *
+     * @param oldFile the previous version, or null if there was none
+     * @param newFile the current version, or null if it is gone
+     */
+    public void update(final OrgFile oldFile, final OrgFile newFile) {
+        if (oldFile != null) {
+            remove(oldFile);
+        }
+        if (newFile != null) {
+            add(newFile);
+        }
+    }
+
+    /**
+     * @return the entry with the :ID:, or null if there is none
+     */
+    public OrgNode getById(final String id) {
+        return ids.get(id);
+    }
+
+    /**
+     * @return the entry with the :CUSTOM_ID:, or null if there is none
+     */
+    public OrgNode getByCustomId(final String customId) {
+        return customIds.get(customId);
+    }
+
+    /**
+     * Find the target of a link like "id:abc" or "#custom-id", with or
+     * without the surrounding brackets and description.
+     *
+     * @return the entry, or null if the link is not an id link or no entry has the id
+     */
+    public OrgNode resolveLink(final String link) {
+        String target = link.trim();
+        if (target.startsWith("[[") && target.endsWith("]]")) {
+            target = target.substring(2, target.length() - 2);
+            final int description = target.indexOf("][");
+            if (description >= 0) {
+                target = target.substring(0, description);
+            }
+        }
+        if (target.startsWith("id:")) {
+            return ids.get(target.substring(3).trim());
+        } else if (target.startsWith("#")) {
+            return customIds.get(target.substring(1).trim());
+        }
+        return null;
+    }
+
+    /**
+     * Number of entries with an :ID:.
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public void fileChanged(final File file, final OrgFile oldFile, final OrgFile newFile) {
+        update(oldFile, newFile);
+    }
+
+    @Override
+    public void fileFailed(final File file, final Exception e) {
+        // The last good version stays indexed
+    }
+
+    private static void pushChildren(final Stack<OrgNode> stack, final OrgNode node) {
+        final List<OrgNode> children = node.getSubNodes();
+        for (int i = children.size() - 1; i >= 0; i--) {
+            stack.push(children.get(i));
+        }
+    }
+}
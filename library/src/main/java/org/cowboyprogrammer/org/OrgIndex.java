@@ -0,0 +1,541 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.ParseOptions;
+import org.cowboyprogrammer.org.parser.TodoKeywordParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Where every entry of an org file is, kept in a file next to it so single
+ * entries can be loaded without parsing the whole file again. Entries are
+ * identified by their index in file order, where 0 is the file itself.
+ * <p/>
+ * The index remembers the size and modification time of the org file, and
+ * is only used while they still match.
+ */
+public class OrgIndex {
+
+    /**
+     * Returned by find and getParent if there is no such entry.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Added to the name of the org file to get the name of its index.
+     */
+    public static final String SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x4f524749;
+    private static final int VERSION = 1;
+    private static final int ENTRY_BYTES = 8 + 6 * 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final OrgParser parser;
+    private final OrgSource source;
+    // Declared in the file, if #+TODO: lines were followed
+    private final List<String> fileTodoKeys = new ArrayList<String>();
+
+    private int size = 0;
+    private long[] offset = new long[INITIAL_CAPACITY];
+    private int[] length = new int[INITIAL_CAPACITY];
+    private int[] level = new int[INITIAL_CAPACITY];
+    private int[] parent = new int[INITIAL_CAPACITY];
+    // Index into todoNames, or NONE
+    private int[] todo = new int[INITIAL_CAPACITY];
+    // Indices into tagNames
+    private int[][] tags = new int[INITIAL_CAPACITY][];
+    private String[] title = new String[INITIAL_CAPACITY];
+    private final List<String> todoNames = new ArrayList<String>();
+    private final List<String> tagNames = new ArrayList<String>();
+    private final HashMap<String, Integer> todoIds = new HashMap<String, Integer>();
+    private final HashMap<String, Integer> tagIds = new HashMap<String, Integer>();
+
+    // Index of the last entry in the subtree of each entry, worked out once needed
+    private int[] lastDescendant = null;
+
+    private OrgIndex(final OrgParser parser, final OrgSource source) {
+        this.parser = parser;
+        this.source = source;
+    }
+
+    /**
+     * The index file of an org file.
+     */
+    public static File indexFile(final File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /**
+     * Read the index of a file, or index it again if the index is missing or
+     * out of date.
+     *
+     * @param parser  The OrgParser to use
+     * @param file    The org file
+     * @param options How to parse, filters and outline are ignored
+     */
+    public static OrgIndex open(final OrgParser parser, final File file, final ParseOptions options)
+            throws IOException, ParseException {
+        OrgIndex index;
+        try {
+            index = read(parser, file, options);
+        } catch (IOException e) {
+            // Unreadable, make a new one
+            index = null;
+        }
+        return index != null ? index : build(parser, file, options);
+    }
+
+    /**
+     * Index a file and write the index next to it. Only headers are parsed.
+     *
+     * @param parser  The OrgParser to use
+     * @param file    The org file
+     * @param options How to parse, filters and outline are ignored
+     */
+    public static OrgIndex build(final OrgParser parser, final File file, final ParseOptions options)
+            throws IOException, ParseException {
+        final OrgSource source = new OrgSource(file, options.getCharset(), file.length(),
+                file.lastModified());
+        final ParseOptions outline = new ParseOptions()
+                .setCharset(options.getCharset())
+                .setFileTodoKeywords(options.isFileTodoKeywords())
+                .setOutline(true);
+        final OrgReader reader = new OrgReader(parser, file.getName(),
+                OrgFile.openLines(new FileInputStream(file), options.getCharset()), source,
+                OrgFile.traced(file.getName(), options.getListener()), outline, false);
+
+        final OrgIndex index = new OrgIndex(parser, source);
+        final int[] lastAtDepth = new int[64];
+        try {
+            OrgNode node;
+            while ((node = reader.next()) != null) {
+                final int depth = reader.getDepth();
+                final int at = index.add(node, depth == 0 ? NONE : lastAtDepth[depth - 1]);
+                if (depth < lastAtDepth.length) {
+                    lastAtDepth[depth] = at;
+                } else {
+                    throw new ParseException("Entries nested too deeply to index", 0);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        index.fileTodoKeys.addAll(reader.getFileTodoKeywords());
+        if (source.isUnchanged()) {
+            index.write(indexFile(file));
+        }
+        return index;
+    }
+
+    /**
+     * Read the index of a file.
+     *
+     * @param parser  The OrgParser to use
+     * @param file    The org file
+     * @param options How to parse, only the charset matters
+     * @return the index, or null if there is none or it is out of date
+     * @throws IOException if it can't be read or is corrupt
+     */
+    public static OrgIndex read(final OrgParser parser, final File file, final ParseOptions options)
+            throws IOException {
+        final File indexFile = indexFile(file);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        // Nothing in it can be larger than this
+        final long limit = indexFile.length();
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(indexFile)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            final long fileLength = in.readLong();
+            final long lastModified = in.readLong();
+            final String charset = in.readUTF();
+            if (fileLength != file.length() || lastModified != file.lastModified()
+                    || !charset.equals(options.getCharset().name())) {
+                return null;
+            }
+
+            final OrgIndex index = new OrgIndex(parser, new OrgSource(file, options.getCharset(),
+                    fileLength, lastModified));
+            readStrings(in, index.fileTodoKeys, limit);
+            readStrings(in, index.todoNames, limit);
+            readStrings(in, index.tagNames, limit);
+            // An entry is at least an offset, six ints and an empty title
+            final int count = readCount(in, limit, ENTRY_BYTES);
+            index.ensureCapacity(count);
+            for (int i = 0; i < count; i++) {
+                index.offset[i] = in.readLong();
+                index.length[i] = in.readInt();
+                index.level[i] = in.readInt();
+                index.parent[i] = in.readInt();
+                index.todo[i] = in.readInt();
+                if (index.offset[i] < 0 || index.length[i] < 0
+                        || index.offset[i] + index.length[i] > fileLength || index.level[i] < 0
+                        || index.parent[i] < NONE || index.parent[i] >= i
+                        || index.todo[i] < NONE || index.todo[i] >= index.todoNames.size()) {
+                    throw new IOException("Corrupt index entry " + i);
+                }
+                final int[] entryTags = new int[readCount(in, limit, 4)];
+                for (int t = 0; t < entryTags.length; t++) {
+                    entryTags[t] = in.readInt();
+                    if (entryTags[t] < 0 || entryTags[t] >= index.tagNames.size()) {
+                        throw new IOException("Corrupt index entry " + i);
+                    }
+                }
+                index.tags[i] = entryTags;
+                index.title[i] = readString(in, limit);
+            }
+            index.size = count;
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the index, next to the org file and then moved into place.
+     */
+    private void write(final File target) throws IOException {
+        final File tmp = File.createTempFile(target.getName(), ".tmp",
+                target.getAbsoluteFile().getParentFile());
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(source.length);
+                out.writeLong(source.lastModified);
+                out.writeUTF(source.charset.name());
+                writeStrings(out, fileTodoKeys);
+                writeStrings(out, todoNames);
+                writeStrings(out, tagNames);
+                out.writeInt(size);
+                for (int i = 0; i < size; i++) {
+                    out.writeLong(offset[i]);
+                    out.writeInt(length[i]);
+                    out.writeInt(level[i]);
+                    out.writeInt(parent[i]);
+                    out.writeInt(todo[i]);
+                    out.writeInt(tags[i].length);
+                    for (final int tag : tags[i]) {
+                        out.writeInt(tag);
+                    }
+                    writeString(out, title[i]);
+                }
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (tmp.exists() && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * True if the org file has not changed since it was indexed.
+     */
+    public boolean isValid() {
+        return source.isUnchanged();
+    }
+
+    /**
+     * Number of entries, including the file itself at index 0.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Byte offset of the entry's header in the org file.
+     */
+    public long getOffset(final int index) {
+        checkIndex(index);
+        return offset[index];
+    }
+
+    /**
+     * Bytes of the entry's header and body, not counting entries below it.
+     */
+    public int getLength(final int index) {
+        checkIndex(index);
+        return length[index];
+    }
+
+    public int getLevel(final int index) {
+        checkIndex(index);
+        return level[index];
+    }
+
+    public int getParent(final int index) {
+        checkIndex(index);
+        return parent[index];
+    }
+
+    /**
+     * @return the todo keyword, or null if there is none
+     */
+    public String getTodo(final int index) {
+        checkIndex(index);
+        return todo[index] == NONE ? null : todoNames.get(todo[index]);
+    }
+
+    public String getTitle(final int index) {
+        checkIndex(index);
+        return title[index];
+    }
+
+    public List<String> getTags(final int index) {
+        checkIndex(index);
+        if (tags[index].length == 0) {
+            return Collections.emptyList();
+        }
+        final List<String> names = new ArrayList<String>(tags[index].length);
+        for (final int tag : tags[index]) {
+            names.add(tagNames.get(tag));
+        }
+        return names;
+    }
+
+    /**
+     * Find an entry by the titles of it and its ancestors, starting from the
+     * top. The first match is used at every level.
+     *
+     * @return index of the entry, or NONE if there is no such entry
+     */
+    public int find(final String... path) {
+        int current = 0;
+        for (final String part : path) {
+            int found = NONE;
+            for (int i = current + 1; i < size && found == NONE; i++) {
+                if (parent[i] == current && part.equals(title[i])) {
+                    found = i;
+                }
+            }
+            if (found == NONE) {
+                return NONE;
+            }
+            current = found;
+        }
+        return current;
+    }
+
+    /**
+     * Load an entry with everything below it, with a single read from the
+     * org file. Its parent is an OrgFile holding only it.
+     *
+     * @param index of the entry, 0 for the whole file
+     * @throws IOException if the org file has changed since it was indexed
+     */
+    public OrgNode load(final int index) throws IOException, ParseException {
+        checkIndex(index);
+        if (!source.isUnchanged()) {
+            throw new IOException("File has changed since it was indexed");
+        }
+        final long start = index == 0 ? 0 : offset[index];
+        final long end = index == 0 ? source.length : subtreeEnd(index);
+        final ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+        final FileInputStream in = new FileInputStream(source.file);
+        try {
+            final FileChannel channel = in.getChannel();
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, start + bytes.position()) < 0) {
+                    throw new IOException("File is shorter than its index");
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        final OrgReader reader = new OrgReader(fileParser(), source.file.getName(),
+                OrgFile.openLines(new ByteArrayInputStream(bytes.array()), source.charset),
+                null, null, new ParseOptions().setCharset(source.charset), true);
+        try {
+            while (reader.next() != null) {
+                // Attached as it goes
+            }
+        } finally {
+            reader.close();
+        }
+        final OrgFile file = reader.getFile();
+        return index == 0 ? file : file.getSubNodes().get(0);
+    }
+
+    /**
+     * Load an entry by the titles of it and its ancestors.
+     *
+     * @return the entry, or null if there is no such entry
+     */
+    public OrgNode load(final String... path) throws IOException, ParseException {
+        final int index = find(path);
+        return index == NONE ? null : load(index);
+    }
+
+    private OrgParser fileParser() {
+        if (fileTodoKeys.isEmpty() || !(parser instanceof TodoKeywordParser)) {
+            return parser;
+        }
+        return ((TodoKeywordParser) parser).withTodoKeywords(
+                fileTodoKeys.toArray(new String[fileTodoKeys.size()]));
+    }
+
+    private long subtreeEnd(final int index) {
+        if (lastDescendant == null) {
+            // Entries below an entry come right after it
+            final int[] last = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                if (last[i] == 0) {
+                    last[i] = i;
+                }
+                if (parent[i] != NONE && last[parent[i]] == 0) {
+                    last[parent[i]] = last[i];
+                }
+            }
+            lastDescendant = last;
+        }
+        final int last = lastDescendant[index];
+        return offset[last] + length[last];
+    }
+
+    private int add(final OrgNode node, final int parentIndex) {
+        ensureCapacity(size + 1);
+        final int index = size++;
+        offset[index] = node.getSourceStart();
+        length[index] = (int) (node.getSourceEnd() - node.getSourceStart());
+        level[index] = node.getLevel();
+        parent[index] = parentIndex;
+        todo[index] = node.getTodo() == null ? NONE : id(node.getTodo(), todoIds, todoNames);
+        final List<String> nodeTags = node.getTags();
+        final int[] ids = new int[nodeTags.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = id(nodeTags.get(i), tagIds, tagNames);
+        }
+        tags[index] = ids;
+        title[index] = node.getTitle();
+        return index;
+    }
+
+    private static int id(final String name, final HashMap<String, Integer> ids,
+                          final List<String> names) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity <= offset.length) {
+            return;
+        }
+        final int newCapacity = Math.max(capacity, offset.length * 2);
+        offset = Arrays.copyOf(offset, newCapacity);
+        length = Arrays.copyOf(length, newCapacity);
+        level = Arrays.copyOf(level, newCapacity);
+        parent = Arrays.copyOf(parent, newCapacity);
+        todo = Arrays.copyOf(todo, newCapacity);
+        tags = Arrays.copyOf(tags, newCapacity);
+        title = Arrays.copyOf(title, newCapacity);
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Entry " + index + " of " + size);
+        }
+    }
+
+    private static void writeStrings(final DataOutputStream out, final List<String> strings)
+            throws IOException {
+        out.writeInt(strings.size());
+        for (final String s : strings) {
+            writeString(out, s);
+        }
+    }
+
+    private static void readStrings(final DataInputStream in, final List<String> into,
+                                    final long limit) throws IOException {
+        final int count = readCount(in, limit, 4);
+        for (int i = 0; i < count; i++) {
+            into.add(readString(in, limit));
+        }
+    }
+
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        // writeUTF can't take more than 64 kB
+        final byte[] bytes = s.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in, final long limit) throws IOException {
+        final byte[] bytes = new byte[readCount(in, limit, 1)];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Read the number of items that follow, which can't need more than limit
+     * bytes if the index is intact.
+     *
+     * @param itemBytes least number of bytes an item takes
+     */
+    private static int readCount(final DataInputStream in, final long limit, final int itemBytes)
+            throws IOException {
+        final int count = in.readInt();
+        if (count < 0 || (long) count * itemBytes > limit) {
+            throw new IOException("Corrupt index, " + count + " items can't fit in it");
+        }
+        return count;
+    }
+}
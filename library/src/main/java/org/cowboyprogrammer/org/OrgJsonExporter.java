@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.ParseOptions;
+import org.cowboyprogrammer.org.util.DateAppender;
+import org.cowboyprogrammer.org.util.StringUtils;
+import org.joda.time.LocalTime;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * Writes org entries as newline delimited JSON, one object per line:
+ * <p/>
+ * {"file":"notes.org","path":["Parent"],"level":2,"todo":"TODO","title":"Entry",
+ * "tags":["a"],"inheritedTags":["b"],"timestamps":[{"type":"DEADLINE",
+ * "date":"2017-03-10T12:00","active":true}],"ranges":[],"properties":{},"body":"..."}
+ * <p/>
+ * The path holds the titles of the ancestors, and inheritedTags the tags of
+ * the ancestors which the entry doesn't have itself. Dates are ISO 8601
+ * local times, without a time part if the timestamp has none. Optional
+ * timestamp fields are "end", "repeat" and "warning".
+ * <p/>
+ * Entries are written as the parser finishes them, so a file is exported
+ * without ever holding its tree. The file itself comes first, with level 0
+ * and the text before the first header as its body.
+ */
+public class OrgJsonExporter {
+
+    private final Writer out;
+    private final StringBuilder sb = new StringBuilder();
+    private char[] chars = new char[1024];
+
+    // By depth, for the last entry written at each depth
+    private final List<String> paths = new ArrayList<String>();
+    private final List<List<String>> allTags = new ArrayList<List<String>>();
+    private String file = null;
+
+    /**
+     * @param out to write to, wrap it in a BufferedWriter for speed
+     */
+    public OrgJsonExporter(final Writer out) {
+        if (out == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        this.out = out;
+    }
+
+    /**
+     * Export a file as it is parsed.
+     *
+     * @return the number of entries written, the file itself included
+     */
+    public static long export(final OrgParser parser, final File file, final ParseOptions options,
+                              final Writer out) throws IOException, ParseException {
+        final FileInputStream in = new FileInputStream(file);
+        final OrgReader reader;
+        try {
+            reader = new OrgReader(parser, file.getName(), in, options);
+        } catch (RuntimeException e) {
+            // The reader never got to own the stream
+            in.close();
+            throw e;
+        }
+        try {
+            return new OrgJsonExporter(out).write(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Write every node the reader returns.
+     *
+     * @return the number of entries written
+     */
+    public long write(final OrgReader reader) throws IOException, ParseException {
+        long count = 0;
+        OrgNode node;
+        while ((node = reader.next()) != null) {
+            write(node, reader.getDepth());
+            count++;
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Write a tree which is already parsed, in file order.
+     *
+     * @return the number of entries written
+     */
+    public long write(final OrgFile root) throws IOException {
+        long count = 0;
+        final Stack<OrgNode> nodes = new Stack<OrgNode>();
+        final Stack<Integer> depths = new Stack<Integer>();
+        nodes.push(root);
+        depths.push(0);
+        while (!nodes.isEmpty()) {
+            final OrgNode node = nodes.pop();
+            final int depth = depths.pop();
+            write(node, depth);
+            count++;
+            final List<OrgNode> children = node.getSubNodes();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                nodes.push(children.get(i));
+                depths.push(depth + 1);
+            }
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Write one entry. Entries must come in file order, with depth 0 for the
+     * file, so the path and inherited tags can be taken from the last
+     * entry written at the depth above.
+     */
+    public void write(final OrgNode node, final int depth) throws IOException {
+        if (depth < 0 || depth > paths.size()) {
+            throw new IllegalArgumentException("Depth " + depth + " does not follow the last entry");
+        }
+        final String parentPath = depth > 0 ? paths.get(depth - 1) : "";
+        final List<String> inherited = depth > 0 ? allTags.get(depth - 1)
+                : Collections.<String>emptyList();
+
+        sb.setLength(0);
+        if (node instanceof OrgFile) {
+            sb.append("{\"file\":");
+            StringUtils.appendJson(sb, ((OrgFile) node).getFilename());
+            file = sb.substring(1);
+            sb.append(',');
+        } else if (file != null) {
+            sb.append('{').append(file).append(',');
+        } else {
+            sb.append('{');
+        }
+        sb.append("\"path\":[").append(parentPath);
+        sb.append("],\"level\":").append(node.getLevel());
+        sb.append(",\"todo\":");
+        StringUtils.appendJson(sb, node.getTodo());
+        sb.append(",\"title\":");
+        final int titleStart = sb.length();
+        StringUtils.appendJson(sb, node.getTitle());
+        final String title = depth > 0 ? sb.substring(titleStart) : null;
+
+        sb.append(",\"tags\":");
+        appendArray(node.getTags(), null);
+        sb.append(",\"inheritedTags\":");
+        appendArray(inherited, node.getTags());
+
+        sb.append(",\"timestamps\":[");
+        for (int i = 0; i < node.getTimestamps().size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendTimestamp(node.getTimestamps().get(i));
+        }
+        sb.append("],\"ranges\":[");
+        for (int i = 0; i < node.getTimestampRanges().size(); i++) {
+            final OrgTimestampRange range = node.getTimestampRanges().get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"start\":\"");
+            DateAppender.appendIsoDate(sb, range.getStartdate(), range.hasTime());
+            sb.append("\",\"end\":\"");
+            DateAppender.appendIsoDate(sb, range.getEnddate(), range.hasTime());
+            sb.append("\"}");
+        }
+        sb.append("],\"properties\":{");
+        final String[] properties = node.getPropertyArray();
+        for (int i = 0; properties != null && i < properties.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            StringUtils.appendJson(sb, properties[i]);
+            sb.append(':');
+            StringUtils.appendJson(sb, properties[i + 1]);
+        }
+        sb.append("},\"body\":");
+        StringUtils.appendJson(sb, node.getBody());
+        sb.append("}\n");
+        flush();
+
+        remember(node, depth, parentPath, title, inherited);
+    }
+
+    private void remember(final OrgNode node, final int depth, final String parentPath,
+                          final String title, final List<String> inherited) {
+        final String path;
+        if (title == null) {
+            path = "";
+        } else if (parentPath.isEmpty()) {
+            path = title;
+        } else {
+            path = parentPath + ',' + title;
+        }
+        List<String> tags = inherited;
+        if (!node.getTags().isEmpty()) {
+            tags = new ArrayList<String>(inherited);
+            for (final String tag : node.getTags()) {
+                if (!tags.contains(tag)) {
+                    tags.add(tag);
+                }
+            }
+        }
+        // Deeper entries belonged to an earlier sibling
+        while (paths.size() > depth) {
+            paths.remove(paths.size() - 1);
+            allTags.remove(allTags.size() - 1);
+        }
+        paths.add(path);
+        allTags.add(tags);
+    }
+
+    /**
+     * @param except tags to leave out, or null
+     */
+    private void appendArray(final List<String> values, final List<String> except) {
+        sb.append('[');
+        boolean first = true;
+        for (final String value : values) {
+            if (except != null && except.contains(value)) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            StringUtils.appendJson(sb, value);
+        }
+        sb.append(']');
+    }
+
+    private void appendTimestamp(final OrgTimestamp timestamp) throws IOException {
+        sb.append("{\"type\":\"").append(timestamp.getType().name()).append("\",\"date\":\"");
+        DateAppender.appendIsoDate(sb, timestamp.getDate(), timestamp.hasTime());
+        sb.append('"');
+        final LocalTime end = timestamp.getEndTime();
+        if (end != null) {
+            sb.append(",\"end\":\"");
+            DateAppender.appendIsoDate(sb, timestamp.getDate().withTime(end.getHourOfDay(),
+                    end.getMinuteOfHour(), 0, 0), true);
+            sb.append('"');
+        }
+        sb.append(",\"active\":").append(!timestamp.isInactive());
+        if (timestamp.getRepeat() != null) {
+            sb.append(",\"repeat\":");
+            StringUtils.appendJson(sb, timestamp.getRepeat());
+        }
+        if (timestamp.getWarning() != null) {
+            sb.append(",\"warning\":");
+            StringUtils.appendJson(sb, timestamp.getWarning());
+        }
+        sb.append('}');
+    }
+
+    private void flush() throws IOException {
+        final int length = sb.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        sb.getChars(0, length, chars, 0);
+        out.write(chars, 0, length);
+    }
+}
@@ -17,11 +17,25 @@
 
 package org.cowboyprogrammer.org;
 
+import org.cowboyprogrammer.org.parser.LenientParser;
+import org.cowboyprogrammer.org.parser.LineKind;
 import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.util.LineReader;
+import org.cowboyprogrammer.org.util.StringUtils;
 
+import static org.cowboyprogrammer.org.util.StringUtils.isBlank;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
 import java.text.ParseException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 public class OrgNode {
 
@@ -46,13 +60,99 @@ public class OrgNode {
     private String body = "";
     // Comments before body
     private String comments = "";
+    // Where title, body and comments are if they were moved off the heap,
+    // then the strings are null
+    private OrgArena arena = null;
+    private long titleRef = -1;
+    private long bodyRef = -1;
+    private long commentsRef = -1;
+    // Property drawer as key, value, key, value, or null if there is none
+    private String[] properties = null;
+    // Lines of the drawer as read, null once it has to be rendered from properties
+    private String drawerText = null;
+    // Number of timestamp lines before the drawer, -1 to put it after all of them
+    private int drawerAt = -1;
+    // True while the lines of the property drawer are being added
+    private boolean readingProperties = false;
+    // Hashes of the entry alone and of its whole sub tree, 0 until worked out.
+    // Readers sharing a tree may work them out at the same time, they all
+    // get the same value.
+    private volatile long contentHash = 0;
+    private volatile long treeHash = 0;
+    // File this entry was read from, if any, and where in it
+    private OrgSource source = null;
+    private long sourceStart = -1;
+    private long sourceEnd = -1;
+    private long sourceNext = -1;
+    // True if the entry no longer matches its source span
+    private boolean dirty = true;
+    // Where the body starts in the source, if it was skipped and not loaded yet
+    private long bodyStart = -1;
 
     public OrgNode(OrgParser parser) {
         this.parser = parser;
         timestamps = new ArrayList<OrgTimestamp>();
         timestampRanges = new ArrayList<OrgTimestampRange>();
-        subNodes = new ArrayList<OrgNode>();
-        tags = new ArrayList<String>();
+        subNodes = new WatchedList<OrgNode>() {
+            @Override
+            void modified() {
+                invalidateTreeHash();
+            }
+        };
+        tags = new WatchedList<String>() {
+            @Override
+            void modified() {
+                changed();
+            }
+        };
+    }
+
+    /**
+     * A list which tells its entry about every change, however it is made.
+     */
+    private abstract static class WatchedList<E> extends AbstractList<E> {
+        private final ArrayList<E> items = new ArrayList<E>();
+
+        abstract void modified();
+
+        @Override
+        public E get(final int index) {
+            return items.get(index);
+        }
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+
+        @Override
+        public E set(final int index, final E element) {
+            final E previous = items.set(index, element);
+            modified();
+            return previous;
+        }
+
+        @Override
+        public void add(final int index, final E element) {
+            items.add(index, element);
+            modCount++;
+            modified();
+        }
+
+        @Override
+        public E remove(final int index) {
+            final E removed = items.remove(index);
+            modCount++;
+            modified();
+            return removed;
+        }
+
+        @Override
+        public void clear() {
+            items.clear();
+            modCount++;
+            modified();
+        }
     }
 
     /**
@@ -64,6 +164,7 @@ public class OrgNode {
         for (final String tag : tags) {
             this.tags.add(tag);
         }
+        changed();
     }
 
     /**
@@ -72,31 +173,146 @@ public class OrgNode {
      * have an ending newline character!
      */
     public void addBodyLine(final String line) throws ParseException {
+        addLine(parser, line);
+    }
+
+    /**
+     * Same as addBodyLine, but tells what the line was parsed as.
+     *
+     * @param lineParser parser to check the line with, like a session of
+     *                   this entry's parser
+     */
+    LineKind addLine(final OrgParser lineParser, final String line) throws ParseException {
+        return addLine(lineParser, line, false);
+    }
+
+    /**
+     * @param lenient if true, timestamps with values out of range and broken
+     *                property drawers are kept as body text, and INVALID is
+     *                returned instead of throwing
+     */
+    LineKind addLine(final OrgParser lineParser, final String line, final boolean lenient)
+            throws ParseException {
         if (line.endsWith("\n")) {
             throw new ParseException("Line should not end with newline!" +
                     " See BufferedReader's readline...", 0);
         }
+        if (bodyRef >= 0 || commentsRef >= 0) {
+            body = getBody();
+            comments = getComments();
+            bodyRef = -1;
+            commentsRef = -1;
+        }
         // If empty, then we can add timestamps and comments
-        if (body.isEmpty() || body.matches("\\A\\s*\\z")) {
+        if (isBlank(body)) {
+            if (readingProperties) {
+                if (isDrawerLine(line, ":END:")) {
+                    readingProperties = false;
+                    drawerText += line + "\n";
+                    changed();
+                    return LineKind.PROPERTY;
+                } else if (addPropertyLine(line)) {
+                    drawerText += line + "\n";
+                    return LineKind.PROPERTY;
+                }
+                // Not a property drawer after all, keep it all as text
+                dropPropertyDrawer();
+                body += line + "\n";
+                return lenient ? LineKind.INVALID : LineKind.BODY;
+            } else if (properties == null && isDrawerLine(line, ":PROPERTIES:")) {
+                body = "";
+                properties = PropertyDrawer.NO_PROPERTIES;
+                drawerText = line + "\n";
+                drawerAt = timestamps.size() + timestampRanges.size();
+                readingProperties = true;
+                changed();
+                return LineKind.PROPERTY;
+            }
             // Check if comment
-            if (parser.isCommentLine(line)) {
+            if (lineParser.isCommentLine(line)) {
                 setComments(getComments() + line + "\n");
                 setBody("");
-                return;
-            } else if (parser.isTimestampLine(line)) {
+                return LineKind.COMMENT;
+            } else if (lineParser.isTimestampLine(line)) {
+                final OrgTimestamp timestamp = lenient ? getValidTimestamp(lineParser, line)
+                        : lineParser.getTimestamp(line);
+                if (timestamp == null) {
+                    return addInvalidLine(line);
+                }
                 // Don't keep spaces before timestamps
                 body = "";
-                addTimestamp(parser.getTimestamp(line));
-                return;
-            } else if (parser.isTimestampRangeLine(line)) {
+                addTimestamp(timestamp);
+                return LineKind.TIMESTAMP;
+            } else if (lineParser.isTimestampRangeLine(line)) {
+                final OrgTimestampRange range = lenient ? getValidTimestampRange(lineParser, line)
+                        : lineParser.getTimestampRange(line);
+                if (range == null) {
+                    return addInvalidLine(line);
+                }
                 // Don't keep spaces before timestamps
                 body = "";
-                addTimestampRange(parser.getTimestampRange(line));
-                return;
+                addTimestampRange(range);
+                return LineKind.TIMESTAMP_RANGE;
             }
         }
         // Nothing happened above, just add to body
         body += line + "\n";
+        changed();
+        return LineKind.BODY;
+    }
+
+    /**
+     * No more lines will be added. A property drawer which never got its
+     * :END: is kept as body text.
+     */
+    void finishLines() {
+        if (readingProperties) {
+            dropPropertyDrawer();
+        }
+    }
+
+    /**
+     * Turn the property drawer being read back into the lines it came from.
+     */
+    private void dropPropertyDrawer() {
+        readingProperties = false;
+        properties = null;
+        body = drawerText;
+        drawerText = null;
+        drawerAt = -1;
+        changed();
+    }
+
+    private LineKind addInvalidLine(final String line) {
+        body += line + "\n";
+        changed();
+        return LineKind.INVALID;
+    }
+
+    /**
+     * Only parsers which can't check the values first need the catch.
+     */
+    private static OrgTimestamp getValidTimestamp(final OrgParser lineParser, final String line) {
+        if (lineParser instanceof LenientParser) {
+            return ((LenientParser) lineParser).getValidTimestamp(line);
+        }
+        try {
+            return lineParser.getTimestamp(line);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static OrgTimestampRange getValidTimestampRange(final OrgParser lineParser,
+                                                            final String line) {
+        if (lineParser instanceof LenientParser) {
+            return ((LenientParser) lineParser).getValidTimestampRange(line);
+        }
+        try {
+            return lineParser.getTimestampRange(line);
+        } catch (RuntimeException e) {
+            return null;
+        }
     }
 
     /**
@@ -118,9 +334,58 @@ public class OrgNode {
      */
     public String getOrgHeader() {
         final StringBuilder sb = new StringBuilder();
-        getHeaderString(sb);
-        // Remove ending newline
-        return sb.toString().trim();
+        appendOrgHeader(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Append the header of this entry for org-mode, the same as
+     * getOrgHeader() but without any intermediate strings. No newline
+     * and no trailing whitespace.
+     */
+    public void appendOrgHeader(final StringBuilder sb) {
+        // No header without stars
+        if (getLevel() < 1) {
+            return;
+        }
+
+        for (int i = 0; i < getLevel(); i++) {
+            sb.append('*');
+        }
+
+        if (!this.tags.isEmpty()) {
+            // Ends with a colon, nothing to trim
+            sb.append(' ');
+            if (this.todo != null) {
+                sb.append(this.todo).append(' ');
+            }
+            appendText(sb, title, titleRef);
+            appendTags(sb);
+            return;
+        }
+
+        final CharSequence title = getTitleText();
+        final int titleEnd = trimmedLength(title);
+        if (titleEnd > 0) {
+            sb.append(' ');
+            if (this.todo != null) {
+                sb.append(this.todo).append(' ');
+            }
+            sb.append(title, 0, titleEnd);
+        } else if (this.todo != null && trimmedLength(this.todo) > 0) {
+            sb.append(' ').append(this.todo, 0, trimmedLength(this.todo));
+        }
+    }
+
+    /**
+     * Length of the string without trailing whitespace, as String.trim().
+     */
+    private static int trimmedLength(final CharSequence s) {
+        int end = s.length();
+        while (end > 0 && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
     }
 
     /**
@@ -128,23 +393,86 @@ public class OrgNode {
      */
     public String getOrgBody() {
         final StringBuilder sb = new StringBuilder();
+        appendOrgBody(sb);
+        return sb.toString();
+    }
 
-        sb.append(this.comments);
+    /**
+     * Append the body of this entry for org-mode.
+     */
+    public void appendOrgBody(final StringBuilder sb) {
+        appendOrgBody(sb, Locale.getDefault());
+    }
+
+    void appendOrgBody(final StringBuilder sb, final Locale locale) {
+        appendText(sb, comments, commentsRef);
 //        if (this.comments.length() > 0) {
 //            sb.append("\n");
 //        }
 
-        for (OrgTimestamp t : timestamps) {
-            sb.append(t.toString()).append("\n");
+        // The drawer stays where it was read, among the timestamp lines
+        final int at = drawerAt < 0 ? Integer.MAX_VALUE : drawerAt;
+        int lines = 0;
+        for (int i = 0; i < timestamps.size(); i++) {
+            if (lines++ == at) {
+                appendDrawer(sb);
+            }
+            timestamps.get(i).appendTo(sb, locale);
+            sb.append('\n');
         }
 
-        for (OrgTimestampRange t : timestampRanges) {
-            sb.append(t.toString()).append("\n");
+        for (int i = 0; i < timestampRanges.size(); i++) {
+            if (lines++ == at) {
+                appendDrawer(sb);
+            }
+            timestampRanges.get(i).appendTo(sb, locale);
+            sb.append('\n');
         }
 
-        sb.append(this.body);
+        if (at >= lines) {
+            appendDrawer(sb);
+        }
 
-        return sb.toString();
+        appendText(sb, body, bodyRef);
+    }
+
+    private void appendDrawer(final StringBuilder sb) {
+        if (properties == null) {
+            return;
+        } else if (drawerText != null) {
+            sb.append(drawerText);
+        } else {
+            PropertyDrawer.render(sb, properties);
+        }
+    }
+
+    private void appendText(final StringBuilder sb, final String text, final long ref) {
+        if (ref < 0) {
+            sb.append(text);
+        } else {
+            arena.appendTo(sb, ref);
+        }
+    }
+
+    private static boolean isDrawerLine(final String line, final String marker) {
+        return line.trim().equalsIgnoreCase(marker);
+    }
+
+    /**
+     * Add a line like ":KEY: value" to the properties.
+     *
+     * @return false if the line is not a property
+     */
+    private boolean addPropertyLine(final String line) {
+        final String[] property = PropertyDrawer.parseLine(line);
+        if (property == null) {
+            return false;
+        }
+        properties = Arrays.copyOf(properties, properties.length + 2);
+        properties[properties.length - 2] = property[0];
+        properties[properties.length - 1] = property[1];
+        changed();
+        return true;
     }
 
     /**
@@ -164,14 +492,18 @@ public class OrgNode {
         if (this.todo != null) {
             sb.append(this.todo).append(" ");
         }
-        sb.append(this.title);
+        appendText(sb, title, titleRef);
+        appendTags(sb);
+        sb.append("\n");
+    }
+
+    private void appendTags(final StringBuilder sb) {
         if (!this.tags.isEmpty()) {
             sb.append(" :");
-            for (final String tag : this.tags) {
-                sb.append(tag).append(":");
+            for (int i = 0; i < this.tags.size(); i++) {
+                sb.append(this.tags.get(i)).append(':');
             }
         }
-        sb.append("\n");
     }
 
     public int getLevel() {
@@ -184,6 +516,7 @@ public class OrgNode {
                     "Level not allowed to be negative. Only a file can be level 0.");
         }
         this.level = level;
+        changed();
     }
 
     /**
@@ -191,7 +524,7 @@ public class OrgNode {
      */
     protected void toString(final StringBuilder sb) {
         getHeaderString(sb);
-        sb.append(getOrgBody());
+        appendOrgBody(sb);
     }
 
     /**
@@ -199,8 +532,13 @@ public class OrgNode {
      * this.
      */
     public String treeToString() {
+        final OrgTracer tracer = OrgFile.getTracer();
+        final Object token = tracer == null ? null : tracer.serializeStarted("treeToString", this);
         final StringBuilder sb = new StringBuilder();
         treeToString(sb);
+        if (token != null) {
+            tracer.serializeFinished(token, sb.length());
+        }
         return sb.toString();
     }
 
@@ -248,6 +586,7 @@ public class OrgNode {
         for (final OrgTimestamp ts : timestamps) {
             this.timestamps.add(ts);
         }
+        changed();
     }
 
     public List<OrgTimestampRange> getTimestampRanges() {
@@ -258,6 +597,7 @@ public class OrgNode {
         for (final OrgTimestampRange tr : timestamps) {
             this.timestampRanges.add(tr);
         }
+        changed();
     }
 
     public String getTodo() {
@@ -266,10 +606,18 @@ public class OrgNode {
 
     public void setTodo(final String todo) {
         this.todo = todo;
+        changed();
     }
 
     public String getTitle() {
-        return title;
+        return titleRef < 0 ? title : arena.getString(titleRef);
+    }
+
+    /**
+     * The title without making a String of it, if it is in an arena.
+     */
+    public CharSequence getTitleText() {
+        return titleRef < 0 ? title : arena.get(titleRef);
     }
 
     public void setTitle(final String title) {
@@ -280,10 +628,19 @@ public class OrgNode {
                     "newline");
         }
         this.title = title;
+        titleRef = -1;
+        changed();
     }
 
     public String getBody() {
-        return body;
+        return bodyRef < 0 ? body : arena.getString(bodyRef);
+    }
+
+    /**
+     * The body without making a String of it, if it is in an arena.
+     */
+    public CharSequence getBodyText() {
+        return bodyRef < 0 ? body : arena.get(bodyRef);
     }
 
     /**
@@ -295,6 +652,121 @@ public class OrgNode {
             throw new NullPointerException("Not allowed to be null!");
         }
         this.body = body;
+        bodyRef = -1;
+        changed();
+    }
+
+    /**
+     * A property from the property drawer. Keys are case insensitive.
+     *
+     * @return the value, or null if there is no such property
+     */
+    public String getProperty(final String key) {
+        if (properties != null) {
+            for (int i = 0; i < properties.length; i += 2) {
+                if (properties[i].equalsIgnoreCase(key)) {
+                    return properties[i + 1];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Set a property in the property drawer, adding the drawer if needed.
+     * The drawer is written as it was read until a property actually
+     * changes, then it is written with one property per line.
+     *
+     * @param value the new value, or null to remove the property
+     */
+    public void setProperty(final String key, final String value) {
+        if (key == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        if (key.isEmpty() || key.indexOf(':') >= 0 || key.indexOf(' ') >= 0
+                || key.indexOf('\t') >= 0 || key.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Not a valid property key: " + key);
+        }
+        if (value != null && (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0)) {
+            throw new IllegalArgumentException("Property values can't span lines");
+        }
+        final String[] current = properties == null ? PropertyDrawer.NO_PROPERTIES : properties;
+        int at = -1;
+        for (int i = 0; i < current.length && at < 0; i += 2) {
+            if (current[i].equalsIgnoreCase(key)) {
+                at = i;
+            }
+        }
+        if (value == null) {
+            if (at >= 0) {
+                final String[] fewer = new String[current.length - 2];
+                System.arraycopy(current, 0, fewer, 0, at);
+                System.arraycopy(current, at + 2, fewer, at, current.length - at - 2);
+                properties = fewer;
+                drawerText = null;
+                changed();
+            }
+            return;
+        }
+        if (at >= 0) {
+            if (current[at + 1].equals(value.trim())) {
+                return;
+            }
+            properties = current.clone();
+            properties[at + 1] = value.trim();
+        } else {
+            properties = Arrays.copyOf(current, current.length + 2);
+            properties[current.length] = key;
+            properties[current.length + 1] = value.trim();
+        }
+        drawerText = null;
+        changed();
+    }
+
+    /**
+     * Keys of the properties in the property drawer, in order.
+     */
+    public List<String> getPropertyKeys() {
+        if (properties == null) {
+            return Collections.emptyList();
+        }
+        final List<String> keys = new ArrayList<String>(properties.length / 2);
+        for (int i = 0; i < properties.length; i += 2) {
+            keys.add(properties[i]);
+        }
+        return keys;
+    }
+
+    /**
+     * The properties as key, value, key, value, or null if there is no
+     * drawer. The array is replaced rather than changed, so it can be shared.
+     */
+    String[] getPropertyArray() {
+        return properties;
+    }
+
+    /**
+     * The property drawer, or null if there is none. Its array is replaced
+     * rather than changed, so it can be shared.
+     */
+    PropertyDrawer getPropertyDrawer() {
+        if (properties == null) {
+            return null;
+        }
+        String text = drawerText;
+        if (text == null) {
+            final StringBuilder sb = new StringBuilder();
+            PropertyDrawer.render(sb, properties);
+            text = sb.toString();
+        }
+        return new PropertyDrawer(properties, text, drawerAt);
+    }
+
+    void setPropertyDrawer(final PropertyDrawer drawer) {
+        properties = drawer == null ? null : drawer.properties;
+        drawerText = drawer == null ? null : drawer.text;
+        drawerAt = drawer == null ? -1 : drawer.at;
+        changed();
     }
 
     public OrgNode getParent() {
@@ -308,10 +780,21 @@ public class OrgNode {
         }
 
         this.parent = parent;
+        // All the way up, this entry has no tree hash to stop at
+        for (OrgNode node = parent; node != null; node = node.parent) {
+            node.treeHash = 0;
+        }
     }
 
     public String getComments() {
-        return comments;
+        return commentsRef < 0 ? comments : arena.getString(commentsRef);
+    }
+
+    /**
+     * The comments without making a String of them, if they are in an arena.
+     */
+    public CharSequence getCommentsText() {
+        return commentsRef < 0 ? comments : arena.get(commentsRef);
     }
 
     /**
@@ -322,5 +805,210 @@ public class OrgNode {
             throw new NullPointerException("Not allowed to be null!");
         }
         this.comments = comments;
+        commentsRef = -1;
+        changed();
+    }
+
+    /**
+     * True if this entry has been modified since it was read from a file, or
+     * was never read from one. Modifications made through the lists returned
+     * by getTimestamps() and getTimestampRanges(), or to the timestamps
+     * themselves, are not noticed. Call markDirty() after such changes.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Makes sure this entry is rendered again the next time it is saved,
+     * instead of being copied from the file it was read from.
+     */
+    public void markDirty() {
+        changed();
+    }
+
+    /**
+     * Hash of this entry alone: header, comments, timestamps, properties and
+     * body. Equal entries have equal hashes on any machine, whatever the
+     * default locale.
+     * <p/>
+     * Hashes are kept until the entry is changed. Changes which are not
+     * noticed, see isDirty(), need a call to markDirty() to update them.
+     */
+    public long getContentHash() {
+        if (contentHash == 0) {
+            final StringBuilder sb = new StringBuilder();
+            appendContent(sb);
+            final long hash = StringUtils.hash(sb);
+            contentHash = hash == 0 ? 1 : hash;
+        }
+        return contentHash;
+    }
+
+    /**
+     * Hash of this entry and everything below it, so two sub trees with the
+     * same hash are the same. Changes to the list of sub nodes are noticed.
+     */
+    public long getTreeHash() {
+        if (treeHash == 0) {
+            long hash = getContentHash();
+            for (int i = 0; i < subNodes.size(); i++) {
+                hash = StringUtils.mix(hash * 31 + subNodes.get(i).getTreeHash());
+            }
+            treeHash = hash == 0 ? 1 : hash;
+        }
+        return treeHash;
+    }
+
+    /**
+     * The entry alone in org format, the same everywhere, which is what
+     * getContentHash hashes.
+     */
+    void appendContent(final StringBuilder sb) {
+        getHeaderString(sb);
+        appendOrgBody(sb, Locale.ENGLISH);
+    }
+
+    private void changed() {
+        dirty = true;
+        contentHash = 0;
+        invalidateTreeHash();
+    }
+
+    /**
+     * Something in the sub tree changed.
+     */
+    void invalidateTreeHash() {
+        // Anything above a node without a hash has none either
+        OrgNode node = this;
+        while (node != null && node.treeHash != 0) {
+            node.treeHash = 0;
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Move the title, body and comments into the arena, unless they are in
+     * another one already. Does not count as a modification.
+     */
+    void moveToArena(final OrgArena target) {
+        if (arena != null && arena != target) {
+            return;
+        }
+        arena = target;
+        if (titleRef < 0 && !title.isEmpty()) {
+            titleRef = target.add(title);
+            title = null;
+        }
+        if (bodyRef < 0 && !body.isEmpty()) {
+            bodyRef = target.add(body);
+            body = null;
+        }
+        if (commentsRef < 0 && !comments.isEmpty()) {
+            commentsRef = target.add(comments);
+            comments = null;
+        }
+    }
+
+    /**
+     * Remember where in the source this entry was read from and mark it as
+     * unmodified.
+     *
+     * @param start offset of the header line
+     * @param end   offset just after the last line belonging to this entry
+     * @param next  offset of the next entry, after any separator line
+     */
+    void setSourceSpan(final OrgSource source, final long start, final long end,
+                       final long next) {
+        if (bodyStart >= 0 && sourceStart >= 0) {
+            // Moved along with the rest of the entry
+            bodyStart += start - sourceStart;
+        }
+        this.source = source;
+        this.sourceStart = start;
+        this.sourceEnd = end;
+        this.sourceNext = next;
+        this.dirty = false;
+    }
+
+    OrgSource getSource() {
+        return source;
+    }
+
+    long getSourceStart() {
+        return sourceStart;
+    }
+
+    long getSourceEnd() {
+        return sourceEnd;
+    }
+
+    long getSourceNext() {
+        return sourceNext;
+    }
+
+    /**
+     * False if this entry was read as part of an outline and its body,
+     * comments and timestamps have not been loaded yet.
+     */
+    public boolean isBodyLoaded() {
+        return bodyStart < 0;
+    }
+
+    /**
+     * Read the body of an entry which was read as part of an outline from
+     * the file. Does nothing if the body is already loaded. Load it before
+     * changing the body, comments or timestamps. Loading it does not count
+     * as a modification.
+     *
+     * @throws IOException if the file has changed since it was read
+     */
+    public void loadBody() throws IOException, ParseException {
+        if (bodyStart < 0) {
+            return;
+        }
+        if (source == null || !source.isUnchanged()) {
+            throw new IOException("File has changed since it was read, can't load body");
+        }
+        final byte[] bytes = new byte[(int) (sourceEnd - bodyStart)];
+        final RandomAccessFile file = new RandomAccessFile(source.file, "r");
+        try {
+            file.seek(bodyStart);
+            file.readFully(bytes);
+        } finally {
+            file.close();
+        }
+
+        bodyStart = -1;
+        readBody(bytes, source.charset);
+    }
+
+    /**
+     * Parse the lines of a body as they are in a file. Does not count as a
+     * modification.
+     */
+    void readBody(final byte[] bytes, final Charset charset) throws IOException, ParseException {
+        final boolean wasDirty = dirty;
+        final LineReader lines = OrgFile.openLines(new ByteArrayInputStream(bytes), charset);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            addLine(parser, line);
+        }
+        finishLines();
+        dirty = wasDirty;
+    }
+
+    /**
+     * The body was skipped when reading and starts at the offset in the source.
+     */
+    void setUnloadedBody(final long start) {
+        bodyStart = start;
+    }
+
+    /**
+     * Offset of the body in the source if it is not loaded, else -1.
+     */
+    long getUnloadedBody() {
+        return bodyStart;
     }
 }
@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.Diagnostic;
+import org.cowboyprogrammer.org.parser.LineKind;
+import org.cowboyprogrammer.org.parser.NodeFilter;
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.ParseListener;
+import org.cowboyprogrammer.org.parser.ParseOptions;
+import org.cowboyprogrammer.org.parser.SessionParser;
+import org.cowboyprogrammer.org.parser.TodoKeywordParser;
+import org.cowboyprogrammer.org.util.LineReader;
+import org.cowboyprogrammer.org.util.OffsetLineReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * Reads an org file one node at a time, so large files can be processed
+ * without holding the whole tree in memory. Nodes are returned in file
+ * order once all their body lines have been read, starting with the
+ * OrgFile itself which holds anything before the first header.
+ * <p/>
+ * Returned nodes know their parent, but are not added to the parent's
+ * sub nodes. Only the ancestors of the current node are kept.
+ */
+public class OrgReader implements Closeable {
+
+    // Checks every line, a session of the file's parser if it has them
+    private OrgParser parser;
+    // Set if #+TODO: lines in the preamble should be followed
+    private final TodoKeywordParser todoParser;
+    private final List<String> fileTodoKeys = new ArrayList<String>();
+    private final LineReader reader;
+    private final OrgSource source;
+    private final ParseListener listener;
+    // If true, nodes are added to their parents' sub nodes
+    private final boolean attach;
+    // If true, body lines are skipped
+    private final boolean outline;
+    // Entries to leave out, with everything below them
+    private final NodeFilter filter;
+    private final int maxLevel;
+    // Where finished nodes keep their text, if not on the heap
+    private final OrgArena arena;
+    // If true, bad lines become diagnostics instead of exceptions
+    private final boolean lenient;
+    private long lineNumber = 0;
+
+    private final OrgFile orgfile;
+    // Ancestors of the current node, and the current node itself on top
+    private final Stack<OrgNode> stack = new Stack<OrgNode>();
+
+    private String sepline = null;
+    // Span of the node currently receiving body lines
+    private long nodeStart = 0;
+    private long nodeEnd = 0;
+    // Where the body of the current node starts
+    private long bodyStart = 0;
+    // False while lines belong to a skipped entry, or after the last node
+    private boolean receiving = true;
+    // Level of the entry being skipped, 0 if none is
+    private int skipLevel = 0;
+    // Only measure anything if someone is listening
+    private final boolean timed;
+    private long lineStart;
+    private boolean finished = false;
+    private int depth = 0;
+
+    /**
+     * @param parser   The OrgParser to use
+     * @param filename The filename without the path part
+     * @param reader   The file contents
+     */
+    public OrgReader(final OrgParser parser, final String filename, final Reader reader) {
+        this(parser, filename, reader, new ParseOptions());
+    }
+
+    /**
+     * @param parser   The OrgParser to use
+     * @param filename The filename without the path part
+     * @param reader   The file contents
+     * @param options  How to parse
+     */
+    public OrgReader(final OrgParser parser, final String filename, final Reader reader,
+                     final ParseOptions options) {
+        this(parser, filename, new OffsetLineReader(reader, null), null,
+                OrgFile.traced(filename, options.getListener()), options, false);
+    }
+
+    /**
+     * @param parser   The OrgParser to use
+     * @param filename The filename without the path part
+     * @param in       The file contents, in the charset of the options
+     * @param options  How to parse
+     */
+    public OrgReader(final OrgParser parser, final String filename, final InputStream in,
+                     final ParseOptions options) {
+        this(parser, filename, OrgFile.openLines(in, options.getCharset()), null,
+                OrgFile.traced(filename, options.getListener()), options, false);
+    }
+
+    /**
+     * If source is not null, the reader must be tracking byte offsets and
+     * each node will remember its span in it. The listener is used instead
+     * of the one in the options.
+     * <p/>
+     * If reader is null, lines must be given with pushLine and pushEnd
+     * instead of calling next.
+     */
+    OrgReader(final OrgParser parser, final String filename, final LineReader reader,
+              final OrgSource source, final ParseListener listener, final ParseOptions options,
+              final boolean attach) {
+        if (null == filename) {
+            throw new NullPointerException("Can't read a null buffer");
+        }
+        this.parser = session(parser);
+        this.todoParser = options.isFileTodoKeywords() && parser instanceof TodoKeywordParser
+                ? (TodoKeywordParser) parser : null;
+        this.reader = reader;
+        this.source = source;
+        this.listener = listener;
+        this.attach = attach;
+        this.outline = options.isOutline();
+        this.filter = options.getFilter();
+        this.maxLevel = options.getMaxLevel();
+        this.arena = options.getArena();
+        this.lenient = options.isLenient();
+        this.timed = listener != null;
+        this.lineStart = timed ? System.nanoTime() : 0;
+        // Root is file
+        orgfile = new OrgFile(parser, filename);
+        stack.push(orgfile);
+    }
+
+    /**
+     * The root of the file. Its body is only complete once it has been
+     * returned by next().
+     */
+    public OrgFile getFile() {
+        return orgfile;
+    }
+
+    /**
+     * Depth in the tree of the node last returned by next(), 0 for the file.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Todo keywords declared by #+TODO: lines read so far, if the options
+     * asked for them to be followed.
+     */
+    List<String> getFileTodoKeywords() {
+        return fileTodoKeys;
+    }
+
+    /**
+     * Read the next complete node. The input is closed when the end is reached.
+     *
+     * @return the next node, or null if there are no more
+     */
+    public OrgNode next() throws IOException, ParseException {
+        if (finished) {
+            return null;
+        }
+
+        String line;
+        try {
+            while ((line = reader.readLine()) != null) {
+                final OrgNode done = pushLine(line, reader.getLineStart(), reader.getLineEnd());
+                if (done != null) {
+                    return done;
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        } catch (ParseException e) {
+            close();
+            throw e;
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+
+        // End of input
+        reader.close();
+        return pushEnd(reader.getLineEnd(), reader.tracksOffsets() ? reader.getLineEnd()
+                : reader.getCharsRead());
+    }
+
+    /**
+     * Parse one line, for when lines are pushed rather than read.
+     *
+     * @param start byte offset of the line
+     * @param end   byte offset after the line's terminator
+     * @return the node the line finished, or null if none was
+     */
+    OrgNode pushLine(final String line, final long start, final long end) throws ParseException {
+        long lineRead = 0;
+        if (timed) {
+            lineRead = System.nanoTime();
+            listener.lineRead(line.length(), lineRead - lineStart);
+        }
+        lineNumber++;
+        final LineKind kind;
+        OrgNode done = null;
+        final boolean header = parser.isHeaderLine(line);
+        // See what we are reading
+        if (skipLevel > 0 && (!header || countStars(line) > skipLevel)) {
+            // Inside an entry which is left out
+            kind = LineKind.SKIPPED;
+        } else if (header) {
+            skipLevel = 0;
+            // Destroy separator line
+            sepline = null;
+            done = finishCurrent(start);
+            kind = readHeader(line, start, end) ? LineKind.HEADER : LineKind.SKIPPED;
+            /*
+            Sep line handles a possible separator line between the
+            body of the previous item and the header of the next item
+            . One separator line is allowed,
+            and will thus get "eaten" during parsing.
+             */
+        } else if (outline) {
+            kind = skipLine(line, start, end);
+        } else if (sepline != null && line.isEmpty()) {
+            // Another empty line, put last one in node
+            kind = LineKind.EMPTY;
+            stack.peek().addLine(parser, sepline);
+            sepline = line;
+            nodeEnd = start;
+        } else if (sepline == null && line.isEmpty()) {
+            // Possibly a separator line. Keep track of it.
+            kind = LineKind.EMPTY;
+            sepline = line;
+        } else {
+            if (todoParser != null && stack.size() == 1) {
+                // Preamble, may declare todo keywords for the file
+                readTodoKeywords(line);
+            }
+            // Body of node - OK to place in file
+            // Put sepline there first if not empty
+            if (sepline != null) {
+                stack.peek().addLine(parser, sepline);
+                sepline = null;
+            }
+            kind = stack.peek().addLine(parser, line, lenient);
+            if (kind == LineKind.INVALID) {
+                reportInvalid(line);
+            }
+            nodeEnd = end;
+        }
+        if (timed) {
+            lineStart = System.nanoTime();
+            listener.lineParsed(kind, lineStart - lineRead);
+        }
+        return done;
+    }
+
+    /**
+     * Create the node for a header line, unless it is left out.
+     *
+     * @return false if the entry and everything below it is skipped
+     */
+    private boolean readHeader(final String line, final long start, final long end)
+            throws ParseException {
+        final int level = countStars(line);
+        if (level > maxLevel) {
+            skipLevel = level;
+            return false;
+        }
+        // Header of node
+        // Create new node
+        final OrgNode node = lenient ? createLeniently(line, level) : parser.createFromHeader(line);
+
+        // Find parent
+        while (node.getLevel() <= stack.peek().getLevel()) {
+            stack.pop();
+        }
+
+        // Assign parent
+        node.setParent(stack.peek());
+        if (filter != null && !filter.accept(node)) {
+            skipLevel = level;
+            return false;
+        }
+        // Assign child
+        if (attach) {
+            stack.peek().getSubNodes().add(node);
+        }
+        // Add to stack
+        stack.push(node);
+        receiving = true;
+        nodeStart = start;
+        nodeEnd = end;
+        bodyStart = end;
+        return true;
+    }
+
+    /**
+     * RegexParser can read any line isHeaderLine accepts, the catch is
+     * for parsers which can't.
+     */
+    private OrgNode createLeniently(final String line, final int level) {
+        try {
+            return parser.createFromHeader(line);
+        } catch (RuntimeException e) {
+            orgfile.addDiagnostic(new Diagnostic(lineNumber, Diagnostic.Kind.INVALID_HEADER,
+                    "Header could not be parsed, kept as title"));
+            final OrgNode node = new OrgNode(orgfile.getParser());
+            node.setLevel(level);
+            node.setTitle(line.substring(level).trim());
+            return node;
+        }
+    }
+
+    /**
+     * A line was kept as body text because it could not be parsed.
+     */
+    private void reportInvalid(final String line) {
+        final Diagnostic diagnostic;
+        if (parser.isTimestampLine(line)) {
+            diagnostic = new Diagnostic(lineNumber, Diagnostic.Kind.INVALID_TIMESTAMP,
+                    "Date, time or count out of range, kept as body text");
+        } else if (parser.isTimestampRangeLine(line)) {
+            diagnostic = new Diagnostic(lineNumber, Diagnostic.Kind.INVALID_TIMESTAMP_RANGE,
+                    "Date or time out of range, kept as body text");
+        } else {
+            diagnostic = new Diagnostic(lineNumber, Diagnostic.Kind.INVALID_PROPERTY_DRAWER,
+                    "Not a property, drawer kept as body text");
+        }
+        orgfile.addDiagnostic(diagnostic);
+    }
+
+    private static int countStars(final String line) {
+        int stars = 0;
+        while (stars < line.length() && line.charAt(stars) == '*') {
+            stars++;
+        }
+        return stars;
+    }
+
+    /**
+     * There are no more lines.
+     *
+     * @param end   byte offset of the end of the input
+     * @param count bytes, or characters if bytes were not counted, to report as read
+     * @return the last node
+     * @throws ConcurrentModificationException if an outline was read and the
+     *         input was not what the source said, its bodies can't be found
+     */
+    OrgNode pushEnd(final long end, final long count) {
+        finished = true;
+        final OrgNode done = finishCurrent(end);
+
+        if (source != null) {
+            if (end == source.length) {
+                orgfile.setSource(source);
+            } else if (outline) {
+                // Bodies only exist as offsets into the source
+                throw new ConcurrentModificationException(
+                        "File changed while reading its outline, bodies can't be loaded");
+            } else {
+                // Input was not what we thought it was, spans can't be trusted
+                orgfile.forgetSourceSpans();
+            }
+        }
+        if (timed) {
+            listener.parseFinished(orgfile, count);
+        }
+        return done;
+    }
+
+    /**
+     * Stop reading and close the input.
+     */
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    private static OrgParser session(final OrgParser parser) {
+        return parser instanceof SessionParser ? ((SessionParser) parser).newSession() : parser;
+    }
+
+    /**
+     * Switch to a parser with the keywords from the line, if it has any.
+     * Later lines add to earlier ones.
+     */
+    private void readTodoKeywords(final String line) {
+        final String[] keys = todoParser.getTodoKeywords(line);
+        if (keys != null) {
+            Collections.addAll(fileTodoKeys, keys);
+            parser = session(todoParser.withTodoKeywords(
+                    fileTodoKeys.toArray(new String[fileTodoKeys.size()])));
+        }
+    }
+
+    /**
+     * Keep track of the span of a body line without parsing it, the same
+     * way as it would have been parsed.
+     */
+    private LineKind skipLine(final String line, final long start, final long end) {
+        if (line.isEmpty()) {
+            if (sepline != null) {
+                // The previous empty line was not a separator after all
+                nodeEnd = start;
+            }
+            sepline = line;
+            return LineKind.EMPTY;
+        }
+        if (todoParser != null && stack.size() == 1) {
+            readTodoKeywords(line);
+        }
+        sepline = null;
+        nodeEnd = end;
+        return LineKind.BODY;
+    }
+
+    /**
+     * No more lines go to the current node, if it was still getting any.
+     *
+     * @param next offset of whatever comes after it
+     */
+    private OrgNode finishCurrent(final long next) {
+        if (!receiving) {
+            // Finished when a skipped entry started
+            return null;
+        }
+        receiving = false;
+        final OrgNode node = stack.peek();
+        node.finishLines();
+        depth = stack.size() - 1;
+        if (source != null) {
+            node.setSourceSpan(source, nodeStart, nodeEnd, next);
+            if (outline) {
+                node.setUnloadedBody(bodyStart);
+            }
+        }
+        if (arena != null) {
+            node.moveToArena(arena);
+        }
+        if (timed) {
+            listener.nodeFinished(node, depth);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+/**
+ * The file an OrgFile was read from, as it looked at the time. Byte spans
+ * of nodes refer to this version of the file.
+ */
+final class OrgSource {
+
+    final File file;
+    final Charset charset;
+    final long length;
+    final long lastModified;
+
+    OrgSource(final File file, final Charset charset, final long length, final long lastModified) {
+        this.file = file;
+        this.charset = charset;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * True if the file on disk still looks like it did when it was read.
+     */
+    boolean isUnchanged() {
+        return file.isFile() && file.length() == length && file.lastModified() == lastModified;
+    }
+}
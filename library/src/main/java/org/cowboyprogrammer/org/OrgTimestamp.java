@@ -17,10 +17,12 @@
 
 package org.cowboyprogrammer.org;
 
+import org.cowboyprogrammer.org.util.DateAppender;
 import org.joda.time.*;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
+import java.io.IOException;
 import java.util.Calendar;
 import java.util.Locale;
 
@@ -255,12 +257,33 @@ public class OrgTimestamp {
      */
     public String toString(Locale locale) {
         final StringBuilder sb = new StringBuilder();
+        appendTo(sb, locale);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the string format of this timestamp. Nothing is allocated
+     * apart from what the builder needs to grow.
+     */
+    public void appendTo(final StringBuilder sb, final Locale locale) {
+        try {
+            appendTo((Appendable) sb, locale);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Appends the string format of this timestamp.
+     */
+    public void appendTo(final Appendable out, final Locale locale) throws IOException {
         switch (type) {
             case DEADLINE:
-                sb.append("DEADLINE: ");
+                out.append("DEADLINE: ");
                 break;
             case SCHEDULED:
-                sb.append("SCHEDULED: ");
+                out.append("SCHEDULED: ");
                 break;
             case PLAIN:
             default:
@@ -269,39 +292,38 @@ public class OrgTimestamp {
 
         // Leading brace
         if (inactive) {
-            sb.append("[");
+            out.append('[');
         } else {
-            sb.append("<");
+            out.append('<');
         }
 
         if (hasTime) {
             // With time
-            sb.append(date.toString(OUTDATETIMEFORMAT, locale));
+            DateAppender.appendDateTime(out, date, locale);
             if (getEndTime() != null) {
-                sb.append(getEndTime().toString(OUTENDTIMEFORMAT, locale));
+                out.append('-');
+                DateAppender.appendTime(out, endTime.getHourOfDay(), endTime.getMinuteOfHour());
             }
         } else {
             // Only date
-            sb.append(date.toString(OUTDATEFORMAT, locale));
+            DateAppender.appendDate(out, date, locale);
         }
 
         // Repeat comes before warning
         if (repeater != null) {
-            sb.append(" ").append(repeater);
+            out.append(' ').append(repeater);
         }
 
         if (warning != null) {
-            sb.append(" ").append(warning);
+            out.append(' ').append(warning);
         }
 
         // Ending brace
         if (inactive) {
-            sb.append("]");
+            out.append(']');
         } else {
-            sb.append(">");
+            out.append('>');
         }
-
-        return sb.toString();
     }
 
     public Type getType() {
@@ -340,6 +362,10 @@ public class OrgTimestamp {
         return repeatPeriod;
     }
 
+    public String getWarning() {
+        return warning;
+    }
+
     public ReadablePeriod getWarningPeriod() {
         return warningPeriod;
     }
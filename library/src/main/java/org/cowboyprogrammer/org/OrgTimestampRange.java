@@ -17,11 +17,13 @@
 
 package org.cowboyprogrammer.org;
 
+import org.cowboyprogrammer.org.util.DateAppender;
 import org.joda.time.LocalDateTime;
 import org.joda.time.LocalTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
+import java.io.IOException;
 import java.util.Locale;
 
 /**
@@ -68,21 +70,41 @@ public class OrgTimestampRange {
     }
 
     public String toString(Locale locale) {
-        final StringBuilder sb = new StringBuilder("<");
+        final StringBuilder sb = new StringBuilder();
+        appendTo(sb, locale);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the string format of this range. Nothing is allocated
+     * apart from what the builder needs to grow.
+     */
+    public void appendTo(final StringBuilder sb, final Locale locale) {
+        try {
+            appendTo((Appendable) sb, locale);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Appends the string format of this range.
+     */
+    public void appendTo(final Appendable out, final Locale locale) throws IOException {
+        out.append('<');
         if (hasTime) {
-            sb.append(startdate.toString(OUTDATETIMEFORMAT, locale));
+            DateAppender.appendDateTime(out, startdate, locale);
         } else {
-            sb.append(startdate.toString(OUTDATEFORMAT, locale));
+            DateAppender.appendDate(out, startdate, locale);
         }
-        sb.append(">--<");
+        out.append(">--<");
         if (hasTime) {
-            sb.append(enddate.toString(OUTDATETIMEFORMAT, locale));
+            DateAppender.appendDateTime(out, enddate, locale);
         } else {
-            sb.append(enddate.toString(OUTDATEFORMAT, locale));
+            DateAppender.appendDate(out, enddate, locale);
         }
-        sb.append(">");
-
-        return sb.toString();
+        out.append('>');
     }
 
     public boolean hasTime() {
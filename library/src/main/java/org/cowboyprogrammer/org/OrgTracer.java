@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.ParseListener;
+
+/**
+ * Hooks for tracing what the library does, for example to emit profiling
+ * events. Installed globally with OrgFile.setTracer. Every method may
+ * return null to say it is not interested, and is then not called again
+ * for that operation.
+ */
+public interface OrgTracer {
+
+    /**
+     * A file is about to be parsed.
+     *
+     * @param path of the file, or just its name if that is all there is
+     * @return a listener to follow the parse with, or null
+     */
+    ParseListener parseStarted(String path);
+
+    /**
+     * A tree is about to be turned into text.
+     *
+     * @param operation the method doing it, such as "treeToString"
+     * @param node      the root of the tree
+     * @return a token handed back to serializeFinished, or null
+     */
+    Object serializeStarted(String operation, OrgNode node);
+
+    /**
+     * @param token returned by serializeStarted
+     * @param size  of the output, in characters or bytes for files, or -1
+     *              if writing failed
+     */
+    void serializeFinished(Object token, long size);
+
+    /**
+     * A file is about to be deleted or renamed.
+     *
+     * @param operation "delete" or "rename"
+     * @param path      of the file
+     * @param target    new name when renaming, else null
+     * @return a token handed back to fileOperationFinished, or null
+     */
+    Object fileOperationStarted(String operation, String path, String target);
+
+    /**
+     * @param token   returned by fileOperationStarted
+     * @param success what the operation returned
+     */
+    void fileOperationFinished(Object token, boolean success);
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import java.util.Arrays;
+
+/**
+ * A property drawer: its properties and its lines, which are kept as they
+ * were read so the drawer is written back unchanged until a property in it
+ * is changed.
+ */
+final class PropertyDrawer {
+
+    static final String[] NO_PROPERTIES = new String[0];
+
+    // Key, value, key, value
+    final String[] properties;
+    // From :PROPERTIES: to :END:, every line ending with a newline
+    final String text;
+    // Number of timestamp lines before the drawer, -1 to put it after all of them
+    final int at;
+
+    PropertyDrawer(final String[] properties, final String text, final int at) {
+        this.properties = properties;
+        this.text = text;
+        this.at = at;
+    }
+
+    /**
+     * Parse the text of a drawer, as written by render or read from a file.
+     */
+    static PropertyDrawer parse(final String text, final int at) {
+        String[] properties = NO_PROPERTIES;
+        int start = text.indexOf('\n') + 1;
+        int end = text.indexOf('\n', start);
+        while (end >= 0) {
+            final String[] property = parseLine(text.substring(start, end));
+            if (property != null) {
+                properties = Arrays.copyOf(properties, properties.length + 2);
+                properties[properties.length - 2] = property[0];
+                properties[properties.length - 1] = property[1];
+            }
+            start = end + 1;
+            end = text.indexOf('\n', start);
+        }
+        return new PropertyDrawer(properties, text, at);
+    }
+
+    /**
+     * Split a line like ":KEY: value" into key and value.
+     *
+     * @return null if the line is not a property
+     */
+    static String[] parseLine(final String line) {
+        final String trimmed = line.trim();
+        final int end = trimmed.indexOf(':', 1);
+        if (!trimmed.startsWith(":") || end < 2) {
+            return null;
+        }
+        final String key = trimmed.substring(1, end);
+        for (int i = 0; i < key.length(); i++) {
+            if (Character.isWhitespace(key.charAt(i))) {
+                return null;
+            }
+        }
+        if (":END:".equalsIgnoreCase(trimmed)) {
+            return null;
+        }
+        return new String[]{key, trimmed.substring(end + 1).trim()};
+    }
+
+    /**
+     * The drawer as org text, with one property per line.
+     */
+    static void render(final StringBuilder sb, final String[] properties) {
+        sb.append(":PROPERTIES:\n");
+        for (int i = 0; i < properties.length; i += 2) {
+            sb.append(':').append(properties[i]).append(':');
+            if (!properties[i + 1].isEmpty()) {
+                sb.append(' ').append(properties[i + 1]);
+            }
+            sb.append('\n');
+        }
+        sb.append(":END:\n");
+    }
+}
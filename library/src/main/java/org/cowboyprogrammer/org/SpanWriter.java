@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * Writes an org tree to a file, copying the spans of unmodified entries
+ * straight from the source file and rendering only modified ones. Output
+ * is the same as treeToString, except that unmodified entries keep their
+ * exact original bytes.
+ */
+final class SpanWriter {
+
+    private final OrgFile root;
+    private final OrgSource source;
+    private final Charset charset;
+    private final List<OrgNode> nodes = new ArrayList<OrgNode>();
+    private final StringBuilder sb = new StringBuilder();
+    private final ByteBuffer oneByte = ByteBuffer.allocate(1);
+
+    // New spans of nodes, by index in nodes
+    private long[] starts;
+    private long[] ends;
+    private long written = 0;
+
+    private FileChannel in;
+    private FileChannel out;
+    // Pending range of source bytes to copy
+    private long runStart = -1;
+    private long runEnd = -1;
+    // Where in the output the pending run goes
+    private long runOffset = 0;
+
+    /**
+     * @param source the unchanged file to copy from, or null to render everything
+     */
+    SpanWriter(final OrgFile root, final OrgSource source, final Charset charset) {
+        this.root = root;
+        this.source = source;
+        this.charset = charset;
+    }
+
+    void write(final File target) throws IOException {
+        collectNodes();
+        starts = new long[nodes.size()];
+        ends = new long[nodes.size()];
+
+        final FileOutputStream fos = new FileOutputStream(target);
+        FileInputStream fis = null;
+        try {
+            out = fos.getChannel();
+            if (source != null) {
+                fis = new FileInputStream(source.file);
+                in = fis.getChannel();
+            }
+            writeNodes();
+            out.force(false);
+        } finally {
+            if (fis != null) {
+                fis.close();
+            }
+            fos.close();
+        }
+    }
+
+    /**
+     * Make the spans written by write() the nodes' new source spans.
+     */
+    void rebase(final OrgSource target) {
+        for (int i = 0; i < nodes.size(); i++) {
+            final long next = i + 1 < nodes.size() ? starts[i + 1] : written;
+            nodes.get(i).setSourceSpan(target, starts[i], ends[i], next);
+        }
+    }
+
+    private void collectNodes() {
+        final Stack<OrgNode> stack = new Stack<OrgNode>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final OrgNode node = stack.pop();
+            nodes.add(node);
+            final List<OrgNode> children = node.getSubNodes();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+    }
+
+    private boolean canCopy(final OrgNode node) {
+        return source != null && !node.isDirty() && node.getSource() == source;
+    }
+
+    private void writeNodes() throws IOException {
+        boolean prevCopied = false;
+        for (int i = 0; i < nodes.size(); i++) {
+            final OrgNode node = nodes.get(i);
+            final boolean copy = canCopy(node);
+
+            if (copy && prevCopied && nodes.get(i - 1).getSourceNext() == node.getSourceStart()) {
+                // Continues the pending run, separator included
+                starts[i] = runOffset + (node.getSourceStart() - runStart);
+                ends[i] = runOffset + (node.getSourceEnd() - runStart);
+                runEnd = node.getSourceEnd();
+                continue;
+            }
+
+            if (i > 0) {
+                final boolean terminated = !prevCopied || runEndsWithNewline();
+                flushRun();
+                if (!terminated) {
+                    // Last line of the file had no newline
+                    writeText("\n");
+                    ends[i - 1]++;
+                }
+                // Separator between entries, as in treeToString
+                writeText("\n");
+            }
+
+            starts[i] = written;
+            if (copy) {
+                runStart = node.getSourceStart();
+                runEnd = node.getSourceEnd();
+                runOffset = written;
+                ends[i] = written + (runEnd - runStart);
+            } else {
+                loadBody(node);
+                sb.setLength(0);
+                node.toString(sb);
+                writeText(sb);
+                ends[i] = written;
+            }
+            prevCopied = copy;
+        }
+
+        if (prevCopied && nodes.get(nodes.size() - 1).getSourceNext() == source.length) {
+            // Last in source as well, keep whatever trailed it
+            runEnd = source.length;
+        }
+        flushRun();
+    }
+
+    private static void loadBody(final OrgNode node) throws IOException {
+        try {
+            node.loadBody();
+        } catch (ParseException e) {
+            throw new IOException("Could not parse body of " + node.getTitle(), e);
+        }
+    }
+
+    private boolean runEndsWithNewline() throws IOException {
+        if (runEnd <= runStart) {
+            // Nothing in it
+            return true;
+        }
+        oneByte.clear();
+        if (in.read(oneByte, runEnd - 1) != 1) {
+            throw new IOException("Source file is shorter than expected");
+        }
+        final byte last = oneByte.get(0);
+        return last == '\n' || last == '\r';
+    }
+
+    private void flushRun() throws IOException {
+        if (runStart < 0) {
+            return;
+        }
+        long position = runStart;
+        while (position < runEnd) {
+            final long count = in.transferTo(position, runEnd - position, out);
+            if (count <= 0) {
+                throw new IOException("Source file is shorter than expected");
+            }
+            position += count;
+        }
+        written += runEnd - runStart;
+        runStart = -1;
+        runEnd = -1;
+    }
+
+    private void writeText(final CharSequence text) throws IOException {
+        final ByteBuffer bytes = charset.encode(CharBuffer.wrap(text));
+        while (bytes.hasRemaining()) {
+            written += out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+/**
+ * A problem found in a file parsed in lenient mode. The line is kept
+ * anyway, as body text or as a header with everything after the stars as
+ * its title.
+ */
+public final class Diagnostic {
+
+    public enum Kind {
+        /**
+         * A header the parser could not read.
+         */
+        INVALID_HEADER,
+        /**
+         * A timestamp line with a date, time or count out of range, like
+         * 2014-13-45.
+         */
+        INVALID_TIMESTAMP,
+        /**
+         * A timestamp range line with a date or time out of range.
+         */
+        INVALID_TIMESTAMP_RANGE,
+        /**
+         * A property drawer with a line which is not a property. The drawer
+         * is kept as body text.
+         */
+        INVALID_PROPERTY_DRAWER
+    }
+
+    private final long line;
+    private final Kind kind;
+    private final String message;
+
+    /**
+     * @param line number, the first line is 1
+     */
+    public Diagnostic(final long line, final Kind kind, final String message) {
+        if (kind == null || message == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        this.line = line;
+        this.kind = kind;
+        this.message = message;
+    }
+
+    /**
+     * Number of the line, the first line is 1.
+     */
+    public long getLine() {
+        return line;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "line " + line + ": " + kind + ": " + message;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import java.util.Arrays;
+
+import static org.cowboyprogrammer.org.util.StringUtils.isSpace;
+
+/**
+ * Finds which of a set of keywords a line has at a position, in one pass
+ * over the characters. Time depends on the length of the keyword, not on
+ * how many keywords there are.
+ */
+final class KeywordTrie {
+
+    private static final class Node {
+        // Sorted, children[i] follows chars[i]
+        char[] chars = new char[0];
+        Node[] children = new Node[0];
+        // Set if a keyword ends here
+        String keyword = null;
+
+        Node child(final char c) {
+            final int i = Arrays.binarySearch(chars, c);
+            return i < 0 ? null : children[i];
+        }
+
+        Node addChild(final char c) {
+            int i = Arrays.binarySearch(chars, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            i = -i - 1;
+            final char[] newChars = new char[chars.length + 1];
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(chars, 0, newChars, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            newChars[i] = c;
+            newChildren[i] = new Node();
+            System.arraycopy(chars, i, newChars, i + 1, chars.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            chars = newChars;
+            children = newChildren;
+            return newChildren[i];
+        }
+    }
+
+    private final Node root = new Node();
+
+    KeywordTrie(final String... keywords) {
+        for (final String keyword : keywords) {
+            if (keyword.isEmpty()) continue;
+            Node node = root;
+            for (int i = 0; i < keyword.length(); i++) {
+                node = node.addChild(keyword.charAt(i));
+            }
+            node.keyword = keyword;
+        }
+    }
+
+    /**
+     * @return the keyword which starts at the position and is followed by
+     * whitespace or the end of the line, or null if there is none
+     */
+    String match(final String line, final int start) {
+        Node node = root;
+        for (int i = start; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (node.keyword != null && isSpace(c)) {
+                // Keywords never contain spaces, so nothing longer can match
+                return node.keyword;
+            }
+            node = node.child(c);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node.keyword;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgTimestamp;
+import org.cowboyprogrammer.org.OrgTimestampRange;
+
+/**
+ * An OrgParser which can check the values in a timestamp before parsing
+ * it, so lenient parsing can skip bad ones without catching exceptions.
+ */
+public interface LenientParser extends OrgParser {
+
+    /**
+     * @param line a timestamp line, as isTimestampLine says
+     * @return the timestamp, or null if a date, time or count in it is out of range
+     */
+    OrgTimestamp getValidTimestamp(String line);
+
+    /**
+     * @param line a timestamp range line, as isTimestampRangeLine says
+     * @return the range, or null if a date or time in it is out of range
+     */
+    OrgTimestampRange getValidTimestampRange(String line);
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+/**
+ * What a line in an org file turned out to be during parsing. SKIPPED is
+ * for lines belonging to entries left out by a filter or maximum level,
+ * PROPERTY for every line of a property drawer. INVALID is for lines kept
+ * as body text in lenient mode because they could not be parsed.
+ */
+public enum LineKind {
+    HEADER, COMMENT, TIMESTAMP, TIMESTAMP_RANGE, BODY, EMPTY, SKIPPED, PROPERTY, INVALID
+}
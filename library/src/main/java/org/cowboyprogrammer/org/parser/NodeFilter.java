@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgNode;
+
+/**
+ * Decides which entries to keep while parsing. See ParseOptions.setFilter.
+ */
+public interface NodeFilter {
+
+    /**
+     * Called once the header of an entry has been parsed, before any of its
+     * body. The entry knows its parent, which has been accepted already.
+     *
+     * @param node with level, todo keyword, title and tags set
+     * @return false to skip the entry and everything below it
+     */
+    boolean accept(OrgNode node);
+}
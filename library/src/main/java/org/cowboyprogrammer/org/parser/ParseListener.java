@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgFile;
+import org.cowboyprogrammer.org.OrgNode;
+
+/**
+ * Receives timings and counts while a file is parsed. Set one in the
+ * ParseOptions given to OrgFile.createFromBufferedReader or createFromFile
+ * to find out where the time goes. Without a listener, no timing is done at all.
+ * <p/>
+ * Methods are called on the parsing thread, once per line, so they should
+ * be cheap. ParseStats collects everything into plain counters, implement
+ * this interface directly to feed histograms instead.
+ */
+public interface ParseListener {
+
+    /**
+     * A line was read from the input.
+     *
+     * @param length of the line, without terminator
+     * @param nanos  spent reading it
+     */
+    void lineRead(int length, long nanos);
+
+    /**
+     * A line was handled. For headers this includes matching and creating
+     * the node, for other lines adding them to the current node, which
+     * includes parsing timestamps.
+     *
+     * @param kind  what the line was
+     * @param nanos spent handling it
+     */
+    void lineParsed(LineKind kind, long nanos);
+
+    /**
+     * No more lines will be added to the node.
+     *
+     * @param node  the finished node, the OrgFile itself comes first
+     * @param depth in the tree, 0 for the file
+     */
+    void nodeFinished(OrgNode node, int depth);
+
+    /**
+     * The whole input has been parsed.
+     *
+     * @param file  the result
+     * @param bytes read from the input, or characters if the input was a
+     *              Reader and the bytes are unknown
+     */
+    void parseFinished(OrgFile file, long bytes);
+}
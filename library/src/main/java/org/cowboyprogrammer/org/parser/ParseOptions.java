@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgArena;
+
+import java.nio.charset.Charset;
+
+/**
+ * How to parse a file, for the cases the defaults don't cover. Setters
+ * return the options so they can be chained:
+ * <pre>
+ * new ParseOptions().setFileTodoKeywords(true).setListener(stats)
+ * </pre>
+ */
+public class ParseOptions {
+
+    private ParseListener listener = null;
+    private boolean fileTodoKeywords = false;
+    private Charset charset = Charset.forName("UTF-8");
+    private boolean outline = false;
+    private NodeFilter filter = null;
+    private int maxLevel = Integer.MAX_VALUE;
+    private OrgArena arena = null;
+    private boolean lenient = false;
+
+    public ParseListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @param listener told about every line and node, may be null
+     */
+    public ParseOptions setListener(final ParseListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public boolean isFileTodoKeywords() {
+        return fileTodoKeywords;
+    }
+
+    /**
+     * If true, #+TODO: lines before the first header replace the parser's
+     * todo keywords for the rest of the file. Only works with parsers that
+     * implement TodoKeywordParser.
+     */
+    public ParseOptions setFileTodoKeywords(final boolean fileTodoKeywords) {
+        this.fileTodoKeywords = fileTodoKeywords;
+        return this;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Charset of files and streams, UTF-8 unless set. UTF-8 is split into
+     * lines before it is decoded, which is faster than any other charset.
+     */
+    public ParseOptions setCharset(final Charset charset) {
+        if (charset == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        this.charset = charset;
+        return this;
+    }
+
+    public boolean isOutline() {
+        return outline;
+    }
+
+    /**
+     * If true, only headers are parsed. Bodies are skipped and stay empty
+     * until OrgNode.loadBody is called, which only works for files. If the
+     * file changes while it is read, reading fails with a
+     * ConcurrentModificationException.
+     */
+    public ParseOptions setOutline(final boolean outline) {
+        this.outline = outline;
+        return this;
+    }
+
+    public NodeFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Entries the filter rejects are skipped together with their bodies and
+     * everything below them, without creating nodes for any of it. Writing
+     * such a file back to disk leaves out what was skipped.
+     *
+     * @param filter to check every header with, or null to keep everything
+     */
+    public ParseOptions setFilter(final NodeFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    /**
+     * Entries with more stars than this are skipped together with their
+     * bodies. Writing such a file back to disk leaves out what was skipped.
+     */
+    public ParseOptions setMaxLevel(final int maxLevel) {
+        if (maxLevel < 1) {
+            throw new IllegalArgumentException("Max level must be at least 1, got " + maxLevel);
+        }
+        this.maxLevel = maxLevel;
+        return this;
+    }
+
+    public OrgArena getArena() {
+        return arena;
+    }
+
+    /**
+     * Titles, bodies and comments of finished nodes are moved into the
+     * arena, off the heap. The arena must stay open while the nodes are used.
+     *
+     * @param arena to keep text in, or null to keep it in Strings
+     */
+    public ParseOptions setArena(final OrgArena arena) {
+        this.arena = arena;
+        return this;
+    }
+
+    public boolean isLenient() {
+        return lenient;
+    }
+
+    /**
+     * If true, lines which can't be parsed are kept in the tree and listed
+     * in OrgFile.getDiagnostics instead of stopping the parse. Parsers which
+     * implement LenientParser do this without throwing any exceptions.
+     */
+    public ParseOptions setLenient(final boolean lenient) {
+        this.lenient = lenient;
+        return this;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgFile;
+import org.cowboyprogrammer.org.OrgNode;
+
+/**
+ * A ParseListener which sums everything up in counters. Can be reused for
+ * several parses, in which case the numbers add up, call reset() in between
+ * to get numbers per parse. Not thread safe.
+ */
+public class ParseStats implements ParseListener {
+
+    private final long[] lineCounts = new long[LineKind.values().length];
+    private final long[] lineNanos = new long[LineKind.values().length];
+    private long readNanos = 0;
+    private long bytes = 0;
+    private long nodes = 0;
+    private int maxDepth = 0;
+    private int largestBody = 0;
+    private long parses = 0;
+
+    @Override
+    public void lineRead(final int length, final long nanos) {
+        readNanos += nanos;
+    }
+
+    @Override
+    public void lineParsed(final LineKind kind, final long nanos) {
+        lineCounts[kind.ordinal()]++;
+        lineNanos[kind.ordinal()] += nanos;
+    }
+
+    @Override
+    public void nodeFinished(final OrgNode node, final int depth) {
+        if (depth > 0) {
+            nodes++;
+        }
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+        final int bodyLength = node.getBody().length();
+        if (bodyLength > largestBody) {
+            largestBody = bodyLength;
+        }
+    }
+
+    @Override
+    public void parseFinished(final OrgFile file, final long bytes) {
+        this.bytes += bytes;
+        parses++;
+    }
+
+    public void reset() {
+        for (int i = 0; i < lineCounts.length; i++) {
+            lineCounts[i] = 0;
+            lineNanos[i] = 0;
+        }
+        readNanos = 0;
+        bytes = 0;
+        nodes = 0;
+        maxDepth = 0;
+        largestBody = 0;
+        parses = 0;
+    }
+
+    /**
+     * Number of lines of the given kind.
+     */
+    public long getLineCount(final LineKind kind) {
+        return lineCounts[kind.ordinal()];
+    }
+
+    /**
+     * Total number of lines.
+     */
+    public long getLineCount() {
+        long sum = 0;
+        for (final long count : lineCounts) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    /**
+     * Nanoseconds spent handling lines of the given kind.
+     */
+    public long getLineNanos(final LineKind kind) {
+        return lineNanos[kind.ordinal()];
+    }
+
+    /**
+     * Nanoseconds spent reading lines from the input.
+     */
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * Bytes read, or characters for inputs of unknown encoding.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Number of nodes created, not counting the files themselves.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Deepest nesting seen, 1 for top level headers.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Length of the longest body seen, in characters.
+     */
+    public int getLargestBody() {
+        return largestBody;
+    }
+
+    public long getParses() {
+        return parses;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("parses=").append(parses)
+                .append(" bytes=").append(bytes)
+                .append(" nodes=").append(nodes)
+                .append(" maxDepth=").append(maxDepth)
+                .append(" largestBody=").append(largestBody)
+                .append(" readNanos=").append(readNanos);
+        for (final LineKind kind : LineKind.values()) {
+            sb.append(' ').append(kind.name().toLowerCase()).append('=')
+                    .append(lineCounts[kind.ordinal()]).append('/')
+                    .append(lineNanos[kind.ordinal()]).append("ns");
+        }
+        return sb.toString();
+    }
+}
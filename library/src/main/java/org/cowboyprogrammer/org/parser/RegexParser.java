@@ -22,13 +22,21 @@ import org.cowboyprogrammer.org.OrgTimestamp;
 import org.cowboyprogrammer.org.OrgTimestampRange;
 
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static org.cowboyprogrammer.org.util.StringUtils.isSpace;
 import static org.cowboyprogrammer.org.util.StringUtils.reverse;
 
 
-public class RegexParser implements OrgParser {
+public class RegexParser implements SessionParser, TodoKeywordParser, LenientParser {
 
     /*
      * Can't use named groups because they are not supported in Android.
@@ -55,7 +63,29 @@ public class RegexParser implements OrgParser {
     public static final int TIMESTAMPRANGE_ENDDATE_GROUP = 4;
     public static final int TIMESTAMPRANGE_ENDDAY_GROUP = 5;
     public static final int TIMESTAMPRANGE_ENDTIME_GROUP = 6;
+    // Only the header depends on the todo keywords, the rest are shared
+    private static final Pattern HEADER_REST_PATTERN = getHeaderRestPattern();
+    private static final Pattern TIMESTAMP_PATTERN = getTimestampPattern();
+    private static final Pattern TIMESTAMP_RANGE_PATTERN = getTimestampRangePattern();
+    private static final Pattern COMMENT_PATTERN = getCommentPrefix();
+    private static final Pattern TODO_LINE_PATTERN =
+            Pattern.compile("^\\s*#\\+(?:SEQ_|TYP_)?TODO:(.*)$", Pattern.CASE_INSENSITIVE);
+
+    // Parsers by normalized todo keywords, the least recently used are dropped
+    private static final int MAX_PARSERS = 64;
+    private static final Map<List<String>, RegexParser> PARSERS = Collections.synchronizedMap(
+            new LinkedHashMap<List<String>, RegexParser>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<List<String>, RegexParser> eldest) {
+                    return size() > MAX_PARSERS;
+                }
+            });
+
+    private static final Pattern PLAIN_KEYWORD = Pattern.compile("\\S+");
+
     private final Pattern headerPattern;
+    // Same keywords as in headerPattern, null if some contain whitespace
+    private final KeywordTrie keywords;
     private final Pattern timestampPattern;
     private final Pattern timestampRangePattern;
     private final Pattern commentPattern;
@@ -72,8 +102,8 @@ public class RegexParser implements OrgParser {
         sb.append("(?:\\s+(TODO|DONE"); // TODO and DONE hardcoded
         for (final String key : todoKeys) {
             if (key.isEmpty()) continue;
-            // Enforce upper case for keys
-            sb.append("|").append(key.toUpperCase()); // Add this key
+            // Enforce upper case for keys, and match them literally
+            sb.append("|").append(Pattern.quote(key.toUpperCase(Locale.ROOT))); // Add this key
         }
         sb.append("))?");
         //sb.append("(?<prio>\\s+\\[#[A-C]\\])?"); // Optional priority
@@ -208,17 +238,152 @@ public class RegexParser implements OrgParser {
         return tags.substring(1).split(":");
     }
 
+    /**
+     * Compiles a new header pattern, consider forTodoKeywords instead.
+     */
     public RegexParser(final String... todoKeys) {
         headerPattern = getHeaderPattern(todoKeys);
-        headerRestPattern = getHeaderRestPattern();
-        timestampPattern = getTimestampPattern();
-        timestampRangePattern = getTimestampRangePattern();
-        commentPattern = getCommentPrefix();
+        keywords = createKeywordTrie(todoKeys);
+        headerRestPattern = HEADER_REST_PATTERN;
+        timestampPattern = TIMESTAMP_PATTERN;
+        timestampRangePattern = TIMESTAMP_RANGE_PATTERN;
+        commentPattern = COMMENT_PATTERN;
+    }
+
+    /**
+     * A shared parser for the todo keywords. Parsers are cached, so keywords
+     * only have to be compiled the first time they are seen. Neither order,
+     * case nor duplicates matter.
+     */
+    public static RegexParser forTodoKeywords(final String... todoKeys) {
+        final List<String> keys = normalizeTodoKeywords(todoKeys);
+        RegexParser parser = PARSERS.get(keys);
+        if (parser == null) {
+            // Compiled outside the lock, a concurrent duplicate is harmless
+            parser = new RegexParser(keys.toArray(new String[keys.size()]));
+            synchronized (PARSERS) {
+                final RegexParser existing = PARSERS.get(keys);
+                if (existing != null) {
+                    parser = existing;
+                } else {
+                    PARSERS.put(keys, parser);
+                }
+            }
+        }
+        return parser;
+    }
+
+    /**
+     * Upper case, sorted and without duplicates or the always present TODO and DONE.
+     */
+    static List<String> normalizeTodoKeywords(final String... todoKeys) {
+        final TreeSet<String> keys = new TreeSet<String>();
+        for (final String key : todoKeys) {
+            final String upper = key.toUpperCase(Locale.ROOT);
+            if (!upper.isEmpty() && !"TODO".equals(upper) && !"DONE".equals(upper)) {
+                keys.add(upper);
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<String>(keys));
+    }
+
+    /**
+     * Reads lines like "#+TODO: NEXT(n) WAITING(w@/!) | DONE(d!)". Fast
+     * access keys in parentheses and the "|" separator are dropped.
+     */
+    @Override
+    public String[] getTodoKeywords(final String line) {
+        final Matcher m = TODO_LINE_PATTERN.matcher(line);
+        if (!m.matches()) {
+            return null;
+        }
+        final List<String> keys = new ArrayList<String>();
+        for (final String word : m.group(1).trim().split("\\s+")) {
+            final int paren = word.indexOf('(');
+            final String key = paren < 0 ? word : word.substring(0, paren);
+            if (!key.isEmpty() && !"|".equals(key)) {
+                keys.add(key);
+            }
+        }
+        return keys.toArray(new String[keys.size()]);
     }
 
+    @Override
+    public OrgParser withTodoKeywords(final String... todoKeys) {
+        return forTodoKeywords(todoKeys);
+    }
+
+    /**
+     * A session with its own matchers, which are reused for every line. Only
+     * use it from one thread at a time.
+     */
+    @Override
+    public OrgParser newSession() {
+        return new Session();
+    }
+
+    /**
+     * The same keywords as getHeaderPattern puts in the pattern, or null if
+     * some of them contain whitespace, which the trie can't match.
+     */
+    private static KeywordTrie createKeywordTrie(final String... todoKeys) {
+        final List<String> keys = new ArrayList<String>();
+        keys.add("TODO");
+        keys.add("DONE");
+        for (final String key : todoKeys) {
+            if (key.isEmpty()) continue;
+            final String upper = key.toUpperCase(Locale.ROOT);
+            if (!PLAIN_KEYWORD.matcher(upper).matches()) {
+                return null;
+            }
+            keys.add(upper);
+        }
+        return new KeywordTrie(keys.toArray(new String[keys.size()]));
+    }
+
+    /**
+     * Lines the header pattern treats differently from plain text, where
+     * it is left to the pattern.
+     */
+    private static boolean hasLineTerminator(final String line) {
+        for (int i = 0; i < line.length(); i++) {
+            switch (line.charAt(i)) {
+                case '\n':
+                case '\r':
+                case '\u0085':
+                case '\u2028':
+                case '\u2029':
+                    return true;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
+    private static int countStars(final String line) {
+        int stars = 0;
+        while (stars < line.length() && line.charAt(stars) == '*') {
+            stars++;
+        }
+        return stars;
+    }
+
+    /**
+     * Same as matching the header pattern, which is stars followed by
+     * whitespace or nothing at all. The todo keywords don't matter.
+     */
     @Override
     public boolean isHeaderLine(String line) {
-        return headerPattern.matcher(line).matches();
+        if (line.isEmpty() || line.charAt(0) != '*') {
+            // Most lines are body lines, no need to look further
+            return false;
+        }
+        if (hasLineTerminator(line)) {
+            return headerPattern.matcher(line).matches();
+        }
+        final int stars = countStars(line);
+        return stars > 0 && (stars == line.length() || isSpace(line.charAt(stars)));
     }
 
     /**
@@ -227,24 +392,59 @@ public class RegexParser implements OrgParser {
      */
     @Override
     public OrgNode createFromHeader(String line) {
-        final OrgNode node = new OrgNode(this);
+        return createFromHeader(line, headerRestPattern.matcher(""));
+    }
 
-        Matcher m = headerPattern.matcher(line);
+    /**
+     * Gives the same result as the header pattern, but looks up the todo
+     * keyword in a trie instead of trying every keyword in turn.
+     *
+     * @param restM header rest matcher, reset to anything
+     */
+    private OrgNode createFromHeader(final String line, final Matcher restM) {
+        if (keywords == null || hasLineTerminator(line)) {
+            final Matcher m = headerPattern.matcher(line);
+            if (!m.matches()) {
+                throw new IllegalArgumentException("String is not of proper format!");
+            }
+            return createNode(m.group(HEADER_STARS_GROUP).length(), m.group(HEADER_TODO_GROUP),
+                    m.group(HEADER_REST_GROUP), restM);
+        }
 
-        if (!m.matches()) {
+        final int stars = countStars(line);
+        if (stars == 0 || (stars < line.length() && !isSpace(line.charAt(stars)))) {
             throw new IllegalArgumentException("String is not of proper format!");
         }
+        String todo = null;
+        String rest = null;
+        if (stars < line.length()) {
+            int start = stars + 1;
+            while (start < line.length() && isSpace(line.charAt(start))) {
+                start++;
+            }
+            todo = keywords.match(line, start);
+            if (todo == null) {
+                rest = line.substring(stars + 1);
+            } else if (start + todo.length() < line.length()) {
+                // Skip the one space after the keyword
+                rest = line.substring(start + todo.length() + 1);
+            }
+        }
+        return createNode(stars, todo, rest, restM);
+    }
 
-        node.setLevel(m.group(HEADER_STARS_GROUP).length());
-        node.setTodo(m.group(HEADER_TODO_GROUP));
+    private OrgNode createNode(final int level, final String todo, final String rest,
+                               final Matcher restM) {
+        final OrgNode node = new OrgNode(this);
+        node.setLevel(level);
+        node.setTodo(todo);
 
-        String rest = m.group(HEADER_REST_GROUP);
         if (rest != null && !rest.isEmpty()) {
-            m = headerRestPattern.matcher(reverse(rest));
+            restM.reset(reverse(rest));
 
-            if (m.matches()) {
-                node.setTitle(reverse(m.group(HEADER_REST_TITLE_GROUP)));
-                node.addTags(parseTags(reverse(m.group(HEADER_REST_TAGS_GROUP))));
+            if (restM.matches()) {
+                node.setTitle(reverse(restM.group(HEADER_REST_TITLE_GROUP)));
+                node.addTags(parseTags(reverse(restM.group(HEADER_REST_TAGS_GROUP))));
             }
         }
         return node;
@@ -283,10 +483,38 @@ public class RegexParser implements OrgParser {
      */
     @Override
     public OrgTimestamp getTimestamp(String line) {
-        final Matcher m = timestampPattern.matcher(line);
+        return getTimestamp(timestampPattern.matcher(line));
+    }
+
+    private static OrgTimestamp getTimestamp(final Matcher m) {
         if (!m.matches()) {
             throw new IllegalArgumentException("String is not of proper format!");
         }
+        return createTimestamp(m);
+    }
+
+    /**
+     * @param line to parse
+     * @return a parsed OrgTimestamp, or null if its values are out of range
+     */
+    @Override
+    public OrgTimestamp getValidTimestamp(final String line) {
+        return getValidTimestamp(timestampPattern.matcher(line));
+    }
+
+    private static OrgTimestamp getValidTimestamp(final Matcher m) {
+        if (!m.matches()
+                || !isValidDate(m.group(RegexParser.TIMESTAMP_DATE_GROUP))
+                || !isValidTime(m.group(RegexParser.TIMESTAMP_TIME_GROUP))
+                || !isValidTime(m.group(RegexParser.TIMESTAMP_TIMEEND_GROUP))
+                || !isValidCount(m.group(RegexParser.TIMESTAMP_WARNING_GROUP))
+                || !isValidCount(m.group(RegexParser.TIMESTAMP_REPEAT_GROUP))) {
+            return null;
+        }
+        return createTimestamp(m);
+    }
+
+    private static OrgTimestamp createTimestamp(final Matcher m) {
         return new OrgTimestamp(m.group(RegexParser.TIMESTAMP_ACTIVE_GROUP),
                 m.group(RegexParser.TIMESTAMP_TYPE_GROUP),
                 m.group(RegexParser.TIMESTAMP_DATE_GROUP),
@@ -302,13 +530,151 @@ public class RegexParser implements OrgParser {
      */
     @Override
     public OrgTimestampRange getTimestampRange(String line) {
-        final Matcher m = timestampRangePattern.matcher(line);
+        return getTimestampRange(timestampRangePattern.matcher(line));
+    }
+
+    private static OrgTimestampRange getTimestampRange(final Matcher m) {
         if (!m.matches()) {
             throw new IllegalArgumentException("String is not of proper format!");
         }
+        return createTimestampRange(m);
+    }
+
+    /**
+     * @param line to parse
+     * @return a parsed OrgTimestampRange, or null if its values are out of range
+     */
+    @Override
+    public OrgTimestampRange getValidTimestampRange(final String line) {
+        return getValidTimestampRange(timestampRangePattern.matcher(line));
+    }
+
+    private static OrgTimestampRange getValidTimestampRange(final Matcher m) {
+        if (!m.matches()
+                || !isValidDate(m.group(RegexParser.TIMESTAMPRANGE_STARTDATE_GROUP))
+                || !isValidDate(m.group(RegexParser.TIMESTAMPRANGE_ENDDATE_GROUP))
+                || !isValidTime(m.group(RegexParser.TIMESTAMPRANGE_STARTTIME_GROUP))
+                || !isValidTime(m.group(RegexParser.TIMESTAMPRANGE_ENDTIME_GROUP))) {
+            return null;
+        }
+        return createTimestampRange(m);
+    }
+
+    private static OrgTimestampRange createTimestampRange(final Matcher m) {
         return new OrgTimestampRange(m.group(RegexParser.TIMESTAMPRANGE_STARTDATE_GROUP),
                 m.group(RegexParser.TIMESTAMPRANGE_ENDDATE_GROUP),
                 m.group(RegexParser.TIMESTAMPRANGE_STARTTIME_GROUP),
                 m.group(RegexParser.TIMESTAMPRANGE_ENDTIME_GROUP));
     }
+
+    /**
+     * @param date "yyyy-MM-dd", digits only
+     * @return true if it is a real date
+     */
+    private static boolean isValidDate(final String date) {
+        final int year = digits(date, 0, 4);
+        final int month = digits(date, 5, 7);
+        final int day = digits(date, 8, 10);
+        if (month < 1 || month > 12 || day < 1) {
+            return false;
+        }
+        final int days;
+        if (month == 2) {
+            final boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+            days = leap ? 29 : 28;
+        } else if (month == 4 || month == 6 || month == 9 || month == 11) {
+            days = 30;
+        } else {
+            days = 31;
+        }
+        return day <= days;
+    }
+
+    /**
+     * @param time "HH:mm", digits only, or null
+     */
+    private static boolean isValidTime(final String time) {
+        return time == null || (digits(time, 0, 2) < 24 && digits(time, 3, 5) < 60);
+    }
+
+    /**
+     * @param period like "+1w" or "-2d", or null
+     * @return true if the count fits in an int
+     */
+    private static boolean isValidCount(final String period) {
+        if (period == null) {
+            return true;
+        }
+        int count = 0;
+        for (int i = 0; i < period.length(); i++) {
+            if (Character.isDigit(period.charAt(i))) {
+                count++;
+            }
+        }
+        return count <= 9;
+    }
+
+    private static int digits(final String s, final int start, final int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + s.charAt(i) - '0';
+        }
+        return value;
+    }
+
+    /**
+     * Same as the parser, but resets one matcher per pattern instead of
+     * creating new ones. Nodes it creates use the parser itself.
+     */
+    private final class Session implements LenientParser {
+        private final Matcher headerRest = headerRestPattern.matcher("");
+        private final Matcher timestamp = timestampPattern.matcher("");
+        private final Matcher timestampRange = timestampRangePattern.matcher("");
+        private final Matcher comment = commentPattern.matcher("");
+
+        @Override
+        public boolean isHeaderLine(final String line) {
+            return RegexParser.this.isHeaderLine(line);
+        }
+
+        @Override
+        public OrgNode createFromHeader(final String line) {
+            return RegexParser.this.createFromHeader(line, headerRest);
+        }
+
+        @Override
+        public boolean isCommentLine(final String line) {
+            return comment.reset(line).matches();
+        }
+
+        @Override
+        public boolean isTimestampLine(final String line) {
+            return timestamp.reset(line).matches();
+        }
+
+        @Override
+        public boolean isTimestampRangeLine(final String line) {
+            return timestampRange.reset(line).matches();
+        }
+
+        @Override
+        public OrgTimestamp getTimestamp(final String line) {
+            return RegexParser.getTimestamp(timestamp.reset(line));
+        }
+
+        @Override
+        public OrgTimestampRange getTimestampRange(final String line) {
+            return RegexParser.getTimestampRange(timestampRange.reset(line));
+        }
+
+        @Override
+        public OrgTimestamp getValidTimestamp(final String line) {
+            return RegexParser.getValidTimestamp(timestamp.reset(line));
+        }
+
+        @Override
+        public OrgTimestampRange getValidTimestampRange(final String line) {
+            return RegexParser.getValidTimestampRange(timestampRange.reset(line));
+        }
+    }
 }
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+/**
+ * An OrgParser which can hand out sessions for parsing many lines in a row.
+ * A session may keep state between calls, like reusable matchers, so it
+ * must only be used by one thread at a time. OrgFile and OrgReader use a
+ * new session for every file they parse.
+ */
+public interface SessionParser extends OrgParser {
+
+    /**
+     * @return a parser which gives the same results as this one
+     */
+    OrgParser newSession();
+}
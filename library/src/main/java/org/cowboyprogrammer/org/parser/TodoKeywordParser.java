@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+/**
+ * An OrgParser which can switch to other todo keywords, for files which
+ * declare their own with lines like "#+TODO: NEXT WAITING | DONE".
+ */
+public interface TodoKeywordParser extends OrgParser {
+
+    /**
+     * @param line to parse
+     * @return the keywords declared on the line, or null if it does not declare any
+     */
+    String[] getTodoKeywords(String line);
+
+    /**
+     * @return a parser like this one, but which knows the given todo keywords
+     */
+    OrgParser withTodoKeywords(String... todoKeys);
+}
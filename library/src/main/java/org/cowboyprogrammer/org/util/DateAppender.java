@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.util;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes dates and times in org format, "yyyy-MM-dd EEE" and "HH:mm",
+ * without going through Joda's pattern formatters. Digits are written
+ * directly and day names come from a table built once per locale, so
+ * nothing is allocated apart from what the Appendable does itself.
+ */
+public class DateAppender {
+
+    private static final ConcurrentHashMap<Locale, DayNames> DAY_NAMES =
+            new ConcurrentHashMap<Locale, DayNames>();
+
+    // Most recently used table, saves the map lookup in the common case
+    private static volatile DayNames last = null;
+
+    private static final class DayNames {
+        final Locale locale;
+        final String[] names;
+
+        DayNames(final Locale locale, final String[] names) {
+            this.locale = locale;
+            this.names = names;
+        }
+    }
+
+    private DateAppender() {
+    }
+
+    /**
+     * Short day names in the locale, the same as Joda's "EEE", indexed by
+     * Joda's day of week (1 = Monday, 7 = Sunday). Index 0 is unused. The
+     * array is shared, don't modify it.
+     */
+    static String[] getShortDayNames(final Locale locale) {
+        DayNames cached = last;
+        if (cached != null && cached.locale == locale) {
+            return cached.names;
+        }
+        cached = DAY_NAMES.get(locale);
+        if (cached == null) {
+            final String[] names = new String[8];
+            // 2017-01-02 is a Monday
+            final LocalDate monday = new LocalDate(2017, 1, 2);
+            for (int day = DateTimeConstants.MONDAY; day <= DateTimeConstants.SUNDAY; day++) {
+                names[day] = monday.plusDays(day - 1).dayOfWeek().getAsShortText(locale);
+            }
+            cached = new DayNames(locale, names);
+            final DayNames existing = DAY_NAMES.putIfAbsent(locale, cached);
+            if (existing != null) {
+                cached = existing;
+            }
+        }
+        last = cached;
+        return cached.names;
+    }
+
+    /**
+     * Appends the date as "yyyy-MM-dd EEE".
+     */
+    public static void appendDate(final Appendable out, final LocalDateTime date,
+                                  final Locale locale) throws IOException {
+        appendYear(out, date.getYear());
+        out.append('-');
+        appendTwoDigits(out, date.getMonthOfYear());
+        out.append('-');
+        appendTwoDigits(out, date.getDayOfMonth());
+        out.append(' ');
+        out.append(getShortDayNames(locale)[date.getDayOfWeek()]);
+    }
+
+    /**
+     * Appends the date as "yyyy-MM-dd EEE HH:mm".
+     */
+    public static void appendDateTime(final Appendable out, final LocalDateTime date,
+                                      final Locale locale) throws IOException {
+        appendDate(out, date, locale);
+        out.append(' ');
+        appendTime(out, date.getHourOfDay(), date.getMinuteOfHour());
+    }
+
+    /**
+     * Appends the date in ISO 8601, "yyyy-MM-dd" or "yyyy-MM-ddTHH:mm".
+     */
+    public static void appendIsoDate(final Appendable out, final LocalDateTime date,
+                                     final boolean withTime) throws IOException {
+        appendYear(out, date.getYear());
+        out.append('-');
+        appendTwoDigits(out, date.getMonthOfYear());
+        out.append('-');
+        appendTwoDigits(out, date.getDayOfMonth());
+        if (withTime) {
+            out.append('T');
+            appendTime(out, date.getHourOfDay(), date.getMinuteOfHour());
+        }
+    }
+
+    /**
+     * Appends the time as "HH:mm".
+     */
+    public static void appendTime(final Appendable out, final int hour, final int minute)
+            throws IOException {
+        appendTwoDigits(out, hour);
+        out.append(':');
+        appendTwoDigits(out, minute);
+    }
+
+    private static void appendTwoDigits(final Appendable out, final int value) throws IOException {
+        out.append((char) ('0' + value / 10));
+        out.append((char) ('0' + value % 10));
+    }
+
+    private static void appendYear(final Appendable out, final int year) throws IOException {
+        int value = year;
+        if (value < 0) {
+            out.append('-');
+            value = -value;
+        }
+        if (value > 9999) {
+            // Wider than the pattern, no padding needed
+            appendDigits(out, value);
+            return;
+        }
+        out.append((char) ('0' + value / 1000));
+        out.append((char) ('0' + value / 100 % 10));
+        out.append((char) ('0' + value / 10 % 10));
+        out.append((char) ('0' + value % 10));
+    }
+
+    private static void appendDigits(final Appendable out, final int value) throws IOException {
+        if (value >= 10) {
+            appendDigits(out, value / 10);
+        }
+        out.append((char) ('0' + value % 10));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads lines the same way as BufferedReader's readLine, while keeping
+ * track of where they are in the input.
+ */
+public interface LineReader extends Closeable {
+
+    /**
+     * @return the next line without its terminator, or null at end of stream
+     */
+    String readLine() throws IOException;
+
+    /**
+     * Byte offset where the line last returned by readLine starts.
+     */
+    long getLineStart();
+
+    /**
+     * Byte offset just after the line last returned by readLine, including
+     * its terminator. This is also the number of bytes consumed so far.
+     */
+    long getLineEnd();
+
+    /**
+     * Number of characters read so far, including line terminators.
+     */
+    long getCharsRead();
+
+    /**
+     * True if byte offsets are being tracked.
+     */
+    boolean tracksOffsets();
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Reads lines the same way as BufferedReader's readLine, but also keeps track
+ * of where each line starts and ends in the underlying byte stream.
+ * <p/>
+ * Byte offsets are only tracked if a charset is given, otherwise they stay 0.
+ * They assume the input was well formed in that charset.
+ */
+public class OffsetLineReader implements LineReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final Charset charset;
+    private final boolean utf8;
+    private final boolean singleByte;
+    // Size of a \r or \n in the charset
+    private final int terminatorLength;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder partial = new StringBuilder();
+    private int position = 0;
+    private int limit = 0;
+
+    // Byte offset of the start of the last line
+    private long lineStart = 0;
+    // Byte offset just after the last line's terminator
+    private long offset = 0;
+    // Characters consumed so far, terminators included
+    private long chars = 0;
+
+    /**
+     * @param reader  to read from
+     * @param charset the reader decodes with, or null if offsets are not needed
+     */
+    public OffsetLineReader(final Reader reader, final Charset charset) {
+        if (reader == null) {
+            throw new NullPointerException("Can't read a null reader");
+        }
+        this.reader = reader;
+        this.charset = charset;
+        utf8 = charset != null && "UTF-8".equals(charset.name());
+        singleByte = charset != null && ("US-ASCII".equals(charset.name())
+                || "ISO-8859-1".equals(charset.name()));
+        if (charset == null) {
+            terminatorLength = 0;
+        } else if (utf8 || singleByte) {
+            terminatorLength = 1;
+        } else {
+            terminatorLength = charset.encode("\n").remaining();
+        }
+    }
+
+    /**
+     * @return the next line without its terminator, or null at end of stream
+     */
+    @Override
+    public String readLine() throws IOException {
+        lineStart = offset;
+        partial.setLength(0);
+        boolean readAnything = false;
+
+        while (true) {
+            if (position >= limit && !fill()) {
+                if (!readAnything) {
+                    return null;
+                }
+                final String line = partial.toString();
+                offset += byteLength(line, 0, line.length());
+                chars += line.length();
+                return line;
+            }
+            readAnything = true;
+
+            final int start = position;
+            int i = position;
+            while (i < limit && buffer[i] != '\n' && buffer[i] != '\r') {
+                i++;
+            }
+            if (i == limit) {
+                // No terminator in buffer, keep what we have and read more
+                partial.append(buffer, start, i - start);
+                position = limit;
+                continue;
+            }
+
+            final String line;
+            if (partial.length() == 0) {
+                line = new String(buffer, start, i - start);
+            } else {
+                partial.append(buffer, start, i - start);
+                line = partial.toString();
+            }
+            offset += byteLength(line, 0, line.length());
+            chars += line.length() + 1;
+
+            // Consume terminator, \r\n counts as one
+            final char terminator = buffer[i];
+            position = i + 1;
+            offset += terminatorLength;
+            if (terminator == '\r' && (position < limit || fill()) && buffer[position] == '\n') {
+                offset += terminatorLength;
+                chars++;
+                position++;
+            }
+            return line;
+        }
+    }
+
+    /**
+     * Byte offset where the line last returned by readLine starts.
+     */
+    @Override
+    public long getLineStart() {
+        return lineStart;
+    }
+
+    /**
+     * Byte offset just after the line last returned by readLine, including
+     * its terminator. This is also the number of bytes consumed so far.
+     */
+    @Override
+    public long getLineEnd() {
+        return offset;
+    }
+
+    /**
+     * Number of characters read so far, including line terminators.
+     */
+    @Override
+    public long getCharsRead() {
+        return chars;
+    }
+
+    /**
+     * True if byte offsets are being tracked.
+     */
+    @Override
+    public boolean tracksOffsets() {
+        return charset != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    private long byteLength(final CharSequence chars, final int start, final int end) {
+        if (charset == null) {
+            return 0;
+        } else if (singleByte) {
+            return end - start;
+        } else if (utf8) {
+            long bytes = 0;
+            for (int i = start; i < end; i++) {
+                final char c = chars.charAt(i);
+                if (c < 0x80) {
+                    bytes += 1;
+                } else if (c < 0x800) {
+                    bytes += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < end
+                        && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                    bytes += 4;
+                    i++;
+                } else {
+                    bytes += 3;
+                }
+            }
+            return bytes;
+        } else {
+            return charset.encode(CharBuffer.wrap(chars, start, end)).remaining();
+        }
+    }
+}
@@ -3,6 +3,8 @@ package org.cowboyprogrammer.org.util;
 
 public class StringUtils {
 
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     /**
      * If null, returns null.
      *
@@ -15,4 +17,106 @@ public class StringUtils {
         }
         return new StringBuilder(text).reverse().toString();
     }
+
+    /**
+     * Same as text.matches("\\A\\s*\\z"), without compiling a pattern.
+     *
+     * @return true if text is empty or only has whitespace
+     */
+    public static boolean isBlank(final CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!isSpace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if c matches \s in a regular expression
+     */
+    public static boolean isSpace(final char c) {
+        switch (c) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\u000B':
+            case '\f':
+            case '\r':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Appends the text as a quoted JSON string, or null if it is null.
+     */
+    public static void appendJson(final StringBuilder sb, final CharSequence text) {
+        if (text == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        int start = 0;
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            // Copy the plain run before it in one go
+            sb.append(text, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    break;
+            }
+        }
+        sb.append(text, start, length);
+        sb.append('"');
+    }
+
+    /**
+     * A 64 bit hash of the characters, FNV-1a followed by mix. The same on
+     * every JVM, unlike String.hashCode it is wide enough to compare trees
+     * by.
+     */
+    public static long hash(final CharSequence text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Spreads the bits of a hash, the finalizer of MurmurHash3.
+     */
+    public static long mix(final long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
 }
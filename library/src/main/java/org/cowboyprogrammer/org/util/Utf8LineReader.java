@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2017.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads lines of UTF-8 straight from bytes. Lines are split on the bytes
+ * for \n and \r, which never occur inside a multi byte character, so byte
+ * offsets are known without encoding anything again. Lines which are only
+ * ASCII, which is most of them in an org file, skip UTF-8 decoding.
+ * <p/>
+ * Malformed input is replaced with U+FFFD, like InputStreamReader does.
+ */
+public class Utf8LineReader implements LineReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ASCII = Charset.forName("ISO-8859-1");
+    private static final int BUFFER_SIZE = 8192;
+
+    // Exactly one of these is set
+    private final InputStream stream;
+    private final ReadableByteChannel channel;
+    private final ByteBuffer source;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer channelBuffer;
+    private int position = 0;
+    private int limit = 0;
+    // Start of a line which did not fit in the buffer
+    private byte[] partial = new byte[128];
+    private int partialLength = 0;
+
+    private long lineStart = 0;
+    private long offset = 0;
+    private long chars = 0;
+
+    public Utf8LineReader(final InputStream stream) {
+        this(stream, null, null);
+    }
+
+    public Utf8LineReader(final ReadableByteChannel channel) {
+        this(null, channel, null);
+    }
+
+    /**
+     * Reads the remaining bytes of the buffer, leaving its position at the end.
+     */
+    public Utf8LineReader(final ByteBuffer source) {
+        this(null, null, source);
+    }
+
+    private Utf8LineReader(final InputStream stream, final ReadableByteChannel channel,
+                           final ByteBuffer source) {
+        if (stream == null && channel == null && source == null) {
+            throw new NullPointerException("Can't read a null input");
+        }
+        this.stream = stream;
+        this.channel = channel;
+        this.source = source;
+        channelBuffer = channel == null ? null : ByteBuffer.wrap(buffer);
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        lineStart = offset;
+        partialLength = 0;
+        boolean readAnything = false;
+        // Any byte with the high bit set
+        int high = 0;
+
+        while (true) {
+            if (position >= limit && !fill()) {
+                if (!readAnything) {
+                    return null;
+                }
+                final String line = decode(partial, 0, partialLength, high);
+                offset += partialLength;
+                chars += line.length();
+                return line;
+            }
+            readAnything = true;
+
+            final int start = position;
+            int i = position;
+            byte b = 0;
+            while (i < limit && (b = buffer[i]) != '\n' && b != '\r') {
+                high |= b;
+                i++;
+            }
+            if (i == limit) {
+                // No terminator in buffer, keep what we have and read more
+                appendPartial(start, i);
+                position = limit;
+                continue;
+            }
+
+            final String line;
+            final int length;
+            if (partialLength == 0) {
+                line = decode(buffer, start, i - start, high);
+                length = i - start;
+            } else {
+                appendPartial(start, i);
+                line = decode(partial, 0, partialLength, high);
+                length = partialLength;
+            }
+            offset += length + 1;
+            chars += line.length() + 1;
+
+            // Consume terminator, \r\n counts as one
+            position = i + 1;
+            if (b == '\r' && (position < limit || fill()) && buffer[position] == '\n') {
+                offset++;
+                chars++;
+                position++;
+            }
+            return line;
+        }
+    }
+
+    @Override
+    public long getLineStart() {
+        return lineStart;
+    }
+
+    @Override
+    public long getLineEnd() {
+        return offset;
+    }
+
+    @Override
+    public long getCharsRead() {
+        return chars;
+    }
+
+    @Override
+    public boolean tracksOffsets() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (stream != null) {
+            stream.close();
+        } else if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private static String decode(final byte[] bytes, final int start, final int length, final int high) {
+        if (length == 0) {
+            return "";
+        }
+        // Every ASCII byte is the same character in ISO-8859-1, which has no decoding to do
+        return new String(bytes, start, length, high < 0 ? UTF_8 : ASCII);
+    }
+
+    private void appendPartial(final int start, final int end) {
+        final int length = end - start;
+        if (partialLength + length > partial.length) {
+            partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLength + length));
+        }
+        System.arraycopy(buffer, start, partial, partialLength, length);
+        partialLength += length;
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        if (stream != null) {
+            do {
+                read = stream.read(buffer, 0, buffer.length);
+            } while (read == 0);
+        } else if (channel != null) {
+            do {
+                channelBuffer.clear();
+                read = channel.read(channelBuffer);
+            } while (read == 0);
+        } else {
+            read = Math.min(source.remaining(), buffer.length);
+            if (read == 0) {
+                read = -1;
+            } else {
+                source.get(buffer, 0, read);
+            }
+        }
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+}
@@ -0,0 +1,153 @@
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.ParseOptions;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Stack;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncOrgLoaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File testFile() throws Exception {
+        return new File(getClass().getResource("test.org").toURI());
+    }
+
+    @Test
+    public void testIncrementalSameAsReader() throws Exception {
+        final byte[] bytes = Files.readAllBytes(testFile().toPath());
+        final String text = new String(bytes, UTF_8);
+        final String expected = OrgFile.createFromString(new RegexParser(), "test.org", text).treeToString();
+        final String crlf = text.replace("\n", "\r\n");
+        final byte[] crlfBytes = crlf.getBytes(UTF_8);
+
+        final Random random = new Random(5);
+        for (int n = 0; n < 50; n++) {
+            final byte[] input = n % 2 == 0 ? bytes : crlfBytes;
+            final IncrementalOrgParser parser = new IncrementalOrgParser(new RegexParser(), "test.org",
+                    new ParseOptions());
+            int position = 0;
+            while (position < input.length) {
+                // Often split \r\n and multi byte characters
+                final int count = Math.min(input.length - position, 1 + random.nextInt(8));
+                parser.feed(input, position, count);
+                position += count;
+            }
+            assertEquals(expected, parser.finish().treeToString());
+            assertEquals(input.length, parser.getBytesFed());
+        }
+    }
+
+    @Test
+    public void testCrlfSpansWhenSplitAnywhere() throws Exception {
+        final byte[] input = Files.readAllBytes(testFile().toPath());
+        final byte[] crlf = new String(input, UTF_8).replace("\n", "\r\n").getBytes(UTF_8);
+        final OrgSource source = new OrgSource(testFile(), UTF_8, crlf.length, 0);
+
+        final IncrementalOrgParser whole = new IncrementalOrgParser(new RegexParser(), "test.org",
+                new ParseOptions(), source);
+        whole.feed(crlf, 0, crlf.length);
+        final List<String> expected = spans(whole.finish());
+
+        for (int split = 1; split < crlf.length; split++) {
+            final IncrementalOrgParser parser = new IncrementalOrgParser(new RegexParser(), "test.org",
+                    new ParseOptions(), source);
+            parser.feed(crlf, 0, split);
+            parser.feed(crlf, split, crlf.length - split);
+            assertEquals("Split at " + split, expected, spans(parser.finish()));
+        }
+    }
+
+    private static List<String> spans(final OrgNode root) {
+        final List<String> spans = new ArrayList<String>();
+        final Stack<OrgNode> stack = new Stack<OrgNode>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final OrgNode node = stack.pop();
+            spans.add(node.getSourceStart() + "," + node.getSourceEnd() + "," + node.getSourceNext());
+            for (final OrgNode child : node.getSubNodes()) {
+                stack.push(child);
+            }
+        }
+        return spans;
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        final File file = File.createTempFile("async", ".org");
+        try {
+            Files.copy(testFile().toPath(), file.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            final byte[] original = Files.readAllBytes(file.toPath());
+
+            final BlockingQueue<Object> results = new LinkedBlockingQueue<Object>();
+            final Future<OrgFile> future = AsyncOrgLoader.load(new RegexParser(), file, new ParseOptions(),
+                    "attachment", new CompletionHandler<OrgFile, String>() {
+                        @Override
+                        public void completed(final OrgFile result, final String attachment) {
+                            assertEquals("attachment", attachment);
+                            results.add(result);
+                        }
+
+                        @Override
+                        public void failed(final Throwable exc, final String attachment) {
+                            results.add(exc);
+                        }
+                    });
+
+            final OrgFile orgFile = future.get(30, TimeUnit.SECONDS);
+            assertSame(orgFile, results.poll(30, TimeUnit.SECONDS));
+            assertTrue(future.isDone());
+            assertFalse(future.cancel(true));
+            assertEquals(OrgFile.createFromFile(new RegexParser(), file).treeToString(), orgFile.treeToString());
+
+            // Spans are known, so nothing changes when written back
+            orgFile.writeToFile(file);
+            assertArrayEquals(original, Files.readAllBytes(file.toPath()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMissingFile() throws Exception {
+        final Future<OrgFile> future = AsyncOrgLoader.load(new RegexParser(),
+                new File("does/not/exist.org"), new ParseOptions());
+        try {
+            future.get(30, TimeUnit.SECONDS);
+            fail("Should not load");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NoSuchFileException
+                    || e.getCause() instanceof FileNotFoundException
+                    || e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUtf16NotSupported() throws Exception {
+        new IncrementalOrgParser(new RegexParser(), "test.org",
+                new ParseOptions().setCharset(Charset.forName("UTF-16")));
+    }
+}
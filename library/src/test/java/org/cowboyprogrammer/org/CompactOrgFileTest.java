@@ -0,0 +1,112 @@
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactOrgFileTest {
+
+    private static final String CONTENT = "#+TITLE: test\n" +
+            "intro\n" +
+            "\n" +
+            "* TODO first :work:home:\n" +
+            "SCHEDULED: <2017-01-02 Mon>\n" +
+            "some text\n" +
+            "** child\n" +
+            "*** grandchild :home:\n" +
+            "** second child\n" +
+            "* DONE last\n" +
+            "<2017-01-02 Mon 10:00>--<2017-01-03 Tue 11:00>\n";
+
+    @Test
+    public void testStructure() throws Exception {
+        final CompactOrgFile file = CompactOrgFile.read(new RegexParser(), "test.org",
+                new StringReader(CONTENT));
+
+        assertEquals(6, file.size());
+        assertEquals(CompactOrgFile.NONE, file.getParent(0));
+        assertEquals(1, file.getFirstChild(0));
+        assertEquals(5, file.getNextSibling(1));
+        assertEquals(2, file.getFirstChild(1));
+        assertEquals(4, file.getNextSibling(2));
+        assertEquals(2, file.getParent(3));
+        assertEquals(CompactOrgFile.NONE, file.getNextSibling(5));
+
+        assertEquals("TODO", file.getTodo(1));
+        assertNull(file.getTodo(2));
+        assertEquals("first", file.getTitle(1));
+        assertEquals(Arrays.asList("work", "home"), file.getTags(1));
+        assertEquals(Collections.singletonList("home"), file.getTags(3));
+        assertTrue(file.hasTag(3, "home"));
+        assertFalse(file.hasTag(2, "home"));
+        assertEquals("some text\n", file.getBody(1));
+        assertEquals("#+TITLE: test\n", file.getComments(0));
+    }
+
+    @Test
+    public void testSameAsOrgFile() throws Exception {
+        final RegexParser parser = new RegexParser();
+        final OrgFile orgFile = OrgFile.createFromString(parser, "test.org", CONTENT);
+        final CompactOrgFile file = CompactOrgFile.read(parser, "test.org", new StringReader(CONTENT));
+
+        assertEquals(orgFile.treeToString(), file.toOrgFile().treeToString());
+        assertEquals(orgFile.getSubNodes().get(1).toString(), file.view(5).toString());
+        assertEquals(orgFile.treeToString(), CompactOrgFile.fromOrgFile(orgFile).toOrgFile().treeToString());
+    }
+
+    @Test
+    public void testTestFile() throws Exception {
+        final RegexParser parser = new RegexParser();
+        final File testFile = new File(getClass().getResource("test.org").toURI());
+        final OrgFile orgFile = OrgFile.createFromFile(parser, testFile);
+        final CompactOrgFile file = CompactOrgFile.read(parser, testFile);
+
+        assertEquals(orgFile.treeToString(), file.toOrgFile().treeToString());
+    }
+
+    @Test
+    public void testBodiesReadFromFile() throws Exception {
+        final RegexParser parser = new RegexParser();
+        final File file = File.createTempFile("compact", ".org");
+        file.deleteOnExit();
+        Files.write(file.toPath(), CONTENT.getBytes(Charset.forName("UTF-8")));
+        final CompactOrgFile compact = CompactOrgFile.read(parser, file);
+
+        assertEquals("first", compact.getTitle(1));
+        assertEquals("some text\n", compact.getBody(1));
+        assertEquals("#+TITLE: test\n", compact.getComments(0));
+        assertEquals(1, compact.view(5).getTimestampRanges().size());
+
+        Files.write(file.toPath(), "* other\n".getBytes(Charset.forName("UTF-8")));
+        assertEquals("first", compact.getTitle(1));
+        try {
+            compact.getBody(1);
+            fail("Body can't be read from a changed file");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testNonAscii() throws Exception {
+        final String content = "* r\u00E4ksm\u00F6rg\u00E5s \u2603\n\u00E5\u00E4\u00F6\n";
+        final CompactOrgFile file = CompactOrgFile.read(new RegexParser(), "test.org",
+                new StringReader(content));
+
+        assertEquals("r\u00E4ksm\u00F6rg\u00E5s \u2603", file.getTitle(1));
+        assertEquals("\u00E5\u00E4\u00F6\n", file.getBody(1));
+    }
+}
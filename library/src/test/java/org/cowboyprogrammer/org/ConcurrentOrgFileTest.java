@@ -0,0 +1,142 @@
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.ParseOptions;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentOrgFileTest {
+
+    private static final String CONTENT = "* first\n** child\n* second\n";
+
+    private static ConcurrentOrgFile create() throws Exception {
+        return new ConcurrentOrgFile(OrgFile.createFromString(new RegexParser(), "test.org", CONTENT));
+    }
+
+    @Test
+    public void testCachesUntilWrite() throws Exception {
+        final ConcurrentOrgFile file = create();
+        final String text = file.treeToString();
+        final ImmutableOrgNode snapshot = file.snapshot();
+        assertSame(text, file.treeToString());
+        assertSame(snapshot, file.snapshot());
+
+        file.write(new ConcurrentOrgFile.Update<Void>() {
+            @Override
+            public Void update(final OrgFile orgFile) {
+                orgFile.getSubNodes().get(0).setTitle("changed");
+                return null;
+            }
+        });
+
+        assertEquals(1, file.getVersion());
+        assertNotSame(snapshot, file.snapshot());
+        assertEquals("first", snapshot.getChild(0).getTitle());
+        assertEquals("changed", file.snapshot().getChild(0).getTitle());
+        assertTrue(file.treeToString().startsWith("\n* changed\n"));
+    }
+
+    @Test
+    public void testLoadBodies() throws Exception {
+        final File temp = File.createTempFile("concurrent", ".org");
+        temp.deleteOnExit();
+        Files.write(temp.toPath(), "* first\nbody\n".getBytes(Charset.forName("UTF-8")));
+        final ConcurrentOrgFile file = new ConcurrentOrgFile(OrgFile.createFromFile(new RegexParser(),
+                temp, new ParseOptions().setOutline(true)));
+        assertEquals("", file.snapshot().getChild(0).getBody());
+
+        file.loadBodies();
+        assertEquals(1, file.getVersion());
+        assertEquals("body\n", file.snapshot().getChild(0).getBody());
+        file.loadBodies();
+        assertEquals(1, file.getVersion());
+    }
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws Exception {
+        final ConcurrentOrgFile file = create();
+        final int writes = 200;
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>();
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws ParseException {
+                    for (int i = 0; i < writes; i++) {
+                        file.write(new ConcurrentOrgFile.Update<Void>() {
+                            @Override
+                            public Void update(final OrgFile orgFile) throws ParseException {
+                                final OrgNode node = new OrgNode(orgFile.getParser());
+                                node.setLevel(1);
+                                node.setTitle("added");
+                                node.setParent(orgFile);
+                                orgFile.getSubNodes().add(node);
+                                node.addBodyLine("body");
+                                return null;
+                            }
+                        });
+                    }
+                    return null;
+                }
+            }));
+            for (int t = 0; t < 3; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < writes; i++) {
+                            final int count = file.read(new ConcurrentOrgFile.Query<Integer>() {
+                                @Override
+                                public Integer query(final OrgFile orgFile) {
+                                    int n = 0;
+                                    for (final OrgNode node : orgFile.getSubNodes()) {
+                                        n += node.getSubNodes().size() + 1;
+                                    }
+                                    return n;
+                                }
+                            });
+                            assertTrue(count >= 3);
+                            final ImmutableOrgNode snapshot = file.snapshot();
+                            assertEquals(snapshot.getChildren().size() - 2,
+                                    count(snapshot.toOrgFile("test.org").treeToString()));
+                            file.treeToString();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(writes, file.getVersion());
+        assertEquals(writes, count(file.treeToString()));
+    }
+
+    private static int count(final String text) {
+        int count = 0;
+        int index = 0;
+        while ((index = text.indexOf("* added", index)) >= 0) {
+            count++;
+            index++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,97 @@
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ImmutableOrgNodeTest {
+
+    private static final String CONTENT = "intro\n" +
+            "\n" +
+            "* TODO first :work:\n" +
+            "SCHEDULED: <2017-01-02 Mon>\n" +
+            "some text\n" +
+            "** child\n" +
+            "*** grandchild\n" +
+            "** second child\n" +
+            "* DONE last\n" +
+            "<2017-01-02 Mon 10:00>--<2017-01-03 Tue 11:00>\n";
+
+    private static ImmutableOrgNode parse() throws Exception {
+        return ImmutableOrgNode.of(OrgFile.createFromString(new RegexParser(), "test.org", CONTENT));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final OrgFile file = OrgFile.createFromString(new RegexParser(), "test.org", CONTENT);
+        assertEquals(file.treeToString(), ImmutableOrgNode.of(file).toOrgFile("test.org").treeToString());
+    }
+
+    @Test
+    public void testEditSharesUntouchedNodes() throws Exception {
+        final ImmutableOrgNode root = parse();
+        final int[] path = {0, 1};
+
+        final ImmutableOrgNode edited = root.replace(path, root.get(path).withTitle("renamed"));
+
+        assertEquals("second child", root.get(path).getTitle());
+        assertEquals("renamed", edited.get(path).getTitle());
+        assertSame(root.getChild(1), edited.getChild(1));
+        assertSame(root.get(0, 0), edited.get(0, 0));
+        assertEquals(root.getChild(0).getBody(), edited.getChild(0).getBody());
+    }
+
+    @Test
+    public void testRetagAndTodo() throws Exception {
+        final ImmutableOrgNode root = parse();
+        final ImmutableOrgNode edited = root.replace(new int[]{1},
+                root.getChild(1).withTodo("TODO").withTags("a", "b"));
+
+        assertEquals("DONE", root.getChild(1).getTodo());
+        assertEquals("TODO", edited.getChild(1).getTodo());
+        assertEquals(Arrays.asList("a", "b"), edited.getChild(1).getTags());
+        assertSame(root.getChild(0), edited.getChild(0));
+    }
+
+    @Test
+    public void testAddChild() throws Exception {
+        final ImmutableOrgNode root = parse();
+        final ImmutableOrgNode child = ImmutableOrgNode.create(root.getParser(), 1, null, "new");
+        final ImmutableOrgNode edited = root.addChild(new int[]{1}, child);
+
+        assertEquals(0, root.getChild(1).getChildren().size());
+        assertEquals(2, edited.get(1, 0).getLevel());
+        assertEquals("* DONE last\n<2017-01-02 Mon 10:00>--<2017-01-03 Tue 11:00>\n\n** new\n",
+                edited.getChild(1).toOrgNode().treeToString());
+    }
+
+    @Test
+    public void testMove() throws Exception {
+        final ImmutableOrgNode root = parse();
+        // Move "child" with its grandchild to the top level, after "last"
+        final ImmutableOrgNode edited = root.move(new int[]{0, 0}, new int[]{});
+
+        assertEquals(3, edited.getChildren().size());
+        assertEquals("second child", edited.get(0, 0).getTitle());
+        assertEquals("child", edited.get(2).getTitle());
+        assertEquals(1, edited.get(2).getLevel());
+        assertEquals(2, edited.get(2, 0).getLevel());
+        assertSame(root.getChild(1), edited.getChild(1));
+
+        // Target after the source among the same siblings
+        final ImmutableOrgNode moved = root.move(new int[]{0}, new int[]{1});
+        assertEquals(1, moved.getChildren().size());
+        assertEquals("first", moved.get(0, 0).getTitle());
+        assertEquals(2, moved.get(0, 0).getLevel());
+        assertEquals(3, moved.get(0, 0, 0).getLevel());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMoveIntoItself() throws Exception {
+        parse().move(new int[]{0}, new int[]{0, 1});
+    }
+}
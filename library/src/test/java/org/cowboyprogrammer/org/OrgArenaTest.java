@@ -0,0 +1,98 @@
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.ParseOptions;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OrgArenaTest {
+
+    private static final String ORG = "Preamble\n* TODO One :work:\n# comment\n<2017-03-01 Wed>\nFirst body\n"
+            + "** Tv\u00E5 \u2014 zwei \u4E2D\u6587 \uD83D\uDE00\n\u00C5\u00E4\u00F6 body\n*** Three\n* Four\n";
+
+    @Test
+    public void testRoundTrip() {
+        final OrgArena arena = new OrgArena(64);
+        final String[] texts = {"plain", "", "\u00C5\u00E4\u00F6", "\u4E2D\u6587", "emoji \uD83D\uDE00 end",
+                "a longer text which does not fit in one chunk of the arena at all, not even close"};
+        final long[] handles = new long[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            handles[i] = arena.add(texts[i]);
+        }
+        for (int i = 0; i < texts.length; i++) {
+            assertEquals(texts[i], arena.getString(handles[i]));
+            final CharSequence view = arena.get(handles[i]);
+            assertEquals(texts[i].length(), view.length());
+            for (int j = 0; j < view.length(); j++) {
+                assertEquals(texts[i].charAt(j), view.charAt(j));
+            }
+            final StringBuilder sb = new StringBuilder("x");
+            arena.appendTo(sb, handles[i]);
+            assertEquals("x" + texts[i], sb.toString());
+        }
+        // Lone surrogates become '?', as with String.getBytes
+        assertEquals("a?b", arena.getString(arena.add("a\uD800b")));
+        assertTrue(arena.getBytesUsed() > 0);
+    }
+
+    @Test
+    public void testParsedIntoArena() throws Exception {
+        final OrgArena arena = new OrgArena(128);
+        final OrgFile onHeap = OrgFile.createFromString(new RegexParser(), "arena.org", ORG);
+        final OrgFile offHeap = OrgFile.createFromBufferedReader(new RegexParser(), "arena.org",
+                new BufferedReader(new StringReader(ORG)), new ParseOptions().setArena(arena));
+        assertEquals(onHeap.treeToString(), offHeap.treeToString());
+        assertEquals(onHeap.getTreeHash(), offHeap.getTreeHash());
+
+        final OrgNode one = offHeap.getSubNodes().get(0);
+        final OrgNode two = one.getSubNodes().get(0);
+        assertEquals("One", one.getTitle());
+        assertEquals("# comment\n", one.getComments());
+        assertEquals("First body\n", one.getBody());
+        assertEquals("Tv\u00E5 \u2014 zwei \u4E2D\u6587 \uD83D\uDE00", two.getTitle());
+        assertEquals("\u00C5\u00E4\u00F6 body\n", two.getBodyText().toString());
+        assertEquals("Preamble\n", offHeap.getBody());
+
+        // Text comes back on the heap when it is changed
+        two.addBodyLine("more");
+        one.setTitle("Changed");
+        arena.close();
+        assertEquals("\u00C5\u00E4\u00F6 body\nmore\n", two.getBody());
+        assertEquals("Changed", one.getTitle());
+        try {
+            one.getBody();
+            fail("Arena is closed");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testTextClosed() {
+        final OrgArena arena = new OrgArena(128);
+        final OrgArena.Text ascii = arena.get(arena.add("plain"));
+        final OrgArena.Text other = arena.get(arena.add("\u00E5\u00E4\u00F6"));
+        assertEquals('\u00E4', other.charAt(1));
+        arena.close();
+        for (final OrgArena.Text text : new OrgArena.Text[]{ascii, other}) {
+            try {
+                text.charAt(0);
+                fail("Arena is closed");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            try {
+                text.toString();
+                fail("Arena is closed");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+        }
+    }
+}
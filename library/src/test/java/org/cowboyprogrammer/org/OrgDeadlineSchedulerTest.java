@@ -0,0 +1,240 @@
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class OrgDeadlineSchedulerTest {
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    private static final String ORG = "* one\nDEADLINE: <2017-03-10 Fri 12:00 -1d>\n"
+            + "* two\nSCHEDULED: <2017-03-02 Thu 09:30>\n** inactive\nDEADLINE: [2017-03-03 Fri]\n"
+            + "* plain\n<2017-03-04 Sat>\n* past\nDEADLINE: <2017-02-01 Wed>\n";
+
+    // 2017-03-01 00:00 UTC
+    private long now = 1488326400000L;
+    private final List<String> events = new ArrayList<String>();
+    private OrgDeadlineScheduler scheduler;
+    private final OrgDeadlineScheduler.Listener recorder = new OrgDeadlineScheduler.Listener() {
+        @Override
+        public void warningReached(final OrgNode node, final OrgTimestamp timestamp,
+                                   final LocalDateTime due) {
+            events.add("warning " + node.getTitle() + " " + due);
+        }
+
+        @Override
+        public void dueReached(final OrgNode node, final OrgTimestamp timestamp,
+                               final LocalDateTime due) {
+            events.add("due " + node.getTitle() + " " + due);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        scheduler = new OrgDeadlineScheduler(new OrgDeadlineScheduler.Clock() {
+            @Override
+            public long millis() {
+                return now;
+            }
+        }, DateTimeZone.UTC, 1000);
+        scheduler.addListener(recorder);
+    }
+
+    private static OrgFile parse(final String content) throws Exception {
+        return OrgFile.createFromString(new RegexParser(), "deadlines.org", content);
+    }
+
+    @Test
+    public void testFiresInOrder() throws Exception {
+        scheduler.add(parse(ORG));
+        assertEquals(3, scheduler.size());
+
+        now += DAY + 9 * 60 * MINUTE;
+        assertEquals(0, scheduler.advance());
+        now += 30 * MINUTE;
+        assertEquals(1, scheduler.advance());
+        assertEquals("due two 2017-03-02T09:30:00.000", events.get(0));
+
+        now += 30 * DAY;
+        assertEquals(2, scheduler.advance());
+        assertEquals("warning one 2017-03-10T12:00:00.000", events.get(1));
+        assertEquals("due one 2017-03-10T12:00:00.000", events.get(2));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void testWarningAlreadyPassed() throws Exception {
+        now += 9 * DAY + 11 * 60 * MINUTE;
+        scheduler.add(parse(ORG));
+        assertEquals(2, scheduler.size());
+        now += 1000;
+        assertEquals(1, scheduler.advance());
+        assertEquals("warning one 2017-03-10T12:00:00.000", events.get(0));
+    }
+
+    @Test
+    public void testRepeater() throws Exception {
+        scheduler.add(parse("* weekly\nSCHEDULED: <2017-02-20 Mon 08:00 +1w>\n"));
+        assertEquals(1, scheduler.size());
+        now += 14 * DAY;
+        assertEquals(2, scheduler.advance());
+        assertEquals("due weekly 2017-03-06T08:00:00.000", events.get(0));
+        assertEquals("due weekly 2017-03-13T08:00:00.000", events.get(1));
+        assertEquals(1, scheduler.size());
+    }
+
+    @Test
+    public void testEmptyRepeater() throws Exception {
+        scheduler.add(parse("* never\nDEADLINE: <2017-02-20 Mon +0d>\n* once\nDEADLINE: <2017-03-20 Mon +0d>\n"));
+        assertEquals(1, scheduler.size());
+        now += 30 * DAY;
+        assertEquals(1, scheduler.advance());
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void testFiresOnCascadeTick() throws Exception {
+        // 7680 seconds away, a multiple of the 64 ticks in a slot of level 1
+        scheduler.add(parse("* cascaded\nDEADLINE: <2017-03-01 Wed 02:08>\n"));
+        now += 128 * MINUTE - 1000;
+        assertEquals(0, scheduler.advance());
+        now += 1000;
+        assertEquals(1, scheduler.advance());
+        assertEquals("due cascaded 2017-03-01T02:08:00.000", events.get(0));
+    }
+
+    @Test
+    public void testThrowingListener() throws Exception {
+        final RuntimeException failure = new IllegalStateException("listener");
+        scheduler.removeListener(recorder);
+        scheduler.addListener(new OrgDeadlineScheduler.Listener() {
+            @Override
+            public void warningReached(final OrgNode node, final OrgTimestamp timestamp,
+                                       final LocalDateTime due) {
+                throw failure;
+            }
+
+            @Override
+            public void dueReached(final OrgNode node, final OrgTimestamp timestamp,
+                                   final LocalDateTime due) {
+                throw failure;
+            }
+        });
+        scheduler.addListener(recorder);
+        scheduler.add(parse(ORG));
+
+        now += 30 * DAY;
+        try {
+            scheduler.advance();
+            fail("Listener exception not passed on");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        // Every time still reached the other listener
+        assertEquals(3, events.size());
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void testStartSurvivesExceptions() throws Exception {
+        final AtomicInteger ticks = new AtomicInteger();
+        final OrgDeadlineScheduler ticking = new OrgDeadlineScheduler(new OrgDeadlineScheduler.Clock() {
+            @Override
+            public long millis() {
+                if (ticks.incrementAndGet() > 1) {
+                    throw new IllegalStateException("clock");
+                }
+                return now;
+            }
+        }, DateTimeZone.UTC, 10);
+        final BlockingQueue<Throwable> uncaught = new LinkedBlockingQueue<Throwable>();
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable);
+                        thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                            @Override
+                            public void uncaughtException(final Thread t, final Throwable e) {
+                                uncaught.add(e);
+                            }
+                        });
+                        return thread;
+                    }
+                });
+        try {
+            ticking.start(executor);
+            for (int i = 0; i < 3; i++) {
+                final Throwable e = uncaught.poll(10, TimeUnit.SECONDS);
+                assertNotNull("Ticks stopped", e);
+                assertEquals("clock", e.getMessage());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        final OrgFile first = parse(ORG);
+        scheduler.add(first);
+        final OrgFile second = parse("* moved\nDEADLINE: <2017-03-01 Wed 00:05>\n");
+        scheduler.fileChanged(null, first, second);
+        assertEquals(1, scheduler.size());
+
+        now += DAY * 60;
+        assertEquals(1, scheduler.advance());
+        assertEquals("due moved 2017-03-01T00:05:00.000", events.get(0));
+
+        scheduler.fileChanged(null, second, null);
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void testManyTimers() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        final int count = 100000;
+        for (int i = 0; i < count; i++) {
+            final LocalDateTime due = new LocalDateTime(now + MINUTE + i * 311L * 1000, DateTimeZone.UTC);
+            sb.append("* entry ").append(i).append("\nDEADLINE: <")
+                    .append(due.toString("yyyy-MM-dd EEE HH:mm")).append(">\n");
+        }
+        final OrgFile file = parse(sb.toString());
+        scheduler.add(file);
+        assertEquals(count, scheduler.size());
+
+        // Spans past the range of the wheel
+        int fired = 0;
+        for (int day = 0; day < 400; day++) {
+            now += DAY;
+            fired += scheduler.advance();
+        }
+        assertEquals(count, fired);
+        assertEquals(count, events.size());
+        // Earliest first
+        assertEquals("due entry 0 2017-03-01T00:01:00.000", events.get(0));
+        for (int i = 0; i < count; i++) {
+            assertEquals("due entry " + i + " ", events.get(i).substring(0, events.get(i).lastIndexOf(' ') + 1));
+        }
+        assertEquals(0, scheduler.size());
+    }
+}
@@ -0,0 +1,164 @@
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OrgDiffTest {
+
+    private static final String ORG = "#+TITLE: diff\n* one\n:PROPERTIES:\n:ID: id-1\n:END:\nfirst\n"
+            + "** one.a\n** one.b\nbody b\n* two\n** two.a\n*** two.a.x\n* three\n";
+
+    private static OrgFile parse(final String content) throws Exception {
+        return OrgFile.createFromString(new RegexParser(), "diff.org", content);
+    }
+
+    private static void assertDiffApplies(final OrgFile from, final OrgFile to) throws Exception {
+        final List<OrgDiff.Edit> edits = OrgDiff.diff(from, to);
+        OrgDiff.apply(from, edits);
+        assertEquals(edits.toString(), to.treeToString(), from.treeToString());
+        assertEquals(to.getTreeHash(), from.getTreeHash());
+    }
+
+    @Test
+    public void testSameTreeIsEmpty() throws Exception {
+        assertTrue(OrgDiff.diff(parse(ORG), parse(ORG)).isEmpty());
+    }
+
+    @Test
+    public void testHashes() throws Exception {
+        final OrgFile file = parse(ORG);
+        final OrgNode twoA = file.getSubNodes().get(1).getSubNodes().get(0);
+        final long tree = file.getTreeHash();
+        final long content = twoA.getContentHash();
+        final long other = file.getSubNodes().get(0).getTreeHash();
+
+        twoA.setTitle("changed");
+        assertNotEquals(content, twoA.getContentHash());
+        assertNotEquals(tree, file.getTreeHash());
+        assertEquals(other, file.getSubNodes().get(0).getTreeHash());
+
+        twoA.setTitle("two.a");
+        assertEquals(tree, file.getTreeHash());
+
+        // Changes to the list of sub nodes are noticed
+        final OrgNode three = file.getSubNodes().remove(2);
+        assertNotEquals(tree, file.getTreeHash());
+        file.getSubNodes().add(three);
+        assertEquals(tree, file.getTreeHash());
+    }
+
+    @Test
+    public void testAddedChildAndTagNoticed() throws Exception {
+        final OrgFile file = parse(ORG);
+        final OrgNode oneA = file.getSubNodes().get(0).getSubNodes().get(0);
+        assertTrue(OrgDiff.diff(parse(ORG), file).isEmpty());
+
+        final OrgNode child = new OrgNode(new RegexParser());
+        child.setLevel(3);
+        child.setTitle("one.a.x");
+        oneA.getSubNodes().add(child);
+        child.setParent(oneA);
+        assertEquals(1, OrgDiff.diff(parse(ORG), file).size());
+
+        // Changing the new child reaches the root, although it had no hash
+        final long tree = file.getTreeHash();
+        child.setTitle("renamed");
+        assertNotEquals(tree, file.getTreeHash());
+
+        oneA.getSubNodes().remove(child);
+        assertTrue(OrgDiff.diff(parse(ORG), file).isEmpty());
+
+        oneA.getTags().add("x");
+        assertTrue(oneA.isDirty());
+        assertEquals(1, OrgDiff.diff(parse(ORG), file).size());
+    }
+
+    @Test
+    public void testEdits() throws Exception {
+        assertDiffApplies(parse(ORG), parse("#+TITLE: diff\n* two\n** two.a\n*** two.a.x\n* three\n"
+                + "* one\n:PROPERTIES:\n:ID: id-1\n:END:\nfirst\n** one.b\nbody b\n** one.a\n"));
+        // Renamed entry which keeps its :ID:, moved between parents
+        assertDiffApplies(parse(ORG), parse("#+TITLE: other\n* two\n** renamed\n:PROPERTIES:\n"
+                + ":ID: id-1\n:END:\nfirst\n*** one.a\n** two.a\n* new\nnew body\n"));
+        assertDiffApplies(parse(ORG), parse(""));
+        assertDiffApplies(parse(""), parse(ORG));
+    }
+
+    @Test
+    public void testMoveKeepsNodes() throws Exception {
+        final OrgFile from = parse(ORG);
+        final OrgNode twoA = from.getSubNodes().get(1).getSubNodes().get(0);
+        final OrgFile to = parse("#+TITLE: diff\n* three\n* one\n:PROPERTIES:\n:ID: id-1\n:END:\nfirst\n"
+                + "** one.a\n** one.b\nbody b\n* two\n** two.a\n*** two.a.x\n");
+
+        final List<OrgDiff.Edit> edits = OrgDiff.diff(from, to);
+        assertEquals(1, edits.size());
+        assertEquals(OrgDiff.Type.MOVE, edits.get(0).getType());
+        OrgDiff.apply(from, edits);
+        assertEquals(to.treeToString(), from.treeToString());
+        assertTrue(twoA == from.getSubNodes().get(2).getSubNodes().get(0));
+    }
+
+    @Test
+    public void testRandomEdits() throws Exception {
+        final Random random = new Random(46);
+        for (int round = 0; round < 200; round++) {
+            final OrgFile from = parse(ORG);
+            final OrgFile to = parse(ORG);
+            for (int i = random.nextInt(6); i >= 0; i--) {
+                randomEdit(random, to);
+            }
+            assertDiffApplies(from, to);
+        }
+    }
+
+    private static void randomEdit(final Random random, final OrgFile file) throws Exception {
+        final List<OrgNode> nodes = new ArrayList<OrgNode>();
+        collect(file, nodes);
+        final OrgNode node = nodes.get(random.nextInt(nodes.size()));
+        switch (random.nextInt(4)) {
+            case 0:
+                node.setTitle("title " + random.nextInt(5));
+                break;
+            case 1: {
+                final OrgNode child = new OrgNode(new RegexParser());
+                child.setLevel(node.getLevel() + 1);
+                child.setTitle("added " + random.nextInt(5));
+                child.setParent(node);
+                node.getSubNodes().add(random.nextInt(node.getSubNodes().size() + 1), child);
+                node.markDirty();
+                break;
+            }
+            case 2:
+                if (node.getParent() != null) {
+                    node.getParent().getSubNodes().remove(node);
+                    node.getParent().markDirty();
+                }
+                break;
+            default: {
+                // Swap two siblings
+                final List<OrgNode> siblings = node.getSubNodes();
+                if (siblings.size() > 1) {
+                    siblings.add(siblings.remove(0));
+                    node.markDirty();
+                }
+                break;
+            }
+        }
+    }
+
+    private static void collect(final OrgNode node, final List<OrgNode> nodes) {
+        nodes.add(node);
+        for (final OrgNode child : node.getSubNodes()) {
+            collect(child, nodes);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OrgDirectoryWatcherTest {
+
+    private File dir;
+    private OrgDirectoryWatcher watcher;
+    private final BlockingQueue<OrgFile[]> changes = new LinkedBlockingQueue<OrgFile[]>();
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("orgwatch").toFile();
+        write("a.org", "* one\n");
+        write("ignored.txt", "* not org\n");
+        watcher = new OrgDirectoryWatcher(new RegexParser(), dir, 50);
+        watcher.addListener(new OrgDirectoryWatcher.Listener() {
+            @Override
+            public void fileChanged(final File file, final OrgFile oldFile, final OrgFile newFile) {
+                changes.add(new OrgFile[]{oldFile, newFile});
+            }
+
+            @Override
+            public void fileFailed(final File file, final Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        watcher.close();
+        for (final File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testInitialScan() {
+        assertEquals(1, watcher.getFiles().size());
+        assertEquals("one", watcher.get("a.org").getSubNodes().get(0).getTitle());
+    }
+
+    @Test
+    public void testCreateModifyDelete() throws Exception {
+        final OrgFile first = watcher.get("a.org");
+
+        write("a.org", "* second\n");
+        OrgFile[] change = next();
+        assertSame(first, change[0]);
+        assertEquals("second", change[1].getSubNodes().get(0).getTitle());
+        assertSame(change[1], watcher.get("a.org"));
+
+        write("b.org", "* new\n");
+        change = next();
+        assertNull(change[0]);
+        assertSame(change[1], watcher.get("b.org"));
+
+        assertTrue(new File(dir, "b.org").delete());
+        change = next();
+        assertNotNull(change[0]);
+        assertNull(change[1]);
+        assertNull(watcher.get("b.org"));
+    }
+
+    @Test
+    public void testSameSizeAndTime() throws Exception {
+        final File file = new File(dir, "a.org");
+        final long time = file.lastModified();
+
+        write("a.org", "* two\n");
+        assertTrue(file.setLastModified(time));
+        final OrgFile[] change = next();
+        assertEquals("two", change[1].getSubNodes().get(0).getTitle());
+    }
+
+    @Test
+    public void testOwnWriteNotParsed() throws Exception {
+        final OrgFile first = watcher.get("a.org");
+        first.getSubNodes().get(0).setTitle("mine");
+        first.writeToFile(new File(dir, "a.org"));
+        assertNull(changes.poll(500, TimeUnit.MILLISECONDS));
+        assertSame(first, watcher.get("a.org"));
+
+        write("a.org", "* theirs\n");
+        final OrgFile[] change = next();
+        assertSame(first, change[0]);
+        assertEquals("theirs", change[1].getSubNodes().get(0).getTitle());
+    }
+
+    private OrgFile[] next() throws InterruptedException {
+        final OrgFile[] change = changes.poll(30, TimeUnit.SECONDS);
+        assertNotNull("No change seen", change);
+        return change;
+    }
+
+    private void write(final String name, final String content) throws IOException {
+        final FileOutputStream out = new FileOutputStream(new File(dir, name));
+        try {
+            out.write(content.getBytes(Charset.defaultCharset()));
+        } finally {
+            out.close();
+        }
+    }
+}
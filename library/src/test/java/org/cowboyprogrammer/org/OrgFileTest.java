@@ -17,14 +17,34 @@
 
 package org.cowboyprogrammer.org;
 
+import org.cowboyprogrammer.org.parser.Diagnostic;
+import org.cowboyprogrammer.org.parser.LineKind;
+import org.cowboyprogrammer.org.parser.NodeFilter;
+import org.cowboyprogrammer.org.parser.ParseListener;
+import org.cowboyprogrammer.org.parser.ParseOptions;
+import org.cowboyprogrammer.org.parser.ParseStats;
 import org.cowboyprogrammer.org.parser.RegexParser;
 import org.junit.Test;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class OrgFileTest {
     private static final String TESTFILEPATH = "test.org";
@@ -64,6 +84,340 @@ public class OrgFileTest {
         writeToFile(File.createTempFile("test-out", ".org"), root);
     }
 
+    @Test
+    public void testWriteUnchangedIsIdentical() throws Exception {
+        final File file = copyToTemp(getFile(TESTFILEPATH));
+        final byte[] original = Files.readAllBytes(file.toPath());
+
+        final OrgFile root = OrgFile.createFromFile(new RegexParser(), file);
+        assertFalse("Parsed file should be clean", root.isDirty());
+        root.writeToFile(file);
+
+        assertArrayEquals(original, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testWriteOnlyRendersDirtyNodes() throws Exception {
+        final String content = "#+TITLE: test\n\n* one\nbody  \n\n*   two   :a:\n\n\n** three\nlast";
+        final File file = writeTemp(content);
+
+        final OrgFile root = OrgFile.createFromFile(new RegexParser(), file);
+        final OrgNode one = root.getSubNodes().get(0);
+        one.setTodo("TODO");
+        assertTrue(one.isDirty());
+        root.writeToFile(file);
+
+        // Only the modified header changes, odd spacing elsewhere is kept
+        final String expected = content.replace("* one", "* TODO one");
+        assertEquals(expected, readTemp(file));
+
+        // Spans follow the new file, so editing again still works
+        root.getSubNodes().get(1).getSubNodes().get(0).setTitle("drei");
+        root.writeToFile(file);
+        assertEquals(expected.replace("** three\nlast", "** drei\nlast\n"), readTemp(file));
+    }
+
+    @Test
+    public void testWriteStructuralChanges() throws Exception {
+        final File file = writeTemp("* one\nbody\n\n* two\n\n* three\nno newline");
+        final OrgFile root = OrgFile.createFromFile(new RegexParser(), file);
+
+        final OrgNode two = root.getSubNodes().remove(1);
+        root.getSubNodes().add(two);
+        root.writeToFile(file);
+
+        assertEquals("* one\nbody\n\n* three\nno newline\n\n* two\n", readTemp(file));
+    }
+
+    @Test
+    public void testWriteAllDirtyMatchesTreeToString() throws Exception {
+        final File file = copyToTemp(getFile(TESTFILEPATH));
+        final OrgFile root = OrgFile.createFromFile(new RegexParser(), file);
+        markAllDirty(root);
+        root.writeToFile(file);
+
+        assertEquals(root.treeToString(), readTemp(file));
+    }
+
+    @Test
+    public void testWriteSourceChangedOnDisk() throws Exception {
+        final File file = writeTemp("* one\n\n\n* two\n");
+        final OrgFile root = OrgFile.createFromFile(new RegexParser(), file);
+
+        Files.write(file.toPath(), "something else entirely\n".getBytes(Charset.defaultCharset()));
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        root.writeToFile(file);
+
+        assertEquals(root.treeToString(), readTemp(file));
+    }
+
+    @Test
+    public void testOutlineHasHeadersOnly() throws Exception {
+        final File file = getFile(TESTFILEPATH);
+        final OrgFile full = OrgFile.createFromFile(new RegexParser(), file);
+        final OrgFile outline = OrgFile.createFromFile(new RegexParser(), file,
+                new ParseOptions().setOutline(true));
+
+        final List<OrgNode> fullNodes = flatten(full, new ArrayList<OrgNode>());
+        final List<OrgNode> outlineNodes = flatten(outline, new ArrayList<OrgNode>());
+        assertEquals(fullNodes.size(), outlineNodes.size());
+        for (int i = 0; i < fullNodes.size(); i++) {
+            final OrgNode node = outlineNodes.get(i);
+            assertEquals(fullNodes.get(i).getOrgHeader(), node.getOrgHeader());
+            assertEquals("", node.getOrgBody());
+            assertFalse(node.isBodyLoaded());
+        }
+
+        for (final OrgNode node : outlineNodes) {
+            node.loadBody();
+            assertTrue(node.isBodyLoaded());
+            assertFalse(node.isDirty());
+        }
+        assertEquals(full.treeToString(), outline.treeToString());
+    }
+
+    @Test
+    public void testWriteOutline() throws Exception {
+        final String content = "#+TITLE: test\n\n* one\n<2014-02-26 Wed>\nbody  \n\n\n* two\n** three\nlast";
+        final File file = writeTemp(content);
+        final OrgFile outline = OrgFile.createFromFile(new RegexParser(), file,
+                new ParseOptions().setOutline(true));
+
+        outline.writeToFile(file);
+        assertEquals(content, readTemp(file));
+
+        // Modified entries get their bodies loaded before being rendered
+        outline.getSubNodes().get(0).setTodo("TODO");
+        outline.getSubNodes().get(1).getSubNodes().get(0).setTitle("drei");
+        outline.writeToFile(file);
+        final OrgFile reread = OrgFile.createFromFile(new RegexParser(), file);
+        assertEquals("body  \n\n", reread.getSubNodes().get(0).getBody());
+        assertEquals(1, reread.getSubNodes().get(0).getTimestamps().size());
+        assertEquals("last\n", reread.getSubNodes().get(1).getSubNodes().get(0).getBody());
+
+        // Unloaded bodies follow the entries into the new file
+        final OrgNode two = outline.getSubNodes().get(1);
+        assertFalse(two.isBodyLoaded());
+        assertFalse(outline.isBodyLoaded());
+        outline.loadBody();
+        assertEquals("#+TITLE: test\n", outline.getComments());
+    }
+
+    @Test(expected = IOException.class)
+    public void testOutlineFileChanged() throws Exception {
+        final File file = writeTemp("* one\nbody\n");
+        final OrgFile outline = OrgFile.createFromFile(new RegexParser(), file,
+                new ParseOptions().setOutline(true));
+        Files.write(file.toPath(), "* one\nother body\n".getBytes(Charset.defaultCharset()));
+        outline.getSubNodes().get(0).loadBody();
+    }
+
+    @Test
+    public void testOutlineFileChangedWhileReading() throws Exception {
+        final File file = writeTemp("* one\nbody\n* two\nmore\n");
+        final ParseListener appender = new ParseListener() {
+            @Override
+            public void lineRead(final int length, final long nanos) {
+            }
+
+            @Override
+            public void lineParsed(final LineKind kind, final long nanos) {
+            }
+
+            @Override
+            public void nodeFinished(final OrgNode node, final int depth) {
+                if ("one".equals(node.getTitle())) {
+                    try {
+                        Files.write(file.toPath(), "* three\n".getBytes(Charset.defaultCharset()),
+                                StandardOpenOption.APPEND);
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            }
+
+            @Override
+            public void parseFinished(final OrgFile file, final long bytes) {
+            }
+        };
+        try {
+            OrgFile.createFromFile(new RegexParser(), file,
+                    new ParseOptions().setOutline(true).setListener(appender));
+            fail("Bodies of a changed file can't be loaded");
+        } catch (ConcurrentModificationException e) {
+            // Expected
+        }
+        assertEquals("* one\nbody\n* two\nmore\n* three\n", readTemp(file));
+    }
+
+    @Test
+    public void testOutlineFileChangedBeforeSave() throws Exception {
+        final File file = writeTemp("* one\nbody\n* two\nmore\n");
+        final OrgFile outline = OrgFile.createFromFile(new RegexParser(), file,
+                new ParseOptions().setOutline(true));
+        Files.write(file.toPath(), "* one\nother body\n".getBytes(Charset.defaultCharset()));
+
+        outline.getSubNodes().get(1).setTitle("zwei");
+        try {
+            outline.writeToFile(file);
+            fail("Unloaded bodies would be lost");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals("* one\nother body\n", readTemp(file));
+    }
+
+    @Test
+    public void testFilterSkipsSubtrees() throws Exception {
+        final String content = "preamble\n* Archive\n** TODO deploy :ops:\nbody\n*** sub\nsub body\n"
+                + "** DONE old :ops:\nold body\n*** TODO under done :ops:\n** TODO other :dev:\n\n"
+                + "* TODO top :ops:\ntext\n";
+        final File file = writeTemp(content);
+        final NodeFilter opsTodos = new NodeFilter() {
+            @Override
+            public boolean accept(final OrgNode node) {
+                return node.getLevel() == 1
+                        || ("TODO".equals(node.getTodo()) && node.getTags().contains("ops"));
+            }
+        };
+        final ParseStats stats = new ParseStats();
+        final OrgFile root = OrgFile.createFromFile(new RegexParser(), file,
+                new ParseOptions().setFilter(opsTodos).setListener(stats));
+
+        assertEquals("preamble\n\n* Archive\n\n** TODO deploy :ops:\nbody\n\n* TODO top :ops:\ntext\n",
+                root.treeToString());
+        assertEquals(7, stats.getLineCount(LineKind.SKIPPED));
+
+        // Only what was kept is written
+        root.writeToFile(file);
+        assertEquals(root.treeToString(),
+                OrgFile.createFromFile(new RegexParser(), file).treeToString());
+    }
+
+    @Test
+    public void testMaxLevel() throws Exception {
+        final OrgFile root = OrgFile.createFromBufferedReader(new RegexParser(), "test.org",
+                new BufferedReader(new StringReader("* one\nbody\n** two\n*** three\n* four\n** five\n")),
+                new ParseOptions().setMaxLevel(1));
+        assertEquals("\n* one\nbody\n\n* four\n", root.treeToString());
+    }
+
+    @Test
+    public void testLenient() throws Exception {
+        final String content = "* one\nDEADLINE: <2014-13-45 Mon>\nbody\n"
+                + "* two\n<2014-02-29 Sat 25:00>--<2014-03-01 Sat>\n* big\n<2016-02-29 Mon 23:59 +99999999999d>\n"
+                + "* three\n:PROPERTIES:\n:ID: x\nnot a property\n:END:\n"
+                + "* four\n<2016-02-29 Mon 12:00>\n";
+        final ParseStats stats = new ParseStats();
+        final OrgFile root = OrgFile.createFromBufferedReader(new RegexParser(), "test.org",
+                new BufferedReader(new StringReader(content)),
+                new ParseOptions().setLenient(true).setListener(stats));
+
+        final List<Diagnostic> diagnostics = root.getDiagnostics();
+        assertEquals(4, diagnostics.size());
+        assertEquals(2, diagnostics.get(0).getLine());
+        assertEquals(Diagnostic.Kind.INVALID_TIMESTAMP, diagnostics.get(0).getKind());
+        assertEquals(5, diagnostics.get(1).getLine());
+        assertEquals(Diagnostic.Kind.INVALID_TIMESTAMP_RANGE, diagnostics.get(1).getKind());
+        assertEquals(7, diagnostics.get(2).getLine());
+        assertEquals(Diagnostic.Kind.INVALID_TIMESTAMP, diagnostics.get(2).getKind());
+        assertEquals(11, diagnostics.get(3).getLine());
+        assertEquals(Diagnostic.Kind.INVALID_PROPERTY_DRAWER, diagnostics.get(3).getKind());
+        assertEquals(4, stats.getLineCount(LineKind.INVALID));
+
+        // Bad lines stay in the tree as body text
+        assertEquals(5, root.getSubNodes().size());
+        assertEquals("DEADLINE: <2014-13-45 Mon>\nbody\n", root.getSubNodes().get(0).getBody());
+        assertEquals(0, root.getSubNodes().get(0).getTimestamps().size());
+        assertEquals("<2014-02-29 Sat 25:00>--<2014-03-01 Sat>\n", root.getSubNodes().get(1).getBody());
+        assertEquals(":PROPERTIES:\n:ID: x\nnot a property\n:END:\n", root.getSubNodes().get(3).getBody());
+        assertEquals(1, root.getSubNodes().get(4).getTimestamps().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotLenient() throws Exception {
+        OrgFile.createFromString(new RegexParser(), "test.org", "* one\nDEADLINE: <2014-13-45 Mon>\n");
+    }
+
+    private List<OrgNode> flatten(final OrgNode node, final List<OrgNode> into) {
+        into.add(node);
+        for (final OrgNode child : node.getSubNodes()) {
+            flatten(child, into);
+        }
+        return into;
+    }
+
+    private void markAllDirty(OrgNode node) {
+        node.markDirty();
+        for (OrgNode child : node.getSubNodes()) {
+            markAllDirty(child);
+        }
+    }
+
+    @Test
+    public void testTracerFinishedWhenWriteFails() throws Exception {
+        final List<Long> sizes = new ArrayList<Long>();
+        OrgFile.setTracer(new OrgTracer() {
+            @Override
+            public ParseListener parseStarted(final String path) {
+                return null;
+            }
+
+            @Override
+            public Object serializeStarted(final String operation, final OrgNode node) {
+                return operation;
+            }
+
+            @Override
+            public void serializeFinished(final Object token, final long size) {
+                sizes.add(size);
+            }
+
+            @Override
+            public Object fileOperationStarted(final String operation, final String path,
+                                               final String target) {
+                return null;
+            }
+
+            @Override
+            public void fileOperationFinished(final Object token, final boolean success) {
+            }
+        });
+        try {
+            final OrgFile root = OrgFile.createFromString(new RegexParser(), "test.org", "* one\n");
+            final File missing = new File(new File(System.getProperty("java.io.tmpdir"),
+                    "no-such-dir-" + System.nanoTime()), "test.org");
+            try {
+                root.writeToFile(missing);
+                fail("Directory does not exist");
+            } catch (IOException expected) {
+                // Token is still finished
+            }
+            assertEquals(1, sizes.size());
+            assertEquals(-1L, (long) sizes.get(0));
+        } finally {
+            OrgFile.setTracer(null);
+        }
+    }
+
+    private File copyToTemp(File source) throws IOException {
+        final File file = File.createTempFile("test-copy", ".org");
+        file.deleteOnExit();
+        Files.write(file.toPath(), Files.readAllBytes(source.toPath()));
+        return file;
+    }
+
+    private File writeTemp(String content) throws IOException {
+        final File file = File.createTempFile("test-span", ".org");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(Charset.defaultCharset()));
+        return file;
+    }
+
+    private String readTemp(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset());
+    }
+
     private File getFile(String path) throws Exception {
         return new File(getClass().getResource(path).toURI());
     }
@@ -0,0 +1,130 @@
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class OrgIdIndexTest {
+
+    private static final String ORG = "* one\n<2014-02-26 Wed>\n  :PROPERTIES:\n  :ID:       abc-1\n"
+            + "  :CUSTOM_ID: first\n:Empty:\n  :END:\nbody\n** two\n:properties:\n:ID: abc-2\n:end:\n";
+
+    private static OrgFile parse(final String content) throws Exception {
+        return OrgFile.createFromString(new RegexParser(), "ids.org", content);
+    }
+
+    @Test
+    public void testPropertyDrawer() throws Exception {
+        final OrgFile file = parse(ORG);
+        final OrgNode one = file.getSubNodes().get(0);
+        assertEquals("abc-1", one.getProperty("ID"));
+        assertEquals("first", one.getProperty("custom_id"));
+        assertEquals("", one.getProperty("EMPTY"));
+        assertEquals(Arrays.asList("ID", "CUSTOM_ID", "Empty"), one.getPropertyKeys());
+        assertEquals(1, one.getTimestamps().size());
+        assertEquals("body\n", one.getBody());
+
+        // Written as read until a property changes
+        assertEquals("<2014-02-26 Wed>\n  :PROPERTIES:\n  :ID:       abc-1\n  :CUSTOM_ID: first\n:Empty:\n"
+                + "  :END:\nbody\n", one.getOrgBody());
+        one.setProperty("ID", "abc-1");
+        assertEquals("<2014-02-26 Wed>\n  :PROPERTIES:\n  :ID:       abc-1\n  :CUSTOM_ID: first\n:Empty:\n"
+                + "  :END:\nbody\n", one.getOrgBody());
+
+        one.setProperty("id", "abc-3");
+        one.setProperty("CUSTOM_ID", null);
+        one.setProperty("NEW", "value");
+        assertEquals("<2014-02-26 Wed>\n:PROPERTIES:\n:ID: abc-3\n:Empty:\n:NEW: value\n"
+                + ":END:\nbody\n", one.getOrgBody());
+
+        // Survives copies
+        assertEquals("abc-3", ImmutableOrgNode.of(one).toOrgNode().getProperty("ID"));
+        assertEquals("abc-2", CompactOrgFile.fromOrgFile(file).getProperty(2, "ID"));
+        assertEquals(file.treeToString(), CompactOrgFile.fromOrgFile(file).toOrgFile().treeToString());
+    }
+
+    @Test
+    public void testNotADrawer() throws Exception {
+        final OrgNode node = parse("* one\n:PROPERTIES:\n:ID: x\nnot a property\n:END:\n").getSubNodes().get(0);
+        assertNull(node.getProperty("ID"));
+        assertEquals(":PROPERTIES:\n:ID: x\nnot a property\n:END:\n", node.getBody());
+
+        // Only the first drawer counts, and only before the body
+        final OrgNode late = parse("* one\ntext\n:PROPERTIES:\n:ID: x\n:END:\n").getSubNodes().get(0);
+        assertNull(late.getProperty("ID"));
+    }
+
+    @Test
+    public void testDrawerRoundTrip() throws Exception {
+        final String drawer = "  :PROPERTIES:\n  :ID:       abc\n  :CUSTOM_ID: h\n  :END:\n";
+        final String body = drawer + "SCHEDULED: <2017-03-01 Wed>\nbody\n";
+        final OrgFile file = parse("* H\n" + body);
+        final OrgNode node = file.getSubNodes().get(0);
+        assertEquals("abc", node.getProperty("ID"));
+        assertEquals(1, node.getTimestamps().size());
+        assertEquals(body, node.getOrgBody());
+
+        // Also through copies, and when something else in the entry changes
+        assertEquals(body, ImmutableOrgNode.of(node).toOrgNode().getOrgBody());
+        assertEquals(body, CompactOrgFile.fromOrgFile(file).view(1).getOrgBody());
+        node.setBody("changed\n");
+        assertEquals(drawer + "SCHEDULED: <2017-03-01 Wed>\nchanged\n", node.getOrgBody());
+
+        // Rendered again in place once a property changes
+        node.setProperty("ID", "def");
+        assertEquals(":PROPERTIES:\n:ID: def\n:CUSTOM_ID: h\n:END:\n"
+                + "SCHEDULED: <2017-03-01 Wed>\nchanged\n", node.getOrgBody());
+    }
+
+    @Test
+    public void testUnclosedDrawer() throws Exception {
+        final OrgFile file = parse("* one\n:PROPERTIES:\n:ID: x\n* two\n:PROPERTIES:\n:ID: y\n");
+        final OrgNode one = file.getSubNodes().get(0);
+        assertNull(one.getProperty("ID"));
+        assertEquals(":PROPERTIES:\n:ID: x\n", one.getBody());
+        final OrgNode two = file.getSubNodes().get(1);
+        assertNull(two.getProperty("ID"));
+        assertEquals(":PROPERTIES:\n:ID: y\n", two.getBody());
+        // Written back without an :END: being added
+        assertFalse(file.treeToString().contains(":END:"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadKey() {
+        new OrgNode(new RegexParser()).setProperty("two words", "x");
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        final OrgIdIndex index = new OrgIdIndex();
+        final OrgFile first = parse(ORG);
+        final OrgFile other = parse("* other\n:PROPERTIES:\n:ID: xyz\n:END:\n");
+        index.add(first);
+        index.add(other);
+
+        assertEquals(3, index.size());
+        assertSame(first.getSubNodes().get(0), index.getById("abc-1"));
+        assertSame(first.getSubNodes().get(0), index.getByCustomId("first"));
+        assertSame(first.getSubNodes().get(0).getSubNodes().get(0), index.resolveLink("[[id:abc-2][Two]]"));
+        assertSame(first.getSubNodes().get(0), index.resolveLink("#first"));
+        assertNull(index.resolveLink("https://example.com"));
+
+        // Parsed again with an id moved to another entry
+        final OrgFile reparsed = parse("* one\n** two\n:PROPERTIES:\n:ID: abc-1\n:END:\n");
+        index.update(first, reparsed);
+        assertEquals(2, index.size());
+        assertSame(reparsed.getSubNodes().get(0).getSubNodes().get(0), index.getById("abc-1"));
+        assertNull(index.getById("abc-2"));
+        assertNull(index.getByCustomId("first"));
+        assertEquals("other", index.getById("xyz").getTitle());
+
+        index.update(other, null);
+        assertNull(index.getById("xyz"));
+    }
+}
@@ -0,0 +1,154 @@
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.ParseOptions;
+import org.cowboyprogrammer.org.parser.ParseStats;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OrgIndexTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("indexed", ".org");
+        Files.copy(new File(getClass().getResource("test.org").toURI()).toPath(), file.toPath(),
+                java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        OrgIndex.indexFile(file).delete();
+    }
+
+    private static List<OrgNode> flatten(final OrgNode node, final List<OrgNode> into) {
+        into.add(node);
+        for (final OrgNode child : node.getSubNodes()) {
+            flatten(child, into);
+        }
+        return into;
+    }
+
+    @Test
+    public void testIndexMatchesTree() throws Exception {
+        final OrgIndex index = OrgIndex.build(new RegexParser(), file, new ParseOptions());
+        assertTrue(OrgIndex.indexFile(file).isFile());
+
+        final List<OrgNode> nodes = flatten(OrgFile.createFromFile(new RegexParser(), file),
+                new ArrayList<OrgNode>());
+        assertEquals(nodes.size(), index.size());
+        for (int i = 1; i < nodes.size(); i++) {
+            final OrgNode node = nodes.get(i);
+            assertEquals(node.getLevel(), index.getLevel(i));
+            assertEquals(node.getTodo(), index.getTodo(i));
+            assertEquals(node.getTitle(), index.getTitle(i));
+            assertEquals(node.getTags(), index.getTags(i));
+            assertEquals(nodes.indexOf(node.getParent()), index.getParent(i));
+            // Each entry loads with a single read of its own bytes
+            assertEquals(node.treeToString(), index.load(i).treeToString());
+        }
+        assertEquals(nodes.get(0).treeToString(), index.load(0).treeToString());
+    }
+
+    @Test
+    public void testOpenUsesIndexUntilFileChanges() throws Exception {
+        OrgIndex.build(new RegexParser(), file, new ParseOptions());
+
+        final ParseStats stats = new ParseStats();
+        final OrgIndex index = OrgIndex.open(new RegexParser(), file, new ParseOptions().setListener(stats));
+        assertEquals(0, stats.getParses());
+        assertTrue(index.isValid());
+
+        Files.write(file.toPath(), "* TODO one :a:\nbody\n** two\n* three\n".getBytes(UTF_8));
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        try {
+            index.load(1);
+            fail("File has changed");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        final OrgIndex reindexed = OrgIndex.open(new RegexParser(), file, new ParseOptions().setListener(stats));
+        assertEquals(1, stats.getParses());
+        assertEquals(4, reindexed.size());
+        assertEquals(2, reindexed.find("one", "two"));
+        assertEquals(OrgIndex.NONE, reindexed.find("one", "three"));
+        assertEquals("* TODO one :a:\nbody\n\n** two\n", reindexed.load("one").treeToString());
+        assertNull(reindexed.load("missing"));
+    }
+
+    @Test
+    public void testCorruptIndexRebuilt() throws Exception {
+        final int entries = OrgIndex.build(new RegexParser(), file, new ParseOptions()).size();
+        for (final int count : new int[]{-1, Integer.MAX_VALUE, 1000, 1}) {
+            writeCorruptIndex(count);
+            try {
+                OrgIndex.read(new RegexParser(), file, new ParseOptions());
+                fail("Corrupt index was read");
+            } catch (IOException e) {
+                // Expected
+            }
+            assertEquals(entries, OrgIndex.open(new RegexParser(), file, new ParseOptions()).size());
+        }
+    }
+
+    /**
+     * An index whose header matches the file, followed by a bad number of entries.
+     */
+    private void writeCorruptIndex(final int count) throws IOException {
+        final DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(OrgIndex.indexFile(file)));
+        try {
+            out.writeInt(0x4f524749);
+            out.writeInt(1);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeUTF("UTF-8");
+            // File todo keywords, todo keywords and tags
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt(count);
+            // One entry, with a huge title
+            out.writeLong(0);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt(OrgIndex.NONE);
+            out.writeInt(OrgIndex.NONE);
+            out.writeInt(0);
+            out.writeInt(Integer.MAX_VALUE);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testFileTodoKeywords() throws Exception {
+        Files.write(file.toPath(), "#+TODO: WAIT | GONE\n* WAIT one\n* GONE two\n".getBytes(UTF_8));
+        final ParseOptions options = new ParseOptions().setFileTodoKeywords(true);
+        OrgIndex.build(new RegexParser(), file, options);
+
+        final OrgIndex index = OrgIndex.read(new RegexParser(), file, options);
+        assertEquals("GONE", index.getTodo(2));
+        assertEquals("GONE", index.load(2).getTodo());
+    }
+}
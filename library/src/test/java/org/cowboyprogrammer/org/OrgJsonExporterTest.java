@@ -0,0 +1,80 @@
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.cowboyprogrammer.org.util.StringUtils;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+public class OrgJsonExporterTest {
+
+    private static final String ORG = "#+TITLE: json\nPreamble\n* TODO One :work:\nDEADLINE: <2017-03-10 Fri 12:00 +1w -1d>\n"
+            + ":PROPERTIES:\n:ID: abc\n:END:\nSome \"quoted\" text\n"
+            + "** Two :home:work:\n<2017-03-01 Wed 10:00-11:30>\n[2017-02-01 Wed]\n"
+            + "*** Three\n<2017-03-01 Wed>--<2017-03-03 Fri>\n** Four\n* Five\n";
+
+    private static final String[] LINES = {
+            "{\"file\":\"json.org\",\"path\":[],\"level\":0,\"todo\":null,\"title\":\"\",\"tags\":[],"
+                    + "\"inheritedTags\":[],\"timestamps\":[],\"ranges\":[],\"properties\":{},"
+                    + "\"body\":\"Preamble\\n\"}",
+            "{\"file\":\"json.org\",\"path\":[],\"level\":1,\"todo\":\"TODO\",\"title\":\"One\","
+                    + "\"tags\":[\"work\"],\"inheritedTags\":[],\"timestamps\":[{\"type\":\"DEADLINE\","
+                    + "\"date\":\"2017-03-10T12:00\",\"active\":true,\"repeat\":\"+1w\",\"warning\":\"-1d\"}],"
+                    + "\"ranges\":[],\"properties\":{\"ID\":\"abc\"},"
+                    + "\"body\":\"Some \\\"quoted\\\" text\\n\"}",
+            "{\"file\":\"json.org\",\"path\":[\"One\"],\"level\":2,\"todo\":null,\"title\":\"Two\","
+                    + "\"tags\":[\"home\",\"work\"],\"inheritedTags\":[],\"timestamps\":[{\"type\":\"PLAIN\","
+                    + "\"date\":\"2017-03-01T10:00\",\"end\":\"2017-03-01T11:30\",\"active\":true},"
+                    + "{\"type\":\"PLAIN\",\"date\":\"2017-02-01\",\"active\":false}],"
+                    + "\"ranges\":[],\"properties\":{},\"body\":\"\"}",
+            "{\"file\":\"json.org\",\"path\":[\"One\",\"Two\"],\"level\":3,\"todo\":null,\"title\":\"Three\","
+                    + "\"tags\":[],\"inheritedTags\":[\"work\",\"home\"],\"timestamps\":[],"
+                    + "\"ranges\":[{\"start\":\"2017-03-01\",\"end\":\"2017-03-03\"}],"
+                    + "\"properties\":{},\"body\":\"\"}",
+            "{\"file\":\"json.org\",\"path\":[\"One\"],\"level\":2,\"todo\":null,\"title\":\"Four\","
+                    + "\"tags\":[],\"inheritedTags\":[\"work\"],\"timestamps\":[],\"ranges\":[],"
+                    + "\"properties\":{},\"body\":\"\"}",
+            "{\"file\":\"json.org\",\"path\":[],\"level\":1,\"todo\":null,\"title\":\"Five\","
+                    + "\"tags\":[],\"inheritedTags\":[],\"timestamps\":[],\"ranges\":[],"
+                    + "\"properties\":{},\"body\":\"\"}",
+    };
+
+    @Test
+    public void testStreamed() throws Exception {
+        final StringWriter out = new StringWriter();
+        final OrgReader reader = new OrgReader(new RegexParser(), "json.org", new StringReader(ORG));
+        assertEquals(LINES.length, new OrgJsonExporter(out).write(reader));
+        final String[] lines = out.toString().split("\n");
+        assertEquals(LINES.length, lines.length);
+        for (int i = 0; i < LINES.length; i++) {
+            assertEquals(LINES[i], lines[i]);
+        }
+    }
+
+    @Test
+    public void testSameAsTree() throws Exception {
+        final StringWriter streamed = new StringWriter();
+        new OrgJsonExporter(streamed).write(new OrgReader(new RegexParser(), "json.org", new StringReader(ORG)));
+        final StringWriter tree = new StringWriter();
+        new OrgJsonExporter(tree).write(OrgFile.createFromString(new RegexParser(), "json.org", ORG));
+        assertEquals(streamed.toString(), tree.toString());
+    }
+
+    @Test
+    public void testEscaping() {
+        final StringBuilder sb = new StringBuilder();
+        StringUtils.appendJson(sb, "a\"b\\c\td\u0001\u00E9\n");
+        assertEquals("\"a\\\"b\\\\c\\td\\u0001\u00E9\\n\"", sb.toString());
+        sb.setLength(0);
+        StringUtils.appendJson(sb, null);
+        assertEquals("null", sb.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDepthMustFollow() throws Exception {
+        new OrgJsonExporter(new StringWriter()).write(new OrgNode(new RegexParser()), 2);
+    }
+}
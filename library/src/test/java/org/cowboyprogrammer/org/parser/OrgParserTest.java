@@ -220,6 +220,27 @@ public class OrgParserTest {
         assertEquals("Wrong string version", s, node2.treeToString());
     }
 
+    @Test
+    public void testOrgHeaderIsTrimmed() throws Exception {
+        OrgNode node = new OrgNode(parser);
+        node.setLevel(2);
+        assertEquals("**", node.getOrgHeader());
+
+        node.setTodo("TODO");
+        assertEquals("** TODO", node.getOrgHeader());
+
+        node.setTitle(" A title  ");
+        assertEquals("** TODO  A title", node.getOrgHeader());
+
+        node.addTags("a", "b");
+        assertEquals("** TODO  A title   :a:b:", node.getOrgHeader());
+
+        node.setTodo(null);
+        node.getTags().clear();
+        node.setTitle("  ");
+        assertEquals("**", node.getOrgHeader());
+    }
+
     @Test
     public void testComments() throws Exception {
         OrgNode node = new OrgNode(parser);
@@ -0,0 +1,54 @@
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgFile;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParseStatsTest {
+
+    @Test
+    public void testCountsLineKinds() throws Exception {
+        final String content = "# file comment\n\n* one :a:\n<2014-02-26 Wed>\n"
+                + "<2012-02-17 Fri>--<2013-05-24 Fri>\nbody\n\n\nmore body\n"
+                + "** one one\n*** one one one\nlonger body of the deepest node\n* two\n";
+        final ParseStats stats = new ParseStats();
+        OrgFile.createFromBufferedReader(new RegexParser(), "test.org",
+                new BufferedReader(new StringReader(content)), new ParseOptions().setListener(stats));
+
+        assertEquals(4, stats.getLineCount(LineKind.HEADER));
+        assertEquals(1, stats.getLineCount(LineKind.COMMENT));
+        assertEquals(1, stats.getLineCount(LineKind.TIMESTAMP));
+        assertEquals(1, stats.getLineCount(LineKind.TIMESTAMP_RANGE));
+        assertEquals(3, stats.getLineCount(LineKind.BODY));
+        assertEquals(3, stats.getLineCount(LineKind.EMPTY));
+        assertEquals(13, stats.getLineCount());
+        assertEquals(4, stats.getNodes());
+        assertEquals(3, stats.getMaxDepth());
+        assertEquals("longer body of the deepest node\n".length(), stats.getLargestBody());
+        assertEquals(content.length(), stats.getBytes());
+        assertEquals(1, stats.getParses());
+        assertTrue(stats.getLineNanos(LineKind.HEADER) > 0);
+    }
+
+    @Test
+    public void testBytesFromFile() throws Exception {
+        final File file = new File(getClass().getResource("../test.org").toURI());
+        final ParseStats stats = new ParseStats();
+        OrgFile.createFromFile(new RegexParser(), file, new ParseOptions().setListener(stats));
+        OrgFile.createFromFile(new RegexParser(), file, new ParseOptions().setListener(stats));
+
+        assertEquals(2 * file.length(), stats.getBytes());
+        assertEquals(2, stats.getParses());
+        assertEquals(90, stats.getLineCount());
+
+        stats.reset();
+        assertEquals(0, stats.getLineCount());
+        assertEquals(0, stats.getBytes());
+    }
+}
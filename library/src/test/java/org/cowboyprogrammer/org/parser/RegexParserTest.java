@@ -17,8 +17,14 @@
 
 package org.cowboyprogrammer.org.parser;
 
+import org.cowboyprogrammer.org.OrgFile;
+import org.cowboyprogrammer.org.OrgNode;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -109,4 +115,146 @@ public class RegexParserTest {
         assertEquals("wrong todo", " title here ", reverse(m.group(RegexParser.HEADER_REST_TITLE_GROUP)));
         assertEquals("wrong tags", ":tag1:tag2:", reverse(m.group(RegexParser.HEADER_REST_TAGS_GROUP)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSessionSameAsParser() throws Exception {
+        final RegexParser parser = new RegexParser("TODO", "DONE");
+        final OrgParser session = parser.newSession();
+        final String[] lines = {"* TODO title :tag1:tag2:", "** plain", "# comment",
+                "SCHEDULED: <2017-01-02 Mon 10:00 +1w>", "<2017-01-02>--<2017-01-03>",
+                "body text", ""};
+        // Twice, so matchers are reused
+        for (int round = 0; round < 2; round++) {
+            for (final String line : lines) {
+                assertEquals(line, parser.isHeaderLine(line), session.isHeaderLine(line));
+                assertEquals(line, parser.isCommentLine(line), session.isCommentLine(line));
+                assertEquals(line, parser.isTimestampLine(line), session.isTimestampLine(line));
+                assertEquals(line, parser.isTimestampRangeLine(line), session.isTimestampRangeLine(line));
+                if (parser.isHeaderLine(line)) {
+                    final OrgNode node = session.createFromHeader(line);
+                    assertEquals(parser.createFromHeader(line).getOrgHeader(), node.getOrgHeader());
+                    assertSame(parser, node.getParser());
+                }
+                if (parser.isTimestampLine(line)) {
+                    assertEquals(parser.getTimestamp(line).toString(), session.getTimestamp(line).toString());
+                }
+                if (parser.isTimestampRangeLine(line)) {
+                    assertEquals(parser.getTimestampRange(line).toString(),
+                            session.getTimestampRange(line).toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testForTodoKeywordsIsCached() throws Exception {
+        final RegexParser parser = RegexParser.forTodoKeywords("NEXT", "waiting");
+        assertSame(parser, RegexParser.forTodoKeywords("WAITING", "NEXT", "TODO", "NEXT"));
+        assertNotSame(parser, RegexParser.forTodoKeywords("NEXT"));
+        assertTrue(parser.isHeaderLine("* WAITING title"));
+        assertEquals("WAITING", parser.createFromHeader("* WAITING title").getTodo());
+    }
+
+    @Test
+    public void testGetTodoKeywords() throws Exception {
+        final RegexParser parser = new RegexParser();
+        assertArrayEquals(new String[]{"NEXT", "WAITING", "DONE", "CANCELLED"},
+                parser.getTodoKeywords("#+TODO: NEXT(n) WAITING(w@/!) | DONE(d!) CANCELLED"));
+        assertArrayEquals(new String[]{"A", "B"}, parser.getTodoKeywords("#+seq_todo: A | B"));
+        assertArrayEquals(new String[]{"A"}, parser.getTodoKeywords("#+TYP_TODO: A"));
+        assertNull(parser.getTodoKeywords("#+TITLE: TODO"));
+        assertNull(parser.getTodoKeywords("* TODO header"));
+    }
+
+    @Test
+    public void testFileTodoKeywords() throws Exception {
+        final String content = "#+TODO: NEXT | FINISHED\n" +
+                "#+TODO: LATER\n" +
+                "* NEXT one\n" +
+                "* LATER two\n" +
+                "* FINISHED three\n" +
+                "#+TODO: IGNORED\n" +
+                "* IGNORED four\n";
+
+        final OrgFile withKeys = OrgFile.createFromBufferedReader(new RegexParser(), "test.org",
+                new BufferedReader(new StringReader(content)), new ParseOptions().setFileTodoKeywords(true));
+        assertEquals("NEXT", withKeys.getSubNodes().get(0).getTodo());
+        assertEquals("LATER", withKeys.getSubNodes().get(1).getTodo());
+        assertEquals("FINISHED", withKeys.getSubNodes().get(2).getTodo());
+        assertNull(withKeys.getSubNodes().get(3).getTodo());
+        assertEquals("#+TODO: NEXT | FINISHED\n#+TODO: LATER\n", withKeys.getComments());
+
+        final OrgFile withoutKeys = OrgFile.createFromString(new RegexParser(), "test.org", content);
+        assertNull(withoutKeys.getSubNodes().get(0).getTodo());
+        assertEquals("NEXT one", withoutKeys.getSubNodes().get(0).getTitle());
+    }
+
+    @Test
+    public void testTodoKeywordsAreLiteral() throws Exception {
+        final RegexParser parser = RegexParser.forTodoKeywords("[x", "[WAIT]", "C++");
+        assertEquals("[X", parser.createFromHeader("* [X title").getTodo());
+        assertEquals("[WAIT]", parser.createFromHeader("* [WAIT] title").getTodo());
+        assertNull(parser.createFromHeader("* W title").getTodo());
+        assertEquals("C++", parser.createFromHeader("* C++ title").getTodo());
+        assertNull(parser.createFromHeader("* CCC title").getTodo());
+
+        final Pattern header = RegexParser.getHeaderPattern("[x", "[WAIT]");
+        assertTrue(header.matcher("* [WAIT] title").matches());
+        final Matcher m = header.matcher("* W title");
+        assertTrue(m.matches());
+        assertNull(m.group(RegexParser.HEADER_TODO_GROUP));
+
+        final String content = "#+TODO: [x [WAIT]\n" +
+                "* [X one\n" +
+                "* [WAIT] two\n";
+        final OrgFile file = OrgFile.createFromBufferedReader(new RegexParser(), "test.org",
+                new BufferedReader(new StringReader(content)),
+                new ParseOptions().setFileTodoKeywords(true).setLenient(true));
+        assertEquals("[X", file.getSubNodes().get(0).getTodo());
+        assertEquals("[WAIT]", file.getSubNodes().get(1).getTodo());
+    }
+
+    @Test
+    public void testHeaderSameAsPattern() throws Exception {
+        final String[][] keySets = {{}, {"NEXT", "TODOS", "TO"}, {"WAIT+", "ON HOLD"}};
+        final char[] alphabet = {'*', '*', ' ', '\t', 'T', 'O', 'D', 'N', 'E', 'X', 'S', ':', 'a', '\u2028', '+'};
+        final Random random = new Random(1);
+        for (final String[] keys : keySets) {
+            final RegexParser parser = new RegexParser(keys);
+            final Pattern header = RegexParser.getHeaderPattern(keys);
+            final Pattern headerRest = RegexParser.getHeaderRestPattern();
+            for (int n = 0; n < 20000; n++) {
+                final StringBuilder sb = new StringBuilder();
+                final int length = random.nextInt(12);
+                for (int i = 0; i < length; i++) {
+                    // Mostly headers
+                    sb.append(i == 0 && random.nextInt(4) > 0 ? '*' : alphabet[random.nextInt(alphabet.length)]);
+                }
+                final String line = sb.toString();
+                final Matcher m = header.matcher(line);
+                final boolean isHeader = m.matches();
+                assertEquals(Arrays.toString(keys) + " '" + line + "'", isHeader, parser.isHeaderLine(line));
+                if (!isHeader) {
+                    continue;
+                }
+
+                final OrgNode node = parser.createFromHeader(line);
+                assertEquals(line, m.group(RegexParser.HEADER_STARS_GROUP).length(), node.getLevel());
+                assertEquals(line, m.group(RegexParser.HEADER_TODO_GROUP), node.getTodo());
+                String title = "";
+                String[] tags = new String[0];
+                final String rest = m.group(RegexParser.HEADER_REST_GROUP);
+                if (rest != null && !rest.isEmpty()) {
+                    final Matcher r = headerRest.matcher(reverse(rest));
+                    if (r.matches()) {
+                        title = reverse(r.group(RegexParser.HEADER_REST_TITLE_GROUP));
+                        final String tagString = reverse(r.group(RegexParser.HEADER_REST_TAGS_GROUP));
+                        tags = tagString == null ? tags : RegexParser.parseTags(tagString);
+                    }
+                }
+                assertEquals(line, title, node.getTitle());
+                assertEquals(line, Arrays.asList(tags), node.getTags());
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.cowboyprogrammer.org.util;
+
+import org.cowboyprogrammer.org.OrgTimestamp;
+import org.joda.time.LocalDateTime;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class DateAppenderTest {
+
+    private static final Locale[] LOCALES = {Locale.ENGLISH, Locale.GERMAN, Locale.FRENCH,
+            new Locale("sv", "SE"), Locale.JAPANESE};
+
+    @Test
+    public void testDateMatchesJoda() throws Exception {
+        LocalDateTime date = new LocalDateTime(1999, 12, 25, 0, 0);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            for (final Locale locale : LOCALES) {
+                sb.setLength(0);
+                DateAppender.appendDate(sb, date, locale);
+                assertEquals(date.toString(OrgTimestamp.OUTDATEFORMAT, locale), sb.toString());
+            }
+            date = date.plusDays(3);
+        }
+    }
+
+    @Test
+    public void testDateTimeMatchesJoda() throws Exception {
+        LocalDateTime date = new LocalDateTime(2014, 2, 26, 0, 0);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.setLength(0);
+            DateAppender.appendDateTime(sb, date, Locale.ENGLISH);
+            assertEquals(date.toString(OrgTimestamp.OUTDATETIMEFORMAT, Locale.ENGLISH), sb.toString());
+            date = date.plusMinutes(37);
+        }
+    }
+
+    @Test
+    public void testYearPadding() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        DateAppender.appendDate(sb, new LocalDateTime(33, 3, 3, 0, 0), Locale.ENGLISH);
+        assertEquals("0033-03-03 Thu", sb.toString());
+    }
+
+    @Test
+    public void testDayNamesAreCached() throws Exception {
+        assertSame(DateAppender.getShortDayNames(Locale.GERMAN),
+                DateAppender.getShortDayNames(Locale.GERMAN));
+        assertEquals("Mon", DateAppender.getShortDayNames(Locale.ENGLISH)[1]);
+        assertEquals("Sun", DateAppender.getShortDayNames(Locale.ENGLISH)[7]);
+    }
+}
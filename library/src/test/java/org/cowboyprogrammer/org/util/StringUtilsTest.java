@@ -2,6 +2,7 @@ package org.cowboyprogrammer.org.util;
 
 import org.junit.Test;
 
+import static org.cowboyprogrammer.org.util.StringUtils.isBlank;
 import static org.cowboyprogrammer.org.util.StringUtils.reverse;
 import static org.junit.Assert.*;
 
@@ -16,4 +17,11 @@ public class StringUtilsTest {
     public void testReverseString() throws Exception {
         assertEquals("cba", reverse("abc"));
     }
+
+    @Test
+    public void testIsBlank() throws Exception {
+        for (final String text : new String[]{"", " ", "\n", " \t\r\n\f\u000B", "a", " a ", "\u00A0"}) {
+            assertEquals(text, text.matches("\\A\\s*\\z"), isBlank(text));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package org.cowboyprogrammer.org.util;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class Utf8LineReaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testSameAsBufferedReader() throws Exception {
+        final String[] pieces = {"a", "* ", "\u00f6", "\u20ac", "\ud83d\ude00", "\n", "\r", "\r\n", "plain text "};
+        final Random random = new Random(3);
+        for (int n = 0; n < 200; n++) {
+            final StringBuilder sb = new StringBuilder();
+            // Long enough to cross buffer boundaries
+            final int count = random.nextInt(n < 100 ? 20 : 5000);
+            for (int i = 0; i < count; i++) {
+                sb.append(pieces[random.nextInt(pieces.length)]);
+            }
+            final String text = sb.toString();
+            final byte[] bytes = text.getBytes(UTF_8);
+
+            check(text, new Utf8LineReader(new ByteArrayInputStream(bytes)));
+            check(text, new Utf8LineReader(Channels.newChannel(new ByteArrayInputStream(bytes))));
+            check(text, new Utf8LineReader(ByteBuffer.wrap(bytes)));
+        }
+    }
+
+    @Test
+    public void testMalformedIsReplaced() throws Exception {
+        final Utf8LineReader reader = new Utf8LineReader(
+                new ByteArrayInputStream(new byte[]{'a', (byte) 0xC3, '\n', 'b'}));
+        assertEquals("a\ufffd", reader.readLine());
+        assertEquals(3, reader.getLineEnd());
+        assertEquals("b", reader.readLine());
+        assertNull(reader.readLine());
+    }
+
+    private static void check(final String text, final Utf8LineReader reader) throws Exception {
+        final BufferedReader expected = new BufferedReader(new StringReader(text));
+        final OffsetLineReader offsets = new OffsetLineReader(new StringReader(text), UTF_8);
+        String line;
+        while ((line = expected.readLine()) != null) {
+            assertEquals(line, reader.readLine());
+            assertEquals(offsets.readLine(), line);
+            assertEquals(offsets.getLineStart(), reader.getLineStart());
+            assertEquals(offsets.getLineEnd(), reader.getLineEnd());
+            assertEquals(offsets.getCharsRead(), reader.getCharsRead());
+        }
+        assertNull(reader.readLine());
+        assertEquals(text.getBytes(UTF_8).length, reader.getLineEnd());
+        reader.close();
+    }
+}